@@ -1,7 +1,8 @@
 CREATE TABLE IF NOT EXISTS user (
     username TEXT PRIMARY KEY NOT NULL,
     hashedPassword TEXT NOT NULL,
-    weeklySchedule BLOB NOT NULL
+    weeklySchedule BLOB NOT NULL,
+    availabilityLevels BLOB
 );
 
 CREATE TABLE IF NOT EXISTS scheduleEvent (
@@ -43,6 +44,7 @@ CREATE TABLE IF NOT EXISTS meetingTime (
     endIndex INTEGER NOT NULL,
     availabilityRank INTEGER NOT NULL,
     rgb STRING NOT NULL,
+    planIndex INTEGER,
     FOREIGN KEY (meetingGroupId) REFERENCES meetingGroup(id) ON UPDATE CASCADE ON DELETE CASCADE
 );
 
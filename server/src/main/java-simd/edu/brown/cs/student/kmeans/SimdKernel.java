@@ -0,0 +1,78 @@
+package edu.brown.cs.student.kmeans;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vector API implementation of DistanceKernel. Only compiled with the simd profile, and only
+ * loaded by VectorKernels when jdk.incubator.vector is present at runtime.
+ */
+final class SimdKernel implements DistanceKernel {
+  /**
+   * The widest vector shape the hardware supports.
+   */
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public double dot(double[] flatCoords, int offset, double[] otherFlatCoords, int otherOffset,
+                    int length) {
+    DoubleVector dotProducts = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector coords = DoubleVector.fromArray(SPECIES, flatCoords, offset + i);
+      DoubleVector otherCoords = DoubleVector.fromArray(SPECIES, otherFlatCoords, otherOffset + i);
+      dotProducts = coords.fma(otherCoords, dotProducts);
+    }
+    double dotProduct = dotProducts.reduceLanes(VectorOperators.ADD);
+    for (; i < length; i++) {
+      dotProduct += flatCoords[offset + i] * otherFlatCoords[otherOffset + i];
+    }
+    return dotProduct;
+  }
+
+  @Override
+  public double magnitudeSquared(double[] flatCoords, int offset, int length) {
+    DoubleVector squares = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector coords = DoubleVector.fromArray(SPECIES, flatCoords, offset + i);
+      squares = coords.fma(coords, squares);
+    }
+    double magnitudeSquared = squares.reduceLanes(VectorOperators.ADD);
+    for (; i < length; i++) {
+      magnitudeSquared += flatCoords[offset + i] * flatCoords[offset + i];
+    }
+    return magnitudeSquared;
+  }
+
+  @Override
+  public double cosDistance(double[] flatCoords, int offset, double[] otherFlatCoords,
+                            int otherOffset, int length) {
+    DoubleVector squares = DoubleVector.zero(SPECIES);
+    DoubleVector otherSquares = DoubleVector.zero(SPECIES);
+    DoubleVector dotProducts = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int i = 0;
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector coords = DoubleVector.fromArray(SPECIES, flatCoords, offset + i);
+      DoubleVector otherCoords = DoubleVector.fromArray(SPECIES, otherFlatCoords, otherOffset + i);
+      squares = coords.fma(coords, squares);
+      otherSquares = otherCoords.fma(otherCoords, otherSquares);
+      dotProducts = coords.fma(otherCoords, dotProducts);
+    }
+    double magnitude = squares.reduceLanes(VectorOperators.ADD);
+    double otherMagnitude = otherSquares.reduceLanes(VectorOperators.ADD);
+    double dotProduct = dotProducts.reduceLanes(VectorOperators.ADD);
+    for (; i < length; i++) {
+      double coord = flatCoords[offset + i];
+      double otherCoord = otherFlatCoords[otherOffset + i];
+      magnitude += coord * coord;
+      otherMagnitude += otherCoord * otherCoord;
+      dotProduct += coord * otherCoord;
+    }
+    return VectorKernels.fromDotProduct(dotProduct, magnitude, otherMagnitude);
+  }
+}
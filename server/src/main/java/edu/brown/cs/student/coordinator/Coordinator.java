@@ -1,16 +1,60 @@
 package edu.brown.cs.student.coordinator;
 
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
+import edu.brown.cs.student.kmeans.BalancedGroups;
+import edu.brown.cs.student.kmeans.GroupingEngine;
+import edu.brown.cs.student.kmeans.GroupingResult;
+import edu.brown.cs.student.kmeans.HierarchicalGroups;
 import edu.brown.cs.student.kmeans.KMeansGroups;
+import edu.brown.cs.student.kmeans.MeetingOverlap;
+import edu.brown.cs.student.kmeans.MeetingStartVector;
+import edu.brown.cs.student.kmeans.PairingGroups;
 import edu.brown.cs.student.kmeans.TimeSelection;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Class containing all core Coordinator functionalities.
  */
 public final class Coordinator {
+  /**
+   * Enumeration of the ways to pick the alternative meeting times suggested to a group.
+   */
+  public enum SuggestionMode {
+    // the best covered starts, even if they are shifts of one window
+    BEST,
+    // the best covered starts that do not overlap and are spread over the week
+    DIVERSE
+  }
+
   private static final int MINUTES_PER_SCHEDULE_BLOCK = 15;
+  private static final int MEETING_SUGGESTIONS = 5;
+  private static final String MEETING_TIME_RGB = "#FFFFFF";
+  // suggested meetings are at least an hour apart and spread over at least three days, so that
+  // members vote on real alternatives rather than 15 minute shifts of one window
+  private static final int MIN_SUGGESTION_GAP_BLOCKS = 4;
+  private static final int MAX_SUGGESTIONS_PER_DAY = 2;
+  // the shortest meeting in a weekly plan with a total length, half an hour
+  private static final int MIN_PLANNED_MEETING_BLOCKS = 2;
+  // meetings of one weekly plan are at least three hours apart, so two on one day are still a
+  // morning and an afternoon rather than one long session with a break
+  private static final int MIN_PLANNED_GAP_BLOCKS = 12;
+  private static final int GROUPING_RESTARTS = 4;
+  private static final long GROUPING_TIME_BUDGET_MILLIS = 5000;
+  private static final long GROUPING_REFINEMENT_BUDGET_MILLIS = 1000;
+  // KMeansGroups reruns k-means once per group, so beyond this many groups use BalancedGroups
+  private static final int BALANCED_GROUPING_THRESHOLD = 50;
+  private static final long PAIRING_TIME_BUDGET_MILLIS = 500;
+  // beyond this many members, split into coarse buckets first and group each bucket on its own
+  private static final int HIERARCHICAL_GROUPING_THRESHOLD = 5000;
+  // hard limit on splitting a group, after which the best grouping so far is used
+  private static final long LOCK_GROUPING_BUDGET_MILLIS = 10000;
   private static CoordinatorDatabaseClient dbClient = null;
+  // how much a slot at each availability level weighs when grouping and picking times; the array
+  // is never written after it is set, and volatile so request threads see the latest one
+  private static volatile double[] levelWeights = AvailabilityLevels.getDefaultWeights();
   private static String currentDatabasePath = null;
 
   /**
@@ -39,6 +83,18 @@ public final class Coordinator {
     currentDatabasePath = databasePath;
   }
 
+  /**
+   * Set how much a slot at each availability level weighs when locking groups, both for
+   * grouping members and for picking meeting times. Set from the --level-weights option; locks
+   * that already started keep the weights they started with.
+   *
+   * @param newLevelWeights weight of each AvailabilityLevels level, with UNAVAILABLE at 0
+   */
+  public static void setLevelWeights(double[] newLevelWeights) {
+    AvailabilityLevels.checkWeights(newLevelWeights);
+    levelWeights = newLevelWeights.clone();
+  }
+
   /**
    * Get hashed password of user.
    *
@@ -74,6 +130,16 @@ public final class Coordinator {
     return dbClient.getUser(username, false).getWeeklySchedule();
   }
 
+  /**
+   * Retrieve availability levels of user.
+   *
+   * @param username of user
+   * @return one AvailabilityLevels level per slot of the weekly schedule
+   */
+  public static byte[] getAvailabilityLevels(String username) {
+    return dbClient.getUser(username, false).getAvailabilityLevels();
+  }
+
   /**
    * Get groups of a user.
    *
@@ -97,6 +163,22 @@ public final class Coordinator {
     return dbClient.updateUser(u);
   }
 
+  /**
+   * Update availability levels, and the weekly schedule with them.
+   *
+   * @param username  of user
+   * @param newLevels to update, one AvailabilityLevels level per slot
+   * @return boolean indicating whether user has been updated successfully
+   */
+  public static boolean updateAvailabilityLevels(String username, byte[] newLevels) {
+    if (newLevels.length != User.WEEKLY_SCHEDULE_SIZE) {
+      throw new RuntimeException("availability levels must cover the weekly schedule");
+    }
+    User u = dbClient.getUser(username, false);
+    u.updateAvailabilityLevels(newLevels);
+    return dbClient.updateUser(u);
+  }
+
   /**
    * Create group.
    *
@@ -152,13 +234,109 @@ public final class Coordinator {
   }
 
   /**
-   * Lock group.
+   * Picks the grouping engine for splitting members into subgroups.
+   *
+   * @param subgroupSize size of each subgroup
+   * @param starts       the members, as their feasible meeting starts
+   * @return the engine to group them with
+   */
+  private static GroupingEngine<MeetingStartVector<User>> createGroupingEngine(
+      int subgroupSize, List<MeetingStartVector<User>> starts) {
+    if (subgroupSize == 2) {
+      // pairs are matched exactly rather than clustered
+      PairingGroups<MeetingStartVector<User>> pairing = new PairingGroups<>(starts);
+      pairing.setTimeBudget(PAIRING_TIME_BUDGET_MILLIS);
+      return pairing;
+    } else if (starts.size() / subgroupSize >= BALANCED_GROUPING_THRESHOLD) {
+      return new BalancedGroups<>(subgroupSize, starts);
+    }
+    KMeansGroups<MeetingStartVector<User>> kmg = new KMeansGroups<>(subgroupSize, starts);
+    // a locked group cannot be re-split, so spend a few restarts on getting it right
+    kmg.setRestarts(GROUPING_RESTARTS);
+    kmg.setTimeBudget(GROUPING_TIME_BUDGET_MILLIS);
+    kmg.setRefinementBudget(GROUPING_REFINEMENT_BUDGET_MILLIS);
+    return kmg;
+  }
+
+  /**
+   * Suggests meeting times to a group and stores them. With one meeting a week, these are
+   * alternatives of the group's meeting length picked by the suggestion mode, ranked from 1 (the
+   * best). With more,
+   * they are one weekly plan of that many separate meetings, which all happen, so the plan is
+   * stored as a single option: every meeting has rank 1 and its place in the week as its plan
+   * index. If the plan does not fit in the week, alternatives are suggested instead.
+   *
+   * @param groupId      id of the group
+   * @param ts           the group's time selection
+   * @param blockSize    meeting length of the group, in schedule blocks
+   * @param meetingCount number of separate meetings a week
+   * @param totalMinutes total length of the meetings a week, or 0 for meetings of blockSize;
+   *                     otherwise blockSize is the longest a meeting can be
+   * @param mode         how to pick alternatives
+   */
+  private static void suggestTimes(int groupId, TimeSelection<User> ts, int blockSize,
+                                   int meetingCount, int totalMinutes, SuggestionMode mode) {
+    List<int[]> plan = new ArrayList<>();
+    if (meetingCount > 1) {
+      if (totalMinutes > 0) {
+        int totalBlocks = totalMinutes / MINUTES_PER_SCHEDULE_BLOCK;
+        int minBlocks = Math.min(MIN_PLANNED_MEETING_BLOCKS, blockSize);
+        if (totalBlocks >= (long) meetingCount * minBlocks) {
+          plan = ts.getWeeklyPlan(meetingCount, totalBlocks, minBlocks, blockSize,
+              MIN_PLANNED_GAP_BLOCKS);
+        }
+      } else {
+        plan = ts.getWeeklyPlan(meetingCount, blockSize, MIN_PLANNED_GAP_BLOCKS);
+      }
+    }
+    for (int i = 0; i < plan.size(); i++) {
+      // Both start and end are inclusive
+      dbClient.createMeetingTimeAndPreferences(new MeetingTime(null, groupId, plan.get(i)[0],
+          plan.get(i)[1], 1, MEETING_TIME_RGB, null, i));
+    }
+    if (!plan.isEmpty()) {
+      return;
+    }
+    List<Integer> starts;
+    if (mode == SuggestionMode.DIVERSE) {
+      starts = ts.getDiverseTimes(MEETING_SUGGESTIONS, blockSize, MIN_SUGGESTION_GAP_BLOCKS,
+          MAX_SUGGESTIONS_PER_DAY);
+    } else {
+      starts = ts.getBestTimes(MEETING_SUGGESTIONS, blockSize);
+    }
+    for (int i = 0; i < starts.size(); i++) {
+      // Both start and end are inclusive
+      int start = starts.get(i);
+      dbClient.createMeetingTimeAndPreferences(new MeetingTime(null, groupId, start,
+          start + blockSize - 1, i + 1, MEETING_TIME_RGB, null, null));
+    }
+  }
+
+  /**
+   * Lock group, suggesting the best times for one meeting a week.
    *
    * @param groupId of group to lock
    * @param adminUsername username of admin (i.e. user attempting to lock the group)
    * @return boolean indicating success
    */
   public static boolean lockGroup(int groupId, String adminUsername) {
+    return lockGroup(groupId, adminUsername, 1, 0, SuggestionMode.BEST);
+  }
+
+  /**
+   * Lock group.
+   *
+   * @param groupId       of group to lock
+   * @param adminUsername username of admin (i.e. user attempting to lock the group)
+   * @param meetingCount  number of separate meetings a week to plan
+   * @param totalMinutes  total length of the meetings a week, or 0 for meetings of the group's
+   *                      meeting duration; otherwise the meeting duration is the longest a meeting
+   *                      can be
+   * @param mode          how to pick the alternatives suggested when there is no weekly plan
+   * @return boolean indicating success
+   */
+  public static boolean lockGroup(int groupId, String adminUsername, int meetingCount,
+                                  int totalMinutes, SuggestionMode mode) {
     // fetch group settings
     MeetingGroup mg = dbClient.getMeetingGroup(groupId);
     if (!adminUsername.equals(mg.getAdminUsername())) { // user is not the admin
@@ -167,8 +345,12 @@ public final class Coordinator {
     Integer subgroupSize = mg.getSubgroupSize();
     Integer meetingDuration = mg.getMeetingDurationMinutes();
 
-    // get users
+    // get users, weighing their availability levels the same way
     List<User> users = dbClient.getMeetingGroupMembers(groupId);
+    double[] weights = levelWeights;
+    for (User user : users) {
+      user.setLevelWeights(weights);
+    }
 
     // change state of grp
     mg.setState(MeetingGroup.MeetingGroupState.LOCKED);
@@ -179,32 +361,32 @@ public final class Coordinator {
       System.out.println("Finding common times...");
       TimeSelection<User> ts = new TimeSelection<>(users);
       int blockSize = meetingDuration / MINUTES_PER_SCHEDULE_BLOCK;
-      List<Integer> bestTimes = ts.getBestTimes(5, blockSize);
-
-      // convert times into strings
-      for (int i = 0; i < bestTimes.size(); i++) {
-        // Both start and end are inclusive
-        Integer start = bestTimes.get(i);
-        Integer end = start + blockSize - 1;
-        String rgb = "#FFFFFF";
-
-        MeetingTime mt = new MeetingTime(null,
-            mg.getId(),
-            start,
-            end,
-            i,
-            rgb,
-            null
-        );
-
-        // add meeting time to db
-        dbClient.createMeetingTimeAndPreferences(mt);
-      }
+      suggestTimes(mg.getId(), ts, blockSize, meetingCount, totalMinutes, mode);
     } else {
       // split groups
       System.out.println("Splitting group...");
-      KMeansGroups<User> kmg = new KMeansGroups<>(subgroupSize, users);
-      List<List<User>> groups = kmg.getGroups();
+      // group on the slots where each user can start a whole meeting, so that every subgroup
+      // shares slots that can actually hold one
+      int blockSize = meetingDuration / MINUTES_PER_SCHEDULE_BLOCK;
+      List<MeetingStartVector<User>> starts = MeetingStartVector.wrapAll(users, blockSize);
+      GroupingEngine<MeetingStartVector<User>> engine;
+      if (users.size() >= HIERARCHICAL_GROUPING_THRESHOLD) {
+        engine = new HierarchicalGroups<>(subgroupSize, starts, new Random(),
+            bucket -> createGroupingEngine(subgroupSize, bucket));
+      } else {
+        engine = createGroupingEngine(subgroupSize, starts);
+      }
+      GroupingResult<MeetingStartVector<User>> result =
+          engine.getGroups(LOCK_GROUPING_BUDGET_MILLIS, null);
+      if (!result.isComplete()) {
+        System.out.println("Grouping cut short: " + result);
+      }
+      List<List<User>> groups = MeetingStartVector.unwrapAll(result.getGroups());
+      // the grouping only approximates shared starts, so make sure each subgroup can meet
+      int infeasible = MeetingOverlap.repairInfeasibleGroups(groups, blockSize);
+      if (infeasible > 0) {
+        System.out.println(infeasible + " subgroups have no time for a whole meeting");
+      }
 
       // insert each grp into db
       for (int i = 0; i < groups.size(); i++) {
@@ -224,27 +406,7 @@ public final class Coordinator {
 
         // generate timings for grp
         TimeSelection<User> ts = new TimeSelection<>(g);
-        int blockSize = meetingDuration / MINUTES_PER_SCHEDULE_BLOCK;
-        List<Integer> bestTimes = ts.getBestTimes(5, blockSize);
-        // convert times into strings
-        for (int j = 0; j < bestTimes.size(); j++) {
-          // Both start and end are inclusive
-          Integer start = bestTimes.get(j);
-          Integer end = start + blockSize - 1;
-          String rgb = "#FFFFFF";
-
-          MeetingTime mt = new MeetingTime(null,
-              newGroupId,
-              start,
-              end,
-              j,
-              rgb,
-              null
-          );
-
-          // add meeting time to db
-          dbClient.createMeetingTimeAndPreferences(mt);
-        }
+        suggestTimes(newGroupId, ts, blockSize, meetingCount, totalMinutes, mode);
       }
     }
     return true;
@@ -1,6 +1,7 @@
 package edu.brown.cs.student.coordinator;
 
 import edu.brown.cs.student.database.Database;
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -16,6 +17,9 @@ public class CoordinatorDatabaseClient {
   private final Database db;
   private static final int BITS_PER_BYTE = 8;
   private static final int BYTE_SIZE = 256;
+  // the most options of a group's meeting times to show, by availabilityRank; all meetings of a
+  // weekly plan are one option
+  private static final int MEETING_TIME_OPTIONS = 5;
 
   /**
    * Constructor.
@@ -25,6 +29,38 @@ public class CoordinatorDatabaseClient {
    */
   public CoordinatorDatabaseClient(String databasePath) {
     this.db = new Database(databasePath);
+    // users without levels keep a null column, and are read back from their weeklySchedule alone
+    addMissingColumn("user", "availabilityLevels", "BLOB");
+    // meeting times made before weekly plans are all alternatives, with a null planIndex
+    addMissingColumn("meetingTime", "planIndex", "INTEGER");
+  }
+
+  /**
+   * Adds a nullable column to a table of a database made before the column existed.
+   *
+   * @param table  name of the table
+   * @param column name of the column
+   * @param type   SQL type of the column
+   */
+  private void addMissingColumn(String table, String column, String type) {
+    try {
+      PreparedStatement stat = this.db.createStatement("PRAGMA table_info(" + table + ");");
+      ResultSet rs = stat.executeQuery();
+      boolean hasColumn = false;
+      while (rs.next()) {
+        hasColumn |= rs.getString("name").equals(column);
+      }
+      stat.close();
+      rs.close();
+      if (!hasColumn) {
+        stat = this.db.createStatement(
+            "ALTER TABLE " + table + " ADD COLUMN " + column + " " + type + ";");
+        stat.executeUpdate();
+        stat.close();
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException("bad SQL operation while adding column " + column);
+    }
   }
 
   /**
@@ -139,7 +175,7 @@ public class CoordinatorDatabaseClient {
   }
 
   /**
-   * Creates a new user using username, hashedPassword, and weeklySchedule.
+   * Creates a new user using username, hashedPassword, weeklySchedule, and availabilityLevels.
    *
    * @param newUser        User representation of new user
    * @param hashedPassword hashed password of new user
@@ -152,11 +188,13 @@ public class CoordinatorDatabaseClient {
     } else {
       try {
         PreparedStatement stat = this.db.createStatement(
-            "INSERT INTO user (username, hashedPassword, weeklySchedule) VALUES (?, ?, ?);"
+            "INSERT INTO user (username, hashedPassword, weeklySchedule, availabilityLevels) "
+                + "VALUES (?, ?, ?, ?);"
         );
         stat.setString(1, username);
         stat.setString(2, hashedPassword);
         stat.setBytes(3, toByteArray(newUser.getWeeklySchedule()));
+        stat.setBytes(4, toPackedLevels(newUser));
         stat.executeUpdate();
         stat.close();
         return true;
@@ -177,7 +215,7 @@ public class CoordinatorDatabaseClient {
   public User getUser(String username, boolean getMeetingGroups) {
     try {
       PreparedStatement stat = this.db.createStatement(
-          "SELECT weeklySchedule FROM user WHERE username = ?;"
+          "SELECT weeklySchedule, availabilityLevels FROM user WHERE username = ?;"
       );
       stat.setString(1, username);
       ResultSet rs = stat.executeQuery();
@@ -187,6 +225,7 @@ public class CoordinatorDatabaseClient {
         return null;
       } else { // User exists
         byte[] weeklyScheduleBytes = rs.getBytes(1);
+        byte[] availabilityLevelsBytes = rs.getBytes(2);
         stat.close();
         rs.close();
 
@@ -237,18 +276,25 @@ public class CoordinatorDatabaseClient {
             if (currentState != MeetingGroup.MeetingGroupState.OPEN) {
               // get MeetingGroup's MeetingTimes
               PreparedStatement stat1 = this.db.createStatement(
-                  "SELECT meetingTime.*, SUM(meetingTimePreference.preferenceScore) "
+                  "SELECT meetingTime.id, meetingTime.meetingGroupId, meetingTime.startIndex, "
+                      + "meetingTime.endIndex, meetingTime.availabilityRank, meetingTime.rgb, "
+                      + "SUM(meetingTimePreference.preferenceScore), meetingTime.planIndex "
                       + "FROM meetingTime "
                       + "LEFT JOIN meetingTimePreference "
                       + "ON meetingTime.id = meetingTimePreference.meetingTimeId "
                       + "WHERE meetingTime.meetingGroupId = ? "
+                      + "AND meetingTime.availabilityRank <= ? "
                       + "GROUP BY meetingTime.id "
-                      + "ORDER BY meetingTime.availabilityRank "
-                      + "LIMIT 5;"
+                      + "ORDER BY meetingTime.availabilityRank, meetingTime.planIndex;"
               );
               stat1.setInt(1, id);
+              stat1.setInt(2, MEETING_TIME_OPTIONS);
               ResultSet rs1 = stat1.executeQuery();
               while (rs1.next()) {
+                Integer planIndex = rs1.getInt(6 + 2);
+                if (rs1.wasNull()) {
+                  planIndex = null;
+                }
                 meetingGroup.addMeetingTime(new MeetingTime(
                     rs1.getInt(1),
                     rs1.getInt(2),
@@ -256,7 +302,8 @@ public class CoordinatorDatabaseClient {
                     rs1.getInt(4),
                     rs1.getInt(5),
                     rs1.getString(6),
-                    rs1.getInt(6 + 1)
+                    rs1.getInt(6 + 1),
+                    planIndex
                 ));
               }
               stat1.close();
@@ -279,7 +326,9 @@ public class CoordinatorDatabaseClient {
           stat.close();
           rs.close();
         }
-        return new User(username, toBoolArray(weeklyScheduleBytes), meetingGroups);
+        boolean[] weeklySchedule = toBoolArray(weeklyScheduleBytes);
+        return new User(username, weeklySchedule,
+            toLevelArray(availabilityLevelsBytes, weeklySchedule), meetingGroups);
       }
     } catch (SQLException e) {
       throw new RuntimeException("bad SQL operation while getting user");
@@ -288,6 +337,7 @@ public class CoordinatorDatabaseClient {
 
   /**
    * Updates an existing user's weeklySchedule. To avoid updating a property, set it to null.
+   * Updating the weeklySchedule also replaces the availabilityLevels with the user's own, if any.
    *
    * @param updatedUser User representation of existing user with updated properties
    * @return true if existing user has been updated, false otherwise (e.g. if user doesn't exist)
@@ -299,15 +349,20 @@ public class CoordinatorDatabaseClient {
     } else {
       try {
         PreparedStatement stat = this.db.createStatement(
-            "UPDATE user SET weeklySchedule = COALESCE(?, weeklySchedule) "
+            "UPDATE user SET weeklySchedule = COALESCE(?, weeklySchedule), "
+                + "availabilityLevels = CASE WHEN ? IS NULL THEN availabilityLevels ELSE ? END "
                 + "WHERE username = ?;"
         );
         if (updatedUser.getWeeklySchedule() == null) {
           stat.setNull(1, Types.BLOB);
+          stat.setNull(2, Types.BLOB);
         } else {
-          stat.setBytes(1, toByteArray(updatedUser.getWeeklySchedule()));
+          byte[] weeklyScheduleBytes = toByteArray(updatedUser.getWeeklySchedule());
+          stat.setBytes(1, weeklyScheduleBytes);
+          stat.setBytes(2, weeklyScheduleBytes);
         }
-        stat.setString(2, username);
+        stat.setBytes(3, toPackedLevels(updatedUser));
+        stat.setString(4, username);
         stat.executeUpdate();
         stat.close();
         return true;
@@ -589,14 +644,17 @@ public class CoordinatorDatabaseClient {
     try {
       List<User> users = new ArrayList<>();
       PreparedStatement stat = this.db.createStatement(
-          "SELECT user.username, user.weeklySchedule FROM meetingGroupMembership "
+          "SELECT user.username, user.weeklySchedule, user.availabilityLevels "
+              + "FROM meetingGroupMembership "
               + "INNER JOIN user ON user.username = meetingGroupMembership.username "
               + "WHERE meetingGroupMembership.meetingGroupId = ?;"
       );
       stat.setInt(1, meetingGroupId);
       ResultSet rs = stat.executeQuery();
       while (rs.next()) {
-        users.add(new User(rs.getString(1), toBoolArray(rs.getBytes(2)), null));
+        boolean[] weeklySchedule = toBoolArray(rs.getBytes(2));
+        users.add(new User(rs.getString(1), weeklySchedule,
+            toLevelArray(rs.getBytes(3), weeklySchedule), null));
       }
       stat.close();
       rs.close();
@@ -632,13 +690,18 @@ public class CoordinatorDatabaseClient {
         // Create meetingTime.
         stat = this.db.createStatement(
             "INSERT INTO meetingTime (meetingGroupId, startIndex, endIndex, "
-                + "availabilityRank, rgb) VALUES (?, ?, ?, ?, ?);"
+                + "availabilityRank, rgb, planIndex) VALUES (?, ?, ?, ?, ?, ?);"
         );
         stat.setInt(1, meetingGroupId);
         stat.setInt(2, meetingTime.getStartIndex());
         stat.setInt(3, meetingTime.getEndIndex());
         stat.setInt(4, meetingTime.getAvailabilityRank());
         stat.setString(5, meetingTime.getRgb());
+        if (meetingTime.getPlanIndex() == null) {
+          stat.setNull(6, Types.INTEGER);
+        } else {
+          stat.setInt(6, meetingTime.getPlanIndex());
+        }
         stat.executeUpdate();
         stat.close();
 
@@ -695,11 +758,12 @@ public class CoordinatorDatabaseClient {
                 + "ON meetingTimePreference.meetingTimeId = meetingTime.id "
                 + "WHERE meetingTimePreference.username = ? "
                 + "AND meetingTime.meetingGroupId = ? "
-                + "ORDER BY meetingTime.availabilityRank "
-                + "LIMIT 5;"
+                + "AND meetingTime.availabilityRank <= ? "
+                + "ORDER BY meetingTime.availabilityRank, meetingTime.planIndex;"
         );
         stat.setString(1, username);
         stat.setInt(2, meetingGroupId);
+        stat.setInt(3, MEETING_TIME_OPTIONS);
         ResultSet rs = stat.executeQuery();
         while (rs.next()) {
           preferences.add(new MeetingTimePreference(rs.getString(1), rs.getInt(2), rs.getInt(3),
@@ -842,4 +906,32 @@ public class CoordinatorDatabaseClient {
     }
     return byteArray;
   }
+
+  /**
+   * Converts availability levels packed 2 bits to a slot back to one level per slot.
+   *
+   * @param packedLevels   packed levels to convert
+   * @param weeklySchedule weekly schedule the levels belong to, giving the amount of slots
+   * @return one AvailabilityLevels level per slot, or null if either input is null
+   */
+  private static byte[] toLevelArray(byte[] packedLevels, boolean[] weeklySchedule) {
+    if (packedLevels == null || weeklySchedule == null) {
+      return null;
+    }
+    return AvailabilityLevels.unpack(packedLevels, weeklySchedule.length);
+  }
+
+  /**
+   * Converts a user's availability levels to a byte array, packing 2 bits to a slot.
+   *
+   * @param user user whose levels to convert
+   * @return byte array that is 1/4 times the length of the levels, or null if the user has no
+   * availability levels of their own
+   */
+  private static byte[] toPackedLevels(User user) {
+    if (!user.hasAvailabilityLevels()) {
+      return null;
+    }
+    return AvailabilityLevels.pack(user.getAvailabilityLevels());
+  }
 }
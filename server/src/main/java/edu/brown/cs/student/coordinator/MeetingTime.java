@@ -11,6 +11,7 @@ public class MeetingTime {
   private Integer availabilityRank;
   private String rgb;
   private Integer totalPreferenceScore;
+  private Integer planIndex;
 
   /**
    * Constructor.
@@ -22,10 +23,13 @@ public class MeetingTime {
    * @param availabilityRank     rank of availability (e.g. 1, 2, 3, ..., where 1 is the "best")
    * @param totalPreferenceScore sum of all group members' preference scores for this meeting time
    * @param rgb                  display color
+   * @param planIndex            place of this meeting in its group's weekly plan (0 is the first
+   *                             meeting of the week), or null if it is an alternative to vote on
    */
 
   public MeetingTime(Integer id, Integer meetingGroupId, Integer startIndex, Integer endIndex,
-                     Integer availabilityRank, String rgb, Integer totalPreferenceScore) {
+                     Integer availabilityRank, String rgb, Integer totalPreferenceScore,
+                     Integer planIndex) {
     this.id = id;
     this.meetingGroupId = meetingGroupId;
     this.startIndex = startIndex;
@@ -33,6 +37,7 @@ public class MeetingTime {
     this.availabilityRank = availabilityRank;
     this.rgb = rgb;
     this.totalPreferenceScore = totalPreferenceScore;
+    this.planIndex = planIndex;
   }
 
   /**
@@ -97,4 +102,14 @@ public class MeetingTime {
   public String getRgb() {
     return rgb;
   }
+
+  /**
+   * Gets planIndex. The meetings of a weekly plan all happen, so together they are one option
+   * sharing one availabilityRank.
+   *
+   * @return planIndex, or null if this meeting time is an alternative on its own
+   */
+  public Integer getPlanIndex() {
+    return planIndex;
+  }
 }
@@ -1,15 +1,21 @@
 package edu.brown.cs.student.coordinator;
 
-import edu.brown.cs.student.kmeans.VectorData;
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
+import edu.brown.cs.student.kmeans.BitVectors;
+import edu.brown.cs.student.kmeans.LevelVectorData;
 
 import java.util.List;
 
 /**
  * Class representing a user.
  */
-public class User implements VectorData<User> {
+public class User implements LevelVectorData<User> {
   private String username;
   private boolean[] weeklySchedule;
+  private byte[] availabilityLevels;
+  private long[] packedWeeklySchedule;
+  private long[][] packedAvailabilityLevels;
+  private double[] levelWeights = AvailabilityLevels.getDefaultWeights();
   private List<MeetingGroup> meetingGroups;
   public static final int WEEKLY_SCHEDULE_SIZE = 7 * 24 * 4;
 
@@ -21,9 +27,27 @@ public class User implements VectorData<User> {
    * @param meetingGroups  of user
    */
   public User(String username, boolean[] weeklySchedule, List<MeetingGroup> meetingGroups) {
+    this(username, weeklySchedule, null, meetingGroups);
+  }
+
+  /**
+   * Constructor with availability levels. If there are levels, the weekly schedule is derived
+   * from them instead.
+   *
+   * @param username           of user
+   * @param weeklySchedule     of user
+   * @param availabilityLevels of user, one AvailabilityLevels level per slot, or null if the user
+   *                           only has a weekly schedule
+   * @param meetingGroups      of user
+   */
+  public User(String username, boolean[] weeklySchedule, byte[] availabilityLevels,
+              List<MeetingGroup> meetingGroups) {
     this.username = username;
     this.weeklySchedule = weeklySchedule;
     this.meetingGroups = meetingGroups;
+    if (availabilityLevels != null) {
+      updateAvailabilityLevels(availabilityLevels);
+    }
   }
 
   /**
@@ -44,6 +68,39 @@ public class User implements VectorData<User> {
     return this.weeklySchedule;
   }
 
+  /**
+   * Availability levels getter. A user who never set levels is AVAILABLE wherever their weekly
+   * schedule is free.
+   *
+   * @return one AvailabilityLevels level per slot, or null if there is no weekly schedule
+   */
+  public byte[] getAvailabilityLevels() {
+    if (this.availabilityLevels == null && this.weeklySchedule != null) {
+      return AvailabilityLevels.fromSchedule(this.weeklySchedule);
+    }
+    return this.availabilityLevels;
+  }
+
+  /**
+   * Set how much a slot at each availability level weighs when grouping this user and picking
+   * times. Users are only weighed level by level together when they share the same weights.
+   *
+   * @param newLevelWeights weight of each AvailabilityLevels level, with UNAVAILABLE at 0
+   */
+  public void setLevelWeights(double[] newLevelWeights) {
+    AvailabilityLevels.checkWeights(newLevelWeights);
+    this.levelWeights = newLevelWeights.clone();
+  }
+
+  /**
+   * Checks whether the user set availability levels, rather than only a weekly schedule.
+   *
+   * @return true if the user has availability levels of their own
+   */
+  public boolean hasAvailabilityLevels() {
+    return this.availabilityLevels != null;
+  }
+
   /**
    * Meeting groups getter.
    *
@@ -60,6 +117,24 @@ public class User implements VectorData<User> {
    */
   public void updateWeeklySchedule(boolean[] newWeeklySchedule) {
     this.weeklySchedule = newWeeklySchedule;
+    this.availabilityLevels = null;
+    this.packedWeeklySchedule = null;
+    this.packedAvailabilityLevels = null;
+  }
+
+  /**
+   * Update availability levels, and the weekly schedule with them.
+   *
+   * @param newAvailabilityLevels to update to, one AvailabilityLevels level per slot
+   */
+  public void updateAvailabilityLevels(byte[] newAvailabilityLevels) {
+    if (newAvailabilityLevels == null) {
+      updateWeeklySchedule(null);
+      return;
+    }
+    AvailabilityLevels.checkLevels(newAvailabilityLevels);
+    updateWeeklySchedule(AvailabilityLevels.toSchedule(newAvailabilityLevels));
+    this.availabilityLevels = newAvailabilityLevels;
   }
 
   /**
@@ -73,17 +148,31 @@ public class User implements VectorData<User> {
 
   @Override
   public double[] getVector() {
-    // convert boolean to 0s and 1s
-    double[] converted = new double[WEEKLY_SCHEDULE_SIZE];
-    for (int i = 0; i < WEEKLY_SCHEDULE_SIZE; i++) {
-      if (weeklySchedule[i]) {
-        converted[i] = 1;
-      } else {
-        converted[i] = 0;
-      }
+    // convert levels to their weights, which are 0s and 1s without levels by default
+    return AvailabilityLevels.toCoords(this, levelWeights);
+  }
+
+  @Override
+  public long[] getBits() {
+    // packed lazily and cached, since grouping reads it many times
+    if (packedWeeklySchedule == null) {
+      packedWeeklySchedule = BitVectors.pack(weeklySchedule);
     }
+    return packedWeeklySchedule;
+  }
 
-    return converted;
+  @Override
+  public long[] getLevelBits(int level) {
+    // packed lazily and cached, like the weekly schedule
+    if (packedAvailabilityLevels == null) {
+      packedAvailabilityLevels = AvailabilityLevels.packLevelBits(getAvailabilityLevels());
+    }
+    return packedAvailabilityLevels[level];
+  }
+
+  @Override
+  public double[] getLevelWeights() {
+    return levelWeights;
   }
 
   @Override
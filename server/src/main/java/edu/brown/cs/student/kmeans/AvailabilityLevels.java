@@ -0,0 +1,266 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers for schedules whose slots each hold one of a few quantized availability levels rather
+ * than a yes or no. A level fits in 2 bits, so a schedule is stored 4 slots to a byte, and in
+ * memory as one packed bitset per level (see LevelVectorData), which lets the popcount kernels
+ * weigh each level without expanding schedules into doubles. How much each level weighs is up to
+ * the schedules, which default to getDefaultWeights.
+ */
+public final class AvailabilityLevels {
+  /**
+   * The level of a slot that cannot be attended.
+   */
+  public static final byte UNAVAILABLE = 0;
+  /**
+   * The level of a slot that can be attended, but would rather not be.
+   */
+  public static final byte INCONVENIENT = 1;
+  /**
+   * The level of a slot that can be attended.
+   */
+  public static final byte AVAILABLE = 2;
+  /**
+   * The level of a slot that is preferred.
+   */
+  public static final byte PREFERRED = 3;
+  /**
+   * The amount of levels.
+   */
+  public static final int LEVEL_COUNT = 4;
+  /**
+   * The number of bits holding one level.
+   */
+  private static final int BITS_PER_LEVEL = 2;
+  /**
+   * The number of levels packed into one byte.
+   */
+  private static final int LEVELS_PER_BYTE = Byte.SIZE / BITS_PER_LEVEL;
+  /**
+   * The mask selecting one level from a packed byte.
+   */
+  private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+  /**
+   * The default weight of each level, indexed by level. An available slot weighs 1, so schedules
+   * without levels weigh the same as before.
+   */
+  private static final double[] DEFAULT_WEIGHTS = {0, 0.5, 1, 1.5};
+
+  /**
+   * Constructor.
+   */
+  private AvailabilityLevels() {
+  }
+
+  /**
+   * Getter for the default weight of each level.
+   *
+   * @return - a copy of the default weights, indexed by level
+   */
+  public static double[] getDefaultWeights() {
+    return DEFAULT_WEIGHTS.clone();
+  }
+
+  /**
+   * Checks that an array holds a weight for every level, that no weight is negative, and that
+   * unavailable slots weigh nothing, so that only the set bits of a schedule need visiting.
+   *
+   * @param weights - the weights to check, indexed by level
+   */
+  public static void checkWeights(double[] weights) {
+    if (weights.length != LEVEL_COUNT || weights[UNAVAILABLE] != 0) {
+      throw new RuntimeException("There must be a weight per level, and unavailable weighs 0.");
+    }
+    for (double weight : weights) {
+      if (!(weight >= 0)) {
+        throw new RuntimeException("Level weights must not be negative.");
+      }
+    }
+  }
+
+  /**
+   * Finds the level weights that every vector in a list shares.
+   *
+   * @param vectors - the vectors
+   * @return - their shared weights, or null if the list is empty, any vector is not a
+   * LevelVectorData, or two vectors weigh the levels differently
+   */
+  public static double[] findSharedWeights(List<? extends VectorData<?>> vectors) {
+    double[] weights = null;
+    for (VectorData<?> vector : vectors) {
+      if (!(vector instanceof LevelVectorData)) {
+        return null;
+      }
+      double[] vectorWeights = ((LevelVectorData<?>) vector).getLevelWeights();
+      if (weights == null) {
+        weights = vectorWeights;
+      } else if (!Arrays.equals(weights, vectorWeights)) {
+        return null;
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Checks whether a vector's support is the whole vector, so that its packed bits can stand in
+   * for its coordinates: it is a BitVectorData, but not a LevelVectorData.
+   *
+   * @param vector - the vector
+   * @return - true if every coordinate of the vector is 0 or 1 and its bits hold them
+   */
+  public static boolean isBinary(VectorData<?> vector) {
+    return vector instanceof BitVectorData && !(vector instanceof LevelVectorData);
+  }
+
+  /**
+   * Checks that every entry of an array is a level.
+   *
+   * @param levels - the levels to check
+   */
+  public static void checkLevels(byte[] levels) {
+    for (byte level : levels) {
+      if (level < UNAVAILABLE || level >= LEVEL_COUNT) {
+        throw new RuntimeException("Invalid availability level " + level + ".");
+      }
+    }
+  }
+
+  /**
+   * Converts a yes or no schedule into levels.
+   *
+   * @param schedule - whether each slot can be attended
+   * @return - AVAILABLE for every attendable slot, UNAVAILABLE for the rest
+   */
+  public static byte[] fromSchedule(boolean[] schedule) {
+    byte[] levels = new byte[schedule.length];
+    for (int i = 0; i < schedule.length; i++) {
+      if (schedule[i]) {
+        levels[i] = AVAILABLE;
+      }
+    }
+    return levels;
+  }
+
+  /**
+   * Converts levels into a yes or no schedule.
+   *
+   * @param levels - the level of each slot
+   * @return - whether each slot can be attended at all, that is, is above UNAVAILABLE
+   */
+  public static boolean[] toSchedule(byte[] levels) {
+    boolean[] schedule = new boolean[levels.length];
+    for (int i = 0; i < levels.length; i++) {
+      schedule[i] = levels[i] != UNAVAILABLE;
+    }
+    return schedule;
+  }
+
+  /**
+   * Packs levels 4 to a byte, for storage.
+   *
+   * @param levels - the level of each slot
+   * @return - the packed levels, with levels[i] stored in bits 2 * (i % 4) and up of byte i / 4
+   */
+  public static byte[] pack(byte[] levels) {
+    byte[] packed = new byte[(levels.length + LEVELS_PER_BYTE - 1) / LEVELS_PER_BYTE];
+    for (int i = 0; i < levels.length; i++) {
+      packed[i / LEVELS_PER_BYTE] |= levels[i] << (i % LEVELS_PER_BYTE * BITS_PER_LEVEL);
+    }
+    return packed;
+  }
+
+  /**
+   * Unpacks levels packed by pack.
+   *
+   * @param packed - the packed levels
+   * @param length - the amount of slots
+   * @return - the level of each slot
+   */
+  public static byte[] unpack(byte[] packed, int length) {
+    if (packed.length * LEVELS_PER_BYTE < length) {
+      throw new RuntimeException("Too few packed levels for the schedule.");
+    }
+    byte[] levels = new byte[length];
+    for (int i = 0; i < length; i++) {
+      levels[i] = (byte) ((packed[i / LEVELS_PER_BYTE] >> (i % LEVELS_PER_BYTE * BITS_PER_LEVEL))
+          & LEVEL_MASK);
+    }
+    return levels;
+  }
+
+  /**
+   * Packs the slots at each level into bitsets.
+   *
+   * @param levels - the level of each slot
+   * @return - an array indexed by level, whose entry for level l holds the slots at level l
+   */
+  public static long[][] packLevelBits(byte[] levels) {
+    long[][] levelBits = new long[LEVEL_COUNT][BitVectors.wordCount(levels.length)];
+    for (int i = 0; i < levels.length; i++) {
+      levelBits[levels[i]][i / BitVectors.WORD_SIZE] |= 1L << i;
+    }
+    return levelBits;
+  }
+
+  /**
+   * Calculates the dot product of a leveled vector, weighted by level, and a row of a flat
+   * coordinate array.
+   *
+   * @param vector     - the leveled vector
+   * @param weights    - the weight of each level
+   * @param flatCoords - an array holding the other vector starting at offset
+   * @param offset     - the index in flatCoords where the other vector starts
+   * @return - their dot product
+   */
+  public static double dot(LevelVectorData<?> vector, double[] weights, double[] flatCoords,
+                           int offset) {
+    double dot = 0;
+    for (int level = INCONVENIENT; level < LEVEL_COUNT; level++) {
+      if (weights[level] != 0) {
+        dot += weights[level] * BitVectors.dot(vector.getLevelBits(level), flatCoords, offset);
+      }
+    }
+    return dot;
+  }
+
+  /**
+   * Calculates the squared magnitude of a leveled vector, weighted by level.
+   *
+   * @param vector  - the leveled vector
+   * @param weights - the weight of each level
+   * @return - the sum of every slot's squared weight
+   */
+  public static double magnitudeSquared(LevelVectorData<?> vector, double[] weights) {
+    double magnitudeSquared = 0;
+    for (int level = INCONVENIENT; level < LEVEL_COUNT; level++) {
+      magnitudeSquared +=
+          weights[level] * weights[level] * BitVectors.popcount(vector.getLevelBits(level));
+    }
+    return magnitudeSquared;
+  }
+
+  /**
+   * Expands a leveled vector into coordinates, weighted by level.
+   *
+   * @param vector  - the leveled vector
+   * @param weights - the weight of each level
+   * @return - the weight of every slot's level
+   */
+  public static double[] toCoords(LevelVectorData<?> vector, double[] weights) {
+    double[] coords = new double[vector.getLength()];
+    for (int level = INCONVENIENT; level < LEVEL_COUNT; level++) {
+      long[] bits = vector.getLevelBits(level);
+      for (int w = 0; w < bits.length; w++) {
+        long word = bits[w];
+        while (word != 0) {
+          coords[w * BitVectors.WORD_SIZE + Long.numberOfTrailingZeros(word)] = weights[level];
+          word &= word - 1;
+        }
+      }
+    }
+    return coords;
+  }
+}
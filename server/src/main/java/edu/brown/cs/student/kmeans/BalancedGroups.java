@@ -0,0 +1,437 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A grouping engine that runs kMeans once, with one cluster per group, and then places every
+ * vector into a group of exactly the right size with a capacity-constrained auction. Unlike
+ * KMeansGroups, which reruns kMeans after peeling off each group, the cost is one clustering
+ * plus a few assignments, so it scales to splitting large groups into many small ones.
+ *
+ * @param <T> - The type of objects to be grouped, must have coordinates and can
+ *            be treated like a vector.
+ */
+public class BalancedGroups<T extends VectorData<T>> implements GroupingEngine<T> {
+  /**
+   * How long to run kMeans for.
+   */
+  private static final int MAX_ITERATIONS = 100;
+  /**
+   * The amount of vectors at which work starts running on the common ForkJoinPool.
+   */
+  private static final int PARALLEL_THRESHOLD = 256;
+  /**
+   * The amount of groups at which kMeans starts pruning distance computations.
+   */
+  private static final int PRUNING_THRESHOLD = 16;
+  /**
+   * The centroid movement (in cosine distance) below which kMeans counts as converged.
+   */
+  private static final double CENTROID_TOLERANCE = 1e-6;
+  /**
+   * The fraction of reassigned vectors below which kMeans counts as converged.
+   */
+  private static final double REASSIGNMENT_TOLERANCE = 1e-3;
+  /**
+   * The most vector to group similarities to cache before computing them on demand.
+   */
+  private static final int MAX_CACHED_BENEFITS = 1 << 22;
+  /**
+   * The bid increment of the first auction phase. Similarities lie in [0, 1] for coordinates
+   * between 0 and 1, so this is a coarse first pass.
+   */
+  private static final double START_EPSILON = 0.25;
+  /**
+   * How much the bid increment shrinks between auction phases.
+   */
+  private static final int EPSILON_FACTOR = 4;
+  /**
+   * The most total similarity the final assignment may lose to the optimal one, which sets the
+   * bid increment of the last phase.
+   */
+  private static final double MAX_TOTAL_LOSS = 1e-3;
+  /**
+   * The most times to move the centroids to the groups found and assign again.
+   */
+  private static final int MAX_REFINEMENTS = 5;
+  /**
+   * How many bids the auction makes between checks of the deadline and cancellation.
+   */
+  private static final int BIDS_PER_STOP_CHECK = 256;
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final long NANOS_PER_MILLI = 1_000_000;
+  /**
+   * The vectors to be grouped.
+   */
+  private final List<T> vectorList;
+  /**
+   * The normalized vectors, parallel to vectorList.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The size of each group.
+   */
+  private final int groupSize;
+  /**
+   * The random number generator used to seed kMeans.
+   */
+  private final Random rand;
+  /**
+   * The pool to run on, or null to run on the calling thread.
+   */
+  private final ForkJoinPool pool;
+  /**
+   * The amount of groups to make.
+   */
+  private int groupCount;
+  /**
+   * The coordinates of each group's centroid, stored row by row.
+   */
+  private double[] centroids;
+  /**
+   * The squared magnitude of each centroid.
+   */
+  private double[] centroidMagnitudes;
+  /**
+   * The similarity of every vector to every centroid, stored row by row per vector, or null if
+   * there are too many to cache.
+   */
+  private double[] benefits;
+
+  /**
+   * The constructor for BalancedGroups. Each vector in vector list is assumed to have the same
+   * amount of coordinates between 0 and 1, and group size is assumed to be a positive integer.
+   *
+   * @param groupSize  - the size of each group
+   * @param vectorList - the list of vectors to be grouped
+   */
+  public BalancedGroups(int groupSize, List<T> vectorList) {
+    this(groupSize, vectorList, new Random());
+  }
+
+  /**
+   * A constructor for BalancedGroups with a given random number generator, so that groupings can
+   * be reproduced by seeding it.
+   *
+   * @param groupSize  - the size of each group
+   * @param vectorList - the list of vectors to be grouped
+   * @param rand       - the random number generator used to seed kMeans
+   */
+  public BalancedGroups(int groupSize, List<T> vectorList, Random rand) {
+    if (vectorList.size() == 0 || groupSize == 0) {
+      throw new RuntimeException();
+    }
+    this.vectorList = new ArrayList<>(vectorList);
+    this.store = new UnitVectorStore(this.vectorList);
+    this.groupSize = groupSize;
+    this.rand = rand;
+    if (vectorList.size() >= PARALLEL_THRESHOLD) {
+      this.pool = ForkJoinPool.commonPool();
+    } else {
+      this.pool = null;
+    }
+  }
+
+  @Override
+  public List<List<T>> getGroups() {
+    return getGroups(0, null).getGroups();
+  }
+
+  /**
+   * Divides the vectors into groups within a time budget. Once the budget runs out or the token
+   * is cancelled, kMeans stops after its current iteration and no more refinements are made; the
+   * first auction always runs, since it is what makes the groups the right sizes.
+   *
+   * @param budgetMillis - the wall-clock budget in milliseconds, or 0 for no budget
+   * @param token        - a token to cancel the grouping with, or null
+   * @return - the groups, and whether they were cut short
+   */
+  @Override
+  public GroupingResult<T> getGroups(long budgetMillis, CancellationToken token) {
+    long start = System.nanoTime();
+    List<List<T>> groupings = new ArrayList<>();
+    int n = vectorList.size();
+    if (n < groupSize) {
+      groupings.add(new ArrayList<>(vectorList));
+      return GroupingResult.of(groupings, false, token, start);
+    }
+    long deadline = start + budgetMillis * NANOS_PER_MILLI;
+    groupCount = n / groupSize;
+    CosineKMeans<T> kMeans =
+        new CosineKMeans<>(groupCount, vectorList, store, MAX_ITERATIONS, rand);
+    kMeans.setPool(pool);
+    kMeans.setPruning(groupCount >= PRUNING_THRESHOLD);
+    kMeans.setCentroidTolerance(CENTROID_TOLERANCE);
+    kMeans.setReassignmentTolerance(REASSIGNMENT_TOLERANCE);
+    if (budgetMillis > 0) {
+      kMeans.setDeadline(deadline);
+    }
+    kMeans.setCancellation(token);
+    kMeans.createClusters();
+    KMeansReport report = kMeans.getReport();
+    boolean cutShort = !report.isConverged() && report.getIterations() < MAX_ITERATIONS;
+    centroids = kMeans.getCentroids();
+    int[] capacities = findCapacities(n);
+    BooleanSupplier stopped = () -> (budgetMillis > 0 && System.nanoTime() - deadline >= 0)
+        || CancellationToken.isCancelled(token);
+    int[] groups = null;
+    for (int round = 0; round < MAX_REFINEMENTS; round++) {
+      if (stopped.getAsBoolean()) {
+        cutShort = true;
+        break;
+      }
+      findBenefits();
+      int[] assigned = auction(capacities, stopped);
+      if (assigned == null) {
+        cutShort = true;
+        break;
+      }
+      if (Arrays.equals(assigned, groups)) {
+        break;
+      }
+      groups = assigned;
+      moveCentroids(groups);
+    }
+    if (groups == null) {
+      groups = fillInClusterOrder(kMeans.getAssignments(), capacities);
+    }
+    for (int g = 0; g < groupCount; g++) {
+      groupings.add(new ArrayList<>());
+    }
+    for (int p = 0; p < n; p++) {
+      groupings.get(groups[p]).add(vectorList.get(p));
+    }
+    return GroupingResult.of(groupings, cutShort, token, start);
+  }
+
+  /**
+   * Fills the groups without an auction, for when there is no time for one. The vectors are
+   * lined up cluster by cluster and cut into consecutive groups of the given sizes, so each group
+   * mostly comes from one cluster.
+   *
+   * @param clusters   - the cluster of each vector
+   * @param capacities - the size of each group
+   * @return - the group of each vector
+   */
+  private int[] fillInClusterOrder(int[] clusters, int[] capacities) {
+    int n = clusters.length;
+    int[] clusterStarts = new int[groupCount + 1];
+    for (int cluster : clusters) {
+      clusterStarts[cluster + 1]++;
+    }
+    for (int c = 0; c < groupCount; c++) {
+      clusterStarts[c + 1] += clusterStarts[c];
+    }
+    int[] order = new int[n];
+    for (int p = 0; p < n; p++) {
+      order[clusterStarts[clusters[p]]++] = p;
+    }
+    int[] groups = new int[n];
+    int next = 0;
+    for (int g = 0; g < groupCount; g++) {
+      for (int i = 0; i < capacities[g]; i++) {
+        groups[order[next++]] = g;
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Finds the size of each group, spreading the vectors left over by groupSize as evenly as
+   * possible.
+   *
+   * @param n - the amount of vectors
+   * @return - the size of each group
+   */
+  private int[] findCapacities(int n) {
+    int[] capacities = new int[groupCount];
+    for (int g = 0; g < groupCount; g++) {
+      capacities[g] = n / groupCount;
+      if (g < n % groupCount) {
+        capacities[g]++;
+      }
+    }
+    return capacities;
+  }
+
+  /**
+   * Finds the centroid magnitudes, and caches every similarity if there are few enough.
+   */
+  private void findBenefits() {
+    int attrCount = store.getLength();
+    centroidMagnitudes = new double[groupCount];
+    for (int g = 0; g < groupCount; g++) {
+      centroidMagnitudes[g] = VectorKernels.magnitudeSquared(centroids, g * attrCount, attrCount);
+    }
+    benefits = null;
+    if ((long) store.size() * groupCount > MAX_CACHED_BENEFITS) {
+      return;
+    }
+    double[] cached = new double[store.size() * groupCount];
+    ParallelLoops.forEach(pool, store.size(), p -> {
+      for (int g = 0; g < groupCount; g++) {
+        cached[p * groupCount + g] = similarity(p, g);
+      }
+    });
+    benefits = cached;
+  }
+
+  /**
+   * Finds how well a vector fits a group.
+   *
+   * @param p - the index of the vector
+   * @param g - the index of the group
+   * @return - the cosine similarity between the vector and the group's centroid
+   */
+  private double benefit(int p, int g) {
+    if (benefits != null) {
+      return benefits[p * groupCount + g];
+    }
+    return similarity(p, g);
+  }
+
+  /**
+   * Calculates the cosine similarity between a vector and a group's centroid.
+   *
+   * @param p - the index of the vector
+   * @param g - the index of the group
+   * @return - the cosine similarity between them
+   */
+  private double similarity(int p, int g) {
+    return 1 - store.cosDistance(p, centroids, g * store.getLength(), centroidMagnitudes[g]);
+  }
+
+  /**
+   * Assigns every vector to a group, filling each group exactly to capacity while maximizing
+   * the total similarity of vectors to their group's centroid. Runs an auction in which each
+   * group offers one slot per unit of capacity: unassigned vectors bid for the cheapest slot of
+   * the group they value most (similarity minus price), outbidding its holder, who then bids
+   * again. Each phase shrinks the bid increment epsilon and keeps the prices, and the last phase
+   * is within n * epsilon of the best total similarity.
+   *
+   * @param capacities - the size of each group, summing to the amount of vectors
+   * @param stopped    - checked every few bids, stopping the auction once it returns true
+   * @return - the group of each vector, or null if the auction was stopped
+   */
+  private int[] auction(int[] capacities, BooleanSupplier stopped) {
+    int n = store.size();
+    double[] slotPrices = new double[n];
+    int[] slotGroups = new int[n];
+    int[] slotHolders = new int[n];
+    int[] personSlots = new int[n];
+    Comparator<Integer> byPrice = Comparator.<Integer>comparingDouble(s -> slotPrices[s])
+        .thenComparingInt(s -> s);
+    List<PriorityQueue<Integer>> groupSlots = new ArrayList<>(groupCount);
+    int slot = 0;
+    for (int g = 0; g < groupCount; g++) {
+      PriorityQueue<Integer> slots = new PriorityQueue<>(capacities[g], byPrice);
+      for (int i = 0; i < capacities[g]; i++) {
+        slotGroups[slot] = g;
+        slots.add(slot++);
+      }
+      groupSlots.add(slots);
+    }
+    double finalEpsilon = MAX_TOTAL_LOSS / n;
+    double epsilon = Math.max(START_EPSILON, finalEpsilon);
+    while (true) {
+      Arrays.fill(slotHolders, -1);
+      Deque<Integer> unassigned = new ArrayDeque<>(n);
+      for (int p = 0; p < n; p++) {
+        unassigned.add(p);
+      }
+      int bids = 0;
+      while (!unassigned.isEmpty()) {
+        if (++bids % BIDS_PER_STOP_CHECK == 0 && stopped.getAsBoolean()) {
+          return null;
+        }
+        int p = unassigned.poll();
+        int outbid = bid(p, epsilon, slotPrices, slotHolders, personSlots, groupSlots);
+        if (outbid >= 0) {
+          unassigned.add(outbid);
+        }
+      }
+      if (epsilon <= finalEpsilon) {
+        break;
+      }
+      epsilon = Math.max(epsilon / EPSILON_FACTOR, finalEpsilon);
+    }
+    int[] groups = new int[n];
+    for (int p = 0; p < n; p++) {
+      groups[p] = slotGroups[personSlots[p]];
+    }
+    return groups;
+  }
+
+  /**
+   * Makes one vector bid for the cheapest slot of the group it values most, raising that slot's
+   * price by how much more the vector values it than its next best option, plus epsilon.
+   *
+   * @param p           - the index of the bidding vector
+   * @param epsilon     - the bid increment
+   * @param slotPrices  - the price of each slot, updated in place
+   * @param slotHolders - the vector holding each slot, or -1, updated in place
+   * @param personSlots - the slot held by each vector, updated in place
+   * @param groupSlots  - each group's slots, cheapest first
+   * @return - the vector that was outbid, or -1 if the slot was free
+   */
+  private int bid(int p, double epsilon, double[] slotPrices, int[] slotHolders,
+                  int[] personSlots, List<PriorityQueue<Integer>> groupSlots) {
+    double best = Double.NEGATIVE_INFINITY;
+    double secondBest = Double.NEGATIVE_INFINITY;
+    int bestGroup = 0;
+    for (int g = 0; g < groupCount; g++) {
+      double value = benefit(p, g) - slotPrices[groupSlots.get(g).peek()];
+      if (value > best) {
+        secondBest = best;
+        best = value;
+        bestGroup = g;
+      } else if (value > secondBest) {
+        secondBest = value;
+      }
+    }
+    PriorityQueue<Integer> slots = groupSlots.get(bestGroup);
+    int slot = slots.poll();
+    if (!slots.isEmpty()) {
+      // the group's next cheapest slot is also an alternative to this one
+      secondBest = Math.max(secondBest, benefit(p, bestGroup) - slotPrices[slots.peek()]);
+    }
+    if (secondBest == Double.NEGATIVE_INFINITY) {
+      // there is only one slot, so there is nothing to outbid
+      secondBest = best;
+    }
+    slotPrices[slot] += best - secondBest + epsilon;
+    slots.add(slot);
+    int outbid = slotHolders[slot];
+    slotHolders[slot] = p;
+    personSlots[p] = slot;
+    return outbid;
+  }
+
+  /**
+   * Moves each centroid to the normalized average of its group.
+   *
+   * @param groups - the group of each vector
+   */
+  private void moveCentroids(int[] groups) {
+    int attrCount = store.getLength();
+    double[] moved = new double[groupCount * attrCount];
+    for (int p = 0; p < groups.length; p++) {
+      store.addTo(p, moved, groups[p] * attrCount, 1);
+    }
+    for (int g = 0; g < groupCount; g++) {
+      CosineKMeans.normalizeRow(moved, g * attrCount, attrCount);
+    }
+    centroids = moved;
+  }
+}
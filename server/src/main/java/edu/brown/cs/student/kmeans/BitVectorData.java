@@ -0,0 +1,20 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * A vector whose support, the coordinates that are not 0, can be read as a packed bitset. Unless
+ * it is also a LevelVectorData, every coordinate in the support is 1, so the bitset is the whole
+ * vector. Lets the clustering code use popcount based kernels instead of multiplying 0/1 doubles,
+ * and lets feasibility checks read which coordinates are available at all.
+ *
+ * @param <T> The datatype to be represented as a bit vector
+ */
+public interface BitVectorData<T extends BitVectorData<T>> extends VectorData<T> {
+  /**
+   * Getter for the packed support of a vector. Coordinate i is bit (i % 64) of word (i / 64), set
+   * if the coordinate is not 0, and every bit past getLength() is 0. Callers must not modify the
+   * returned array.
+   *
+   * @return - the support of a vector packed into longs
+   */
+  long[] getBits();
+}
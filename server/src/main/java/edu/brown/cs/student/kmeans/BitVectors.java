@@ -0,0 +1,168 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.List;
+
+/**
+ * Distance kernels for vectors packed into longs (see BitVectorData).
+ */
+public final class BitVectors {
+  /**
+   * The number of bits in a word.
+   */
+  public static final int WORD_SIZE = Long.SIZE;
+
+  /**
+   * Constructor.
+   */
+  private BitVectors() {
+  }
+
+  /**
+   * Gets the number of words needed to hold a vector of the given length.
+   *
+   * @param length - the number of coordinates in the vector
+   * @return - the number of longs needed to pack it
+   */
+  public static int wordCount(int length) {
+    return (length + WORD_SIZE - 1) / WORD_SIZE;
+  }
+
+  /**
+   * Packs an array of booleans into longs.
+   *
+   * @param values - the booleans to pack
+   * @return - the packed bits, with values[i] stored in bit (i % 64) of word (i / 64)
+   */
+  public static long[] pack(boolean[] values) {
+    long[] bits = new long[wordCount(values.length)];
+    for (int i = 0; i < values.length; i++) {
+      if (values[i]) {
+        bits[i / WORD_SIZE] |= 1L << i;
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Counts the set bits of a packed vector, which is its squared magnitude.
+   *
+   * @param bits - a packed vector
+   * @return - the amount of 1 coordinates
+   */
+  public static int popcount(long[] bits) {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Counts, for every coordinate, how many packed vectors have it set. The counts are kept
+   * bit-sliced: plane l holds bit l of all 64 counts of a word at once, so adding a vector is a
+   * ripple of half adders (an and plus an xor per plane) across whole words, which only reaches
+   * plane l once every 2^l vectors. Counts are only unpacked into ints once, at the end.
+   *
+   * @param bitsets - the packed vectors, each of the given length
+   * @param length  - the number of coordinates in each vector
+   * @return - the amount of vectors with each coordinate set
+   */
+  public static int[] countPerCoordinate(List<long[]> bitsets, int length) {
+    int words = wordCount(length);
+    int planeCount = Integer.SIZE - Integer.numberOfLeadingZeros(bitsets.size());
+    long[][] planes = new long[Math.max(1, planeCount)][words];
+    for (long[] bits : bitsets) {
+      for (int w = 0; w < words; w++) {
+        long carry = bits[w];
+        for (int l = 0; carry != 0; l++) {
+          long next = planes[l][w] & carry;
+          planes[l][w] ^= carry;
+          carry = next;
+        }
+      }
+    }
+    int[] counts = new int[length];
+    for (int l = 0; l < planes.length; l++) {
+      for (int w = 0; w < words; w++) {
+        long plane = planes[l][w];
+        while (plane != 0) {
+          counts[w * WORD_SIZE + Long.numberOfTrailingZeros(plane)] += 1 << l;
+          plane &= plane - 1;
+        }
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Counts the bits set in both packed vectors, which is their dot product.
+   *
+   * @param bits      - a packed vector
+   * @param otherBits - a packed vector of the same length
+   * @return - the amount of coordinates that are 1 in both vectors
+   */
+  public static int overlap(long[] bits, long[] otherBits) {
+    int count = 0;
+    for (int w = 0; w < bits.length; w++) {
+      count += Long.bitCount(bits[w] & otherBits[w]);
+    }
+    return count;
+  }
+
+  /**
+   * Calculates the cosine distance between two packed vectors. Assumes the cosine distance
+   * between the 0 vector and any other vector is 1.
+   *
+   * @param bits      - a packed vector
+   * @param otherBits - a packed vector of the same length
+   * @return - 1 - popcount(a &amp; b) / sqrt(popcount(a) * popcount(b))
+   */
+  public static double cosDistance(long[] bits, long[] otherBits) {
+    int magnitude = popcount(bits);
+    int otherMagnitude = popcount(otherBits);
+    if (magnitude == 0 || otherMagnitude == 0) {
+      return 1;
+    }
+    return 1 - overlap(bits, otherBits) / Math.sqrt(magnitude) / Math.sqrt(otherMagnitude);
+  }
+
+  /**
+   * Calculates the dot product of a packed vector and a row of a flat coordinate array, by
+   * summing the coordinates at the set bits.
+   *
+   * @param bits       - a packed vector
+   * @param flatCoords - an array holding the other vector starting at offset
+   * @param offset     - the index in flatCoords where the other vector starts
+   * @return - the dot product of the two vectors
+   */
+  public static double dot(long[] bits, double[] flatCoords, int offset) {
+    double dotProduct = 0;
+    for (int w = 0; w < bits.length; w++) {
+      long word = bits[w];
+      while (word != 0) {
+        dotProduct += flatCoords[offset + w * WORD_SIZE + Long.numberOfTrailingZeros(word)];
+        word &= word - 1;
+      }
+    }
+    return dotProduct;
+  }
+
+  /**
+   * Calculates the cosine distance between a packed vector and a row of a flat coordinate
+   * array. Assumes the cosine distance between the 0 vector and any other vector is 1.
+   *
+   * @param bits              - a packed vector
+   * @param flatCoords        - an array holding the other vector starting at offset
+   * @param offset            - the index in flatCoords where the other vector starts
+   * @param magnitudeSquared  - the squared magnitude of the other vector
+   * @return - the cosine distance between them
+   */
+  public static double cosDistance(long[] bits, double[] flatCoords, int offset,
+                                   double magnitudeSquared) {
+    int bitCount = popcount(bits);
+    if (bitCount == 0 || magnitudeSquared == 0) {
+      return 1;
+    }
+    return 1 - dot(bits, flatCoords, offset) / Math.sqrt(magnitudeSquared) / Math.sqrt(bitCount);
+  }
+}
@@ -0,0 +1,38 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * A flag for cooperatively cancelling a grouping from another thread. Grouping checks it between
+ * steps, stops at the next check once it is set, and still returns a valid grouping.
+ */
+public final class CancellationToken {
+  /**
+   * Whether cancel has been called.
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * Asks the work watching this token to stop as soon as it can.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Getter for whether the work has been cancelled.
+   *
+   * @return - true once cancel has been called
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Checks whether a possibly missing token has been cancelled.
+   *
+   * @param token - a token, or null for work that can not be cancelled
+   * @return - true if the token exists and has been cancelled
+   */
+  static boolean isCancelled(CancellationToken token) {
+    return token != null && token.isCancelled();
+  }
+}
@@ -10,6 +10,11 @@ public class Centroid {
    * The coordinates of the centroid.
    */
   private final double[] coords;
+  /**
+   * The squared magnitude of the coordinates, so distances to the centroid only need a dot
+   * product.
+   */
+  private final double magnitudeSquared;
 
   /**
    * Constructor for centroid.
@@ -18,6 +23,7 @@ public class Centroid {
    */
   public Centroid(double[] coords) {
     this.coords = coords;
+    this.magnitudeSquared = VectorKernels.magnitudeSquared(coords, 0, coords.length);
   }
 
   /**
@@ -29,6 +35,15 @@ public class Centroid {
     return coords;
   }
 
+  /**
+   * Getter for the squared magnitude of the coordinates.
+   *
+   * @return - the sum of the squares of the coordinates
+   */
+  public double getMagnitudeSquared() {
+    return magnitudeSquared;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
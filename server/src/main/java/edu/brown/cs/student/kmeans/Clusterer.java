@@ -0,0 +1,25 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A clustering algorithm that splits vectors into clusters around centroids.
+ *
+ * @param <T> The type of vector to be clustered
+ */
+public interface Clusterer<T extends VectorData<T>> {
+  /**
+   * Clusters the vectors.
+   *
+   * @return - A map of centroids to a list of vectors within their cluster
+   */
+  Map<Centroid, List<T>> createClusters();
+
+  /**
+   * Finds the center of all centroids. Only meaningful after createClusters.
+   *
+   * @return - the coordinates of the center of all centroids
+   */
+  double[] findCentroidCenter();
+}
@@ -6,25 +6,35 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class to run k-means on a given set of vectors.
  *
  * @param <T> The type of vector to be clustered
  */
-public class CosineKMeans<T extends VectorData<T>> {
+public class CosineKMeans<T extends VectorData<T>> implements Clusterer<T> {
   /**
-   * A list of all centroids.
+   * The coordinates of all centroids, stored row by row (centroid c occupies indices
+   * c * attrCount to (c + 1) * attrCount - 1).
    */
-  private List<Centroid> centroids;
+  private double[] centroids;
   /**
-   * A map from the centroids to a list of vectors in their cluster.
+   * The index of the centroid each vector is assigned to, parallel to vectorList.
    */
-  private Map<Centroid, List<T>> centroidClusters;
+  private final int[] assignments;
+  /**
+   * The cosine distance from each vector to its assigned centroid, parallel to vectorList.
+   */
+  private final double[] closestDistances;
   /**
    * A list of all vectors.
    */
   private final List<T> vectorList;
+  /**
+   * The normalized vectors, parallel to vectorList.
+   */
+  private final UnitVectorStore store;
   /**
    * The number of clusters to create.
    */
@@ -37,6 +47,72 @@ public class CosineKMeans<T extends VectorData<T>> {
    * The maximum number of iterations to execute kmeans.
    */
   private final int maxIterations;
+  /**
+   * The pool the assignment and update steps run on, or null to run on the calling thread.
+   */
+  private ForkJoinPool pool;
+  /**
+   * The random number generator used for seeding centroids.
+   */
+  private final Random rand;
+  /**
+   * Whether to skip distance computations using triangle inequality bounds.
+   */
+  private boolean pruning;
+  /**
+   * For each vector, an upper bound on the angle to its assigned centroid (only kept when
+   * pruning).
+   */
+  private double[] upperBounds;
+  /**
+   * Lower bounds on the angle from each vector to other centroids (only kept when pruning). Holds
+   * one bound per vector and centroid (Elkan) when that fits in MAX_ELKAN_BOUNDS, and otherwise a
+   * single bound per vector on the angle to every other centroid (Hamerly).
+   */
+  private double[] lowerBounds;
+  /**
+   * Whether lowerBounds holds one bound per vector and centroid.
+   */
+  private boolean boundPerCentroid;
+  /**
+   * The most lower bounds to keep per vector and centroid before falling back to one bound per
+   * vector.
+   */
+  private static final int MAX_ELKAN_BOUNDS = 1 << 22;
+  /**
+   * The largest centroid movement (in cosine distance) in an iteration that counts as converged,
+   * or 0 to only stop once the centroids stop moving.
+   */
+  private double centroidTolerance;
+  /**
+   * The largest fraction of vectors changing cluster in an iteration that counts as converged,
+   * or 0 to ignore reassignments.
+   */
+  private double reassignmentTolerance;
+  /**
+   * Whether clustering has a deadline to stop at.
+   */
+  private boolean hasDeadline;
+  /**
+   * The System.nanoTime at which clustering stops iterating, if hasDeadline.
+   */
+  private long deadline;
+  /**
+   * The token that stops clustering after the current iteration once cancelled, or null.
+   */
+  private CancellationToken token;
+  /**
+   * The time spent seeding the centroids, in nanoseconds.
+   */
+  private long seedingNanos;
+  /**
+   * The starting centroids stored row by row, or null, kept until seeding in createClusters.
+   */
+  private final double[] initialCentroids;
+  /**
+   * The report of the last call to createClusters, or null if it has not been called.
+   */
+  private KMeansReport report;
 
   /**
    * A constructor for k-means.
@@ -47,33 +123,268 @@ public class CosineKMeans<T extends VectorData<T>> {
    * @param maxIterations - the amount of times to run k-means (must be positive)
    */
   public CosineKMeans(int k, List<T> vectorList, int maxIterations) {
-    centroidClusters = new HashMap<>();
+    this(k, vectorList, maxIterations, new Random());
+  }
+
+  /**
+   * A constructor for k-means with a given random number generator, so that runs can be
+   * reproduced by seeding it.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered, each vector must have same amount
+   *                      of coordinates. Coordinates must all be between 0 and 1.
+   * @param maxIterations - the amount of times to run k-means (must be positive)
+   * @param rand          - the random number generator used to seed the centroids
+   */
+  public CosineKMeans(int k, List<T> vectorList, int maxIterations, Random rand) {
+    this(k, vectorList, new UnitVectorStore(vectorList), maxIterations, rand);
+  }
+
+  /**
+   * A constructor for k-means over vectors that are already normalized, so that several runs can
+   * share one store.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered
+   * @param store         - the normalized vectors of vectorList
+   * @param maxIterations - the amount of times to run k-means (must be positive)
+   * @param rand          - the random number generator used to seed the centroids
+   */
+  CosineKMeans(int k, List<T> vectorList, UnitVectorStore store, int maxIterations,
+               Random rand) {
+    this(k, vectorList, store, maxIterations, rand, null);
+  }
+
+  /**
+   * A constructor for k-means that starts from given centroids, such as those of an earlier run
+   * on overlapping vectors. A warm start close to the final clusters converges in far fewer
+   * iterations than a cold one.
+   *
+   * @param k                - the amount of clusters to create
+   * @param vectorList       - the list of vectors to be clustered, each vector must have same
+   *                         amount of coordinates. Coordinates must all be between 0 and 1.
+   * @param maxIterations    - the amount of times to run k-means (must be positive)
+   * @param rand             - the random number generator used to seed any centroids not given
+   * @param initialCentroids - the coordinates of the starting centroids. Only the first k are
+   *                         used, and if there are fewer than k the rest are seeded with
+   *                         k-means++.
+   */
+  public CosineKMeans(int k, List<T> vectorList, int maxIterations, Random rand,
+                      List<double[]> initialCentroids) {
+    this(k, vectorList, new UnitVectorStore(vectorList), maxIterations, rand,
+        flatten(initialCentroids, vectorList));
+  }
+
+  /**
+   * A constructor for k-means over vectors that are already normalized, starting from given
+   * centroids.
+   *
+   * @param k                - the amount of clusters to create
+   * @param vectorList       - the list of vectors to be clustered
+   * @param store            - the normalized vectors of vectorList
+   * @param maxIterations    - the amount of times to run k-means (must be positive)
+   * @param rand             - the random number generator used to seed any centroids not given
+   * @param initialCentroids - the starting centroids stored row by row, or null to seed them all
+   */
+  CosineKMeans(int k, List<T> vectorList, UnitVectorStore store, int maxIterations,
+               Random rand, double[] initialCentroids) {
+    this.rand = rand;
     this.vectorList = vectorList;
+    this.store = store;
     this.k = k;
-    if (!vectorList.isEmpty()) {
-      this.attrCount = vectorList.get(0).getLength();
-    } else {
-      this.attrCount = 0;
-    }
+    this.attrCount = store.getLength();
     this.maxIterations = maxIterations;
-    initializeCentroids();
+    this.assignments = new int[store.size()];
+    this.closestDistances = new double[store.size()];
+    this.initialCentroids = initialCentroids;
   }
 
   /**
-   * Initializes the centroids randomly.
+   * Flattens a list of centroids into rows of one array.
+   *
+   * @param centroidList - the coordinates of each centroid
+   * @param vectorList   - the vectors being clustered, whose length each centroid must have
+   * @return - the centroids stored row by row
    */
-  private void initializeCentroids() {
-    Random rand = new Random();
-    this.centroids = new ArrayList<>();
-    for (int i = 0; i < k; i++) {
-      double[] centroidCoords = new double[attrCount];
-      for (int j = 0; j < attrCount; j++) {
-        centroidCoords[j] = rand.nextDouble();
+  private static double[] flatten(List<double[]> centroidList,
+                                  List<? extends VectorData<?>> vectorList) {
+    if (vectorList.isEmpty()) {
+      return new double[0];
+    }
+    int length = vectorList.get(0).getLength();
+    double[] flat = new double[centroidList.size() * length];
+    for (int c = 0; c < centroidList.size(); c++) {
+      if (centroidList.get(c).length != length) {
+        throw new RuntimeException("Initial centroids must match the vectors' length.");
       }
-      Centroid toAdd = new Centroid(centroidCoords);
-      centroidClusters.put(toAdd, new ArrayList<>());
-      centroids.add(toAdd);
+      System.arraycopy(centroidList.get(c), 0, flat, c * length, length);
     }
+    return flat;
+  }
+
+  /**
+   * Initializes the centroids with k-means++: the first centroid is a random vector, and each
+   * following centroid is a vector picked with probability proportional to its squared distance
+   * from the closest centroid picked so far. Given initial centroids take the place of the first
+   * picks. If the deadline passes or the run is cancelled while seeding, the rest of the
+   * centroids are placed on random vectors instead.
+   *
+   * @param initialCentroids - the starting centroids stored row by row, or null for none
+   */
+  private void initializeCentroids(double[] initialCentroids) {
+    this.centroids = new double[k * attrCount];
+    int n = vectorList.size();
+    if (n == 0) {
+      return;
+    }
+    int given = 0;
+    if (initialCentroids != null && attrCount > 0) {
+      given = Math.min(k, initialCentroids.length / attrCount);
+      System.arraycopy(initialCentroids, 0, centroids, 0, given * attrCount);
+    }
+    if (given == k) {
+      return;
+    }
+    double[] minDistances = new double[n];
+    Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+    int seed = -1;
+    if (given == 0) {
+      seed = rand.nextInt(n);
+    }
+    for (int c = 0; c < k; c++) {
+      if (c > given && isStopped()) {
+        for (; c < k; c++) {
+          store.copyTo(rand.nextInt(n), centroids, c * attrCount);
+        }
+        return;
+      }
+      if (c >= given) {
+        store.copyTo(seed, centroids, c * attrCount);
+      }
+      double magnitude = magnitudeSquared(centroids, c * attrCount, attrCount);
+      double total = 0;
+      for (int p = 0; p < n; p++) {
+        minDistances[p] = Math.min(minDistances[p], distanceToCentroid(p, c, magnitude));
+        total += minDistances[p] * minDistances[p];
+      }
+      if (c + 1 < given) {
+        // the next centroid is given, so there is nothing to pick yet
+        continue;
+      }
+      if (total == 0) {
+        // every vector sits on a centroid already, so any choice is as good as another
+        seed = rand.nextInt(n);
+        continue;
+      }
+      double target = rand.nextDouble() * total;
+      seed = n - 1;
+      for (int p = 0; p < n; p++) {
+        target -= minDistances[p] * minDistances[p];
+        if (target < 0) {
+          seed = p;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether clustering should stop.
+   *
+   * @return - true if the deadline has passed or the run was cancelled
+   */
+  private boolean isStopped() {
+    return (hasDeadline && System.nanoTime() - deadline >= 0)
+        || CancellationToken.isCancelled(token);
+  }
+
+  /**
+   * Calculates the cosine distance between a vector and a centroid.
+   *
+   * @param p         - the index of the vector in vectorList
+   * @param c         - the index of the centroid
+   * @param magnitude - the squared magnitude of the centroid
+   * @return - the cosine distance between them
+   */
+  private double distanceToCentroid(int p, int c, double magnitude) {
+    return store.cosDistance(p, centroids, c * attrCount, magnitude);
+  }
+
+  /**
+   * Sets the pool to run the assignment and update steps on. The clusters found are the same
+   * with or without a pool; only the running time changes.
+   *
+   * @param pool - the pool to use, or null to run on the calling thread
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Turns on pruned assignment, which keeps bounds on the angle from each vector to its own
+   * centroid and to the other centroids, and only computes the distances those bounds cannot
+   * rule out. Uses a bound per vector and centroid (Elkan's algorithm) when n * k is small enough,
+   * and a single bound on the second closest centroid (Hamerly's algorithm) otherwise. Works on
+   * angular distance, which unlike cosine distance obeys the triangle inequality, and finds the
+   * same clusters as the full scan up to ties. Worth it when there are many clusters.
+   *
+   * @param pruning - whether to prune distance computations
+   */
+  public void setPruning(boolean pruning) {
+    this.pruning = pruning;
+  }
+
+  /**
+   * Sets how little the centroids must move in an iteration for clustering to stop. Stopping
+   * early on sub-tolerance jitter leaves the clusters practically unchanged, but can save most of
+   * the iterations.
+   *
+   * @param centroidTolerance - the largest cosine distance any centroid may move, or 0 to only
+   *                          stop once the centroids stop moving
+   */
+  public void setCentroidTolerance(double centroidTolerance) {
+    this.centroidTolerance = centroidTolerance;
+  }
+
+  /**
+   * Sets how few vectors must change cluster in an iteration for clustering to stop.
+   *
+   * @param reassignmentTolerance - the largest fraction of vectors that may change cluster, or 0
+   *                              to ignore reassignments
+   */
+  public void setReassignmentTolerance(double reassignmentTolerance) {
+    this.reassignmentTolerance = reassignmentTolerance;
+  }
+
+  /**
+   * Sets a deadline after which clustering stops iterating, keeping the clusters of the last
+   * completed iteration. At least one iteration always runs.
+   *
+   * @param deadline - the System.nanoTime at which to stop
+   */
+  public void setDeadline(long deadline) {
+    this.hasDeadline = true;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sets a token that stops clustering after the current iteration once cancelled, keeping the
+   * clusters of the last completed iteration. At least one iteration always runs.
+   *
+   * @param token - the token to watch, or null
+   */
+  public void setCancellation(CancellationToken token) {
+    this.token = token;
+  }
+
+  /**
+   * Getter for the report of the last run.
+   *
+   * @return - the iterations, inertia and phase times of the last call to createClusters, or null
+   * if it has not been called
+   */
+  public KMeansReport getReport() {
+    return report;
   }
 
   /**
@@ -81,84 +392,551 @@ public class CosineKMeans<T extends VectorData<T>> {
    *
    * @return - A map of centroids to a list of vectors within their cluster
    */
+  @Override
   public Map<Centroid, List<T>> createClusters() {
-    for (int i = 0; i < maxIterations; i++) {
-      List<Centroid> oldCentroids = this.centroids;
+    long assignmentNanos = 0;
+    long updateNanos = 0;
+    long convergenceNanos = 0;
+    int iterations = 0;
+    boolean converged = false;
+    if (centroids == null) {
+      // seeded here rather than in the constructor, so seeding obeys the deadline and token
+      long start = System.nanoTime();
+      initializeCentroids(initialCentroids);
+      seedingNanos = System.nanoTime() - start;
+    }
+    int[] oldAssignments = new int[assignments.length];
+    while (iterations < maxIterations && !converged) {
+      double[] oldCentroids = this.centroids;
+      long start = System.nanoTime();
       // Put vectors into new clusters
-      findClosestCentroids();
-      // Create a list of new centroids
-      List<Centroid> newCentroids = findAverages();
+      System.arraycopy(assignments, 0, oldAssignments, 0, assignments.length);
+      if (pruning) {
+        findClosestCentroidsPruned(iterations == 0);
+      } else {
+        findClosestCentroids();
+      }
+      long assigned = System.nanoTime();
+      // Create the new centroids
+      double[] newCentroids = findAverages();
       this.centroids = newCentroids;
-      // If no change has been made, we have reached convergence and break
-      if (oldCentroids.equals(newCentroids)) {
+      long updated = System.nanoTime();
+      if (pruning) {
+        moveBounds(oldCentroids, newCentroids);
+      }
+      // the first assignment has nothing to be compared with
+      converged = hasConverged(oldCentroids, newCentroids, iterations > 0, oldAssignments);
+      iterations++;
+      assignmentNanos += assigned - start;
+      updateNanos += updated - assigned;
+      convergenceNanos += System.nanoTime() - updated;
+      if (isStopped()) {
         break;
-      } else {
-        // Otherwise we update our clusters and keep iterating
-        this.centroidClusters = new HashMap<>();
-        for (Centroid centroid : newCentroids) {
-          centroidClusters.put(centroid, new ArrayList<>());
+      }
+    }
+    long start = System.nanoTime();
+    double inertia = findInertia();
+    assignmentNanos += System.nanoTime() - start;
+    report = new KMeansReport(iterations, converged, inertia, seedingNanos, assignmentNanos,
+        updateNanos, convergenceNanos);
+    return getClusters();
+  }
+
+  /**
+   * Getter for the centroids.
+   *
+   * @return - the coordinates of all centroids, stored row by row
+   */
+  double[] getCentroids() {
+    return centroids;
+  }
+
+  /**
+   * Getter for the assignments.
+   *
+   * @return - the index of the centroid each vector is assigned to
+   */
+  int[] getAssignments() {
+    return assignments;
+  }
+
+  /**
+   * Builds the clusters of the current centroids and assignments, as returned by
+   * createClusters.
+   *
+   * @return - A map of centroids to a list of vectors within their cluster
+   */
+  Map<Centroid, List<T>> getClusters() {
+    return toClusterMap(vectorList, assignments, centroids, k, attrCount);
+  }
+
+  /**
+   * Checks whether the last iteration changed little enough to stop.
+   *
+   * @param oldCentroids       - the centroids before the update
+   * @param newCentroids       - the centroids after the update
+   * @param compareAssignments - whether oldAssignments holds an assignment to compare to
+   * @param oldAssignments     - the assignments before the last assignment step
+   * @return - true if the centroids did not move, or moved or reassigned within tolerance
+   */
+  private boolean hasConverged(double[] oldCentroids, double[] newCentroids,
+                               boolean compareAssignments, int[] oldAssignments) {
+    if (Arrays.equals(oldCentroids, newCentroids)) {
+      return true;
+    }
+    if (compareAssignments && reassignmentTolerance > 0) {
+      int reassigned = 0;
+      for (int p = 0; p < assignments.length; p++) {
+        if (assignments[p] != oldAssignments[p]) {
+          reassigned++;
+        }
+      }
+      if (reassigned < reassignmentTolerance * assignments.length) {
+        return true;
+      }
+    }
+    if (centroidTolerance > 0) {
+      for (int c = 0; c < k; c++) {
+        int offset = c * attrCount;
+        if (VectorKernels.cosDistance(oldCentroids, offset, newCentroids, offset, attrCount)
+            >= centroidTolerance) {
+          return false;
         }
       }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Finds the inertia of the current clusters, and records each vector's distance to its
+   * centroid.
+   *
+   * @return - the sum of the cosine distances from each vector to its assigned centroid
+   */
+  private double findInertia() {
+    double[] centroidMagnitudes = findCentroidMagnitudes();
+    ParallelLoops.forEach(pool, assignments.length, p -> closestDistances[p] =
+        distanceToCentroid(p, assignments[p], centroidMagnitudes[assignments[p]]));
+    // summed in order, so the inertia is the same with or without a pool
+    double inertia = 0;
+    for (double distance : closestDistances) {
+      inertia += distance;
+    }
+    return inertia;
+  }
+
+  /**
+   * Builds the centroid to cluster view of a set of assignments. Only called once clustering
+   * is done, so that centroids are never hashed while iterating.
+   *
+   * @param vectorList  - the clustered vectors
+   * @param assignments - the index of the centroid each vector is assigned to
+   * @param centroids   - the coordinates of all centroids, stored row by row
+   * @param k           - the amount of centroids
+   * @param attrCount   - the length of each centroid
+   * @param <T>         - the type of vector that was clustered
+   * @return - A map of centroids to a list of vectors within their cluster
+   */
+  static <T> Map<Centroid, List<T>> toClusterMap(List<T> vectorList, int[] assignments,
+                                                 double[] centroids, int k, int attrCount) {
+    List<List<T>> clusters = new ArrayList<>(k);
+    for (int c = 0; c < k; c++) {
+      clusters.add(new ArrayList<>());
+    }
+    for (int p = 0; p < assignments.length; p++) {
+      clusters.get(assignments[p]).add(vectorList.get(p));
+    }
+    Map<Centroid, List<T>> centroidClusters = new HashMap<>();
+    for (int c = 0; c < k; c++) {
+      Centroid centroid = new Centroid(
+          Arrays.copyOfRange(centroids, c * attrCount, (c + 1) * attrCount));
+      List<T> existing = centroidClusters.putIfAbsent(centroid, clusters.get(c));
+      if (existing != null) {
+        // two clusters ended up on the exact same coordinates, so they share a key
+        existing.addAll(clusters.get(c));
+      }
     }
     return centroidClusters;
   }
 
   /**
-   * Puts each vector into the cluster of the closest centroid.
+   * Assigns each vector to the cluster of the closest centroid.
    */
   private void findClosestCentroids() {
-    for (T vector : vectorList) {
-      double minDistance = Double.POSITIVE_INFINITY;
-      Centroid closestCentroid = null;
-      for (Centroid centroid : centroids) {
-        double distance = CosineKMeans.cosDistance(centroid.getCoords(), vector.getVector());
-        if (distance < minDistance) {
-          minDistance = distance;
-          closestCentroid = centroid;
+    double[] centroidMagnitudes = findCentroidMagnitudes();
+    ParallelLoops.forEach(pool, assignments.length,
+        p -> assignments[p] = findClosestCentroid(p, centroidMagnitudes));
+  }
+
+  /**
+   * Finds the squared magnitude of every centroid, which the store's distances need.
+   *
+   * @return - the squared magnitude of each centroid
+   */
+  private double[] findCentroidMagnitudes() {
+    double[] centroidMagnitudes = new double[k];
+    for (int c = 0; c < k; c++) {
+      centroidMagnitudes[c] = magnitudeSquared(centroids, c * attrCount, attrCount);
+    }
+    return centroidMagnitudes;
+  }
+
+  /**
+   * Finds the centroid closest to a vector.
+   *
+   * @param p                  - the index of the vector in vectorList
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   * @return - the index of the closest centroid
+   */
+  private int findClosestCentroid(int p, double[] centroidMagnitudes) {
+    double minDistance = Double.POSITIVE_INFINITY;
+    int closestCentroid = 0;
+    for (int c = 0; c < k; c++) {
+      double distance = store.cosDistance(p, centroids, c * attrCount, centroidMagnitudes[c]);
+      if (distance < minDistance) {
+        minDistance = distance;
+        closestCentroid = c;
+      }
+    }
+    closestDistances[p] = minDistance;
+    return closestCentroid;
+  }
+
+  /**
+   * Assigns each vector to the cluster of the closest centroid, skipping the distances that the
+   * bounds prove cannot change the assignment.
+   *
+   * @param firstPass - whether this is the first assignment, which has no bounds to use yet
+   */
+  private void findClosestCentroidsPruned(boolean firstPass) {
+    if (firstPass) {
+      boundPerCentroid = (long) assignments.length * k <= MAX_ELKAN_BOUNDS;
+      upperBounds = new double[assignments.length];
+      if (boundPerCentroid) {
+        lowerBounds = new double[assignments.length * k];
+      } else {
+        lowerBounds = new double[assignments.length];
+      }
+    }
+    double[] centroidMagnitudes = findCentroidMagnitudes();
+    if (firstPass) {
+      ParallelLoops.forEach(pool, assignments.length,
+          p -> assignWithBounds(p, centroidMagnitudes));
+      return;
+    }
+    if (boundPerCentroid) {
+      ParallelLoops.forEach(pool, assignments.length,
+          p -> assignElkan(p, centroidMagnitudes));
+    } else {
+      double[] halfGaps = findHalfGaps(centroidMagnitudes);
+      ParallelLoops.forEach(pool, assignments.length,
+          p -> assignHamerly(p, centroidMagnitudes, halfGaps));
+    }
+  }
+
+  /**
+   * Assigns one vector by scanning every centroid, and sets its bounds to the exact angles.
+   *
+   * @param p                  - the index of the vector in vectorList
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   */
+  private void assignWithBounds(int p, double[] centroidMagnitudes) {
+    // cosine distance orders centroids the same way angles do, so only convert what is stored
+    double closest = Double.POSITIVE_INFINITY;
+    double secondClosest = Double.POSITIVE_INFINITY;
+    int closestCentroid = 0;
+    for (int c = 0; c < k; c++) {
+      double distance = distanceToCentroid(p, c, centroidMagnitudes[c]);
+      if (boundPerCentroid) {
+        lowerBounds[p * k + c] = Math.acos(clampCosine(1 - distance));
+      }
+      if (distance < closest) {
+        secondClosest = closest;
+        closest = distance;
+        closestCentroid = c;
+      } else if (distance < secondClosest) {
+        secondClosest = distance;
+      }
+    }
+    assignments[p] = closestCentroid;
+    upperBounds[p] = Math.acos(clampCosine(1 - closest));
+    if (boundPerCentroid) {
+      lowerBounds[p * k + closestCentroid] = upperBounds[p];
+    } else if (secondClosest == Double.POSITIVE_INFINITY) {
+      lowerBounds[p] = Double.POSITIVE_INFINITY;
+    } else {
+      lowerBounds[p] = Math.acos(clampCosine(1 - secondClosest));
+    }
+    closestDistances[p] = closest;
+  }
+
+  /**
+   * Assigns one vector using a lower bound per centroid, only computing the angles to centroids
+   * whose bound is below the vector's upper bound.
+   *
+   * @param p                  - the index of the vector in vectorList
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   */
+  private void assignElkan(int p, double[] centroidMagnitudes) {
+    int assigned = assignments[p];
+    double upper = upperBounds[p];
+    int bounds = p * k;
+    boolean tight = false;
+    for (int c = 0; c < k; c++) {
+      if (c == assigned || upper <= lowerBounds[bounds + c]) {
+        continue;
+      }
+      if (!tight) {
+        // the upper bound may just be loose, so tighten it before computing other angles
+        upper = angleToCentroid(p, assigned, centroidMagnitudes[assigned]);
+        lowerBounds[bounds + assigned] = upper;
+        tight = true;
+        if (upper <= lowerBounds[bounds + c]) {
+          continue;
         }
       }
-      centroidClusters.get(closestCentroid).add(vector);
+      double angle = angleToCentroid(p, c, centroidMagnitudes[c]);
+      lowerBounds[bounds + c] = angle;
+      if (angle < upper) {
+        upper = angle;
+        assigned = c;
+      }
     }
+    assignments[p] = assigned;
+    upperBounds[p] = upper;
+    closestDistances[p] = 1 - Math.cos(Math.min(upper, Math.PI));
   }
 
+  /**
+   * Assigns one vector using a single lower bound on its second closest centroid, falling back
+   * to a scan of every centroid.
+   *
+   * @param p                  - the index of the vector in vectorList
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   * @param halfGaps           - half the angle from each centroid to its closest other centroid
+   */
+  private void assignHamerly(int p, double[] centroidMagnitudes, double[] halfGaps) {
+    int assigned = assignments[p];
+    double bound = Math.max(halfGaps[assigned], lowerBounds[p]);
+    if (upperBounds[p] > bound) {
+      // the upper bound may just be loose, so tighten it before scanning
+      upperBounds[p] = angleToCentroid(p, assigned, centroidMagnitudes[assigned]);
+    }
+    if (upperBounds[p] <= bound) {
+      closestDistances[p] = 1 - Math.cos(Math.min(upperBounds[p], Math.PI));
+    } else {
+      assignWithBounds(p, centroidMagnitudes);
+    }
+  }
 
   /**
-   * Creates a new list/map of centroids, with the new centroids being the centroids of the current
-   * clusters.
+   * Finds half the angle from each centroid to the closest other centroid. A vector within that
+   * angle of its centroid cannot be closer to any other centroid.
    *
-   * @return - the new centroids of each cluster
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   * @return - half the smallest angle to another centroid, for each centroid
    */
-  private List<Centroid> findAverages() {
-    List<Centroid> newCentroids = new ArrayList<>();
-    for (Centroid centroid : centroids) {
-      List<T> cluster = centroidClusters.get(centroid);
-      if (cluster.isEmpty()) {
-        newCentroids.add(centroid);
-      } else {
-        double[] averageCoords = new double[attrCount];
-        Arrays.fill(averageCoords, 0);
-        for (T vector : cluster) {
-          double[] vectorCoords = normalize(vector.getVector());
-          for (int i = 0; i < vector.getLength(); i++) {
-            averageCoords[i] += vectorCoords[i] / cluster.size();
-          }
+  private double[] findHalfGaps(double[] centroidMagnitudes) {
+    double[] halfGaps = new double[k];
+    ParallelLoops.forEach(pool, k, c -> {
+      double minAngle = Double.POSITIVE_INFINITY;
+      for (int other = 0; other < k; other++) {
+        if (other != c) {
+          minAngle = Math.min(minAngle, angleBetweenRows(centroids, c * attrCount,
+              centroidMagnitudes[c], centroids, other * attrCount, centroidMagnitudes[other]));
         }
-        newCentroids.add(new Centroid(normalize(averageCoords)));
       }
+      halfGaps[c] = minAngle / 2;
+    });
+    return halfGaps;
+  }
+
+  /**
+   * Loosens every vector's bounds by how far the centroids moved in the last update.
+   *
+   * @param oldCentroids - the centroids before the update
+   * @param newCentroids - the centroids after the update
+   */
+  private void moveBounds(double[] oldCentroids, double[] newCentroids) {
+    double[] movements = new double[k];
+    int mostMoved = -1;
+    double maxMovement = 0;
+    double secondMaxMovement = 0;
+    for (int c = 0; c < k; c++) {
+      int offset = c * attrCount;
+      movements[c] = angleBetweenRows(oldCentroids, offset,
+          magnitudeSquared(oldCentroids, offset, attrCount), newCentroids, offset,
+          magnitudeSquared(newCentroids, offset, attrCount));
+      if (movements[c] > maxMovement) {
+        secondMaxMovement = maxMovement;
+        maxMovement = movements[c];
+        mostMoved = c;
+      } else if (movements[c] > secondMaxMovement) {
+        secondMaxMovement = movements[c];
+      }
+    }
+    for (int p = 0; p < assignments.length; p++) {
+      int assigned = assignments[p];
+      upperBounds[p] += movements[assigned];
+      if (boundPerCentroid) {
+        for (int c = 0; c < k; c++) {
+          lowerBounds[p * k + c] -= movements[c];
+        }
+      } else if (assigned == mostMoved) {
+        lowerBounds[p] -= secondMaxMovement;
+      } else {
+        lowerBounds[p] -= maxMovement;
+      }
+    }
+  }
+
+  /**
+   * Calculates the angle between a vector and a centroid.
+   *
+   * @param p         - the index of the vector in vectorList
+   * @param c         - the index of the centroid
+   * @param magnitude - the squared magnitude of the centroid
+   * @return - the angle between them, in radians (pi / 2 if either is the 0 vector)
+   */
+  private double angleToCentroid(int p, int c, double magnitude) {
+    return Math.acos(clampCosine(1 - distanceToCentroid(p, c, magnitude)));
+  }
+
+  /**
+   * Calculates the angle between two rows of flat coordinate arrays.
+   *
+   * @param coords         - an array holding the first row
+   * @param offset         - the index in coords where the first row starts
+   * @param magnitude      - the squared magnitude of the first row
+   * @param otherCoords    - an array holding the second row
+   * @param otherOffset    - the index in otherCoords where the second row starts
+   * @param otherMagnitude - the squared magnitude of the second row
+   * @return - the angle between them, in radians (pi / 2 if either is the 0 vector)
+   */
+  private double angleBetweenRows(double[] coords, int offset, double magnitude,
+                                  double[] otherCoords, int otherOffset, double otherMagnitude) {
+    if (magnitude == 0 || otherMagnitude == 0) {
+      return Math.PI / 2;
+    }
+    double dotProduct = 0;
+    for (int i = 0; i < attrCount; i++) {
+      dotProduct += coords[offset + i] * otherCoords[otherOffset + i];
     }
+    return Math.acos(clampCosine(dotProduct / Math.sqrt(magnitude) / Math.sqrt(otherMagnitude)));
+  }
+
+  /**
+   * Clamps a cosine into [-1, 1], since rounding can push it slightly outside.
+   *
+   * @param cosine - a cosine similarity
+   * @return - the cosine, clamped
+   */
+  private static double clampCosine(double cosine) {
+    return Math.max(-1, Math.min(1, cosine));
+  }
+
+  /**
+   * Creates the new centroids, with the new centroids being the centroids of the current
+   * clusters. Each cluster is summed by a single task in vectorList order, so the result is the
+   * same whether or not a pool is set.
+   *
+   * @return - the new centroids of each cluster, stored row by row
+   */
+  private double[] findAverages() {
+    // bucket the vector indices by cluster, keeping vectorList order within each cluster
+    int[] clusterStarts = new int[k + 1];
+    for (int assignment : assignments) {
+      clusterStarts[assignment + 1]++;
+    }
+    for (int c = 0; c < k; c++) {
+      clusterStarts[c + 1] += clusterStarts[c];
+    }
+    int[] members = new int[assignments.length];
+    int[] nextSlot = Arrays.copyOf(clusterStarts, k);
+    for (int p = 0; p < assignments.length; p++) {
+      members[nextSlot[assignments[p]]++] = p;
+    }
+    double[] newCentroids = new double[k * attrCount];
+    ParallelLoops.forEach(pool, k,
+        c -> findAverage(c, members, clusterStarts, newCentroids));
+    reseedEmptyClusters(clusterStarts, newCentroids);
     return newCentroids;
   }
 
   /**
-   * Finds the center of all centroids.
+   * Moves the centroid of every empty cluster onto one of the vectors furthest from their own
+   * centroid, so that empty clusters pick up members on the next iteration. If no vector is away
+   * from its centroid, empty clusters keep their previous centroid.
+   *
+   * @param clusterStarts - where each cluster's indices start, as built by findAverages
+   * @param newCentroids  - the new centroids, which are updated in place
+   */
+  private void reseedEmptyClusters(int[] clusterStarts, double[] newCentroids) {
+    boolean[] used = null;
+    for (int c = 0; c < k; c++) {
+      if (clusterStarts[c + 1] != clusterStarts[c]) {
+        continue;
+      }
+      if (used == null) {
+        used = new boolean[assignments.length];
+      }
+      int furthest = -1;
+      for (int p = 0; p < assignments.length; p++) {
+        if (!used[p] && closestDistances[p] > 0
+            && (furthest == -1 || closestDistances[p] > closestDistances[furthest])) {
+          furthest = p;
+        }
+      }
+      if (furthest == -1) {
+        return;
+      }
+      used[furthest] = true;
+      store.copyTo(furthest, newCentroids, c * attrCount);
+    }
+  }
+
+  /**
+   * Computes the new centroid of one cluster.
    *
+   * @param c             - the index of the cluster
+   * @param members       - the indices of the vectors of every cluster, grouped by cluster
+   * @param clusterStarts - where each cluster's indices start in members
+   * @param newCentroids  - the array to write the new centroid into
+   */
+  private void findAverage(int c, int[] members, int[] clusterStarts, double[] newCentroids) {
+    int offset = c * attrCount;
+    int clusterSize = clusterStarts[c + 1] - clusterStarts[c];
+    if (clusterSize == 0) {
+      // empty clusters keep their previous centroid unless reseedEmptyClusters moves them
+      System.arraycopy(centroids, offset, newCentroids, offset, attrCount);
+      return;
+    }
+    for (int m = clusterStarts[c]; m < clusterStarts[c + 1]; m++) {
+      store.addTo(members[m], newCentroids, offset, clusterSize);
+    }
+    normalizeRow(newCentroids, offset, attrCount);
+  }
+
+  @Override
+  public double[] findCentroidCenter() {
+    return findCentroidCenter(centroids, k, attrCount);
+  }
+
+  /**
+   * Finds the center of a set of centroids.
+   *
+   * @param centroids - the coordinates of all centroids, stored row by row
+   * @param k         - the amount of centroids
+   * @param attrCount - the length of each centroid
    * @return - the coordinates of the center of all centroids
    */
-  protected double[] findCentroidCenter() {
+  static double[] findCentroidCenter(double[] centroids, int k, int attrCount) {
     double[] centroidCenter = new double[attrCount];
-    Arrays.fill(centroidCenter, 0);
-    for (Centroid centroid : centroids) {
-      double[] normalizedCentroid = normalize(centroid.getCoords());
+    double[] normalizedCentroid = new double[attrCount];
+    for (int c = 0; c < k; c++) {
+      System.arraycopy(centroids, c * attrCount, normalizedCentroid, 0, attrCount);
+      normalizeRow(normalizedCentroid, 0, attrCount);
       for (int i = 0; i < attrCount; i++) {
         centroidCenter[i] += normalizedCentroid[i] / k;
       }
@@ -175,20 +953,36 @@ public class CosineKMeans<T extends VectorData<T>> {
    * @return - the cosine distance between them
    */
   public static double cosDistance(double[] coords, double[] otherCoords) {
-    double centroidMagnitude = 0;
-    double otherMagnitude = 0;
-    double dotProduct = 0;
-    for (int i = 0; i < coords.length; i++) {
-      centroidMagnitude += coords[i] * coords[i];
-      otherMagnitude += otherCoords[i] * otherCoords[i];
-      dotProduct += coords[i] * otherCoords[i];
-    }
-    if (centroidMagnitude == 0 || otherMagnitude == 0) {
-      return 1;
-    } else {
-      return 1 - dotProduct / Math.sqrt(centroidMagnitude) / Math.sqrt(otherMagnitude);
-    }
+    return cosDistance(coords, 0, otherCoords, coords.length);
+  }
+
+  /**
+   * Calculates the cosine distance between a row of a flat coordinate array and a list of
+   * coordinates. Assumes the cosine distance between the 0 vector and any other vector is 1.
+   *
+   * @param flatCoords  - an array holding the first list of coordinates starting at offset
+   * @param offset      - the index in flatCoords where the first list of coordinates starts
+   * @param otherCoords - a list of coordinates
+   * @param length      - the number of coordinates to compare
+   * @return - the cosine distance between them
+   */
+  static double cosDistance(double[] flatCoords, int offset, double[] otherCoords,
+                            int length) {
+    return VectorKernels.cosDistance(flatCoords, offset, otherCoords, 0, length);
   }
+
+  /**
+   * Calculates the squared magnitude of a row of a flat coordinate array.
+   *
+   * @param flatCoords - an array holding the coordinates starting at offset
+   * @param offset     - the index in flatCoords where the coordinates start
+   * @param length     - the number of coordinates in the row
+   * @return - the sum of the squares of the coordinates
+   */
+  static double magnitudeSquared(double[] flatCoords, int offset, int length) {
+    return VectorKernels.magnitudeSquared(flatCoords, offset, length);
+  }
+
   /**
    * Given the coordinates of a vector in vectorList, find the normalized coordinates.
    *
@@ -196,19 +990,29 @@ public class CosineKMeans<T extends VectorData<T>> {
    * @return - the normalzied coordinates
    */
   public static double[] normalize(double[] coords) {
-    double magnitudeSquared = 0;
-    for (double coord : coords) {
-      magnitudeSquared += coord * coord;
-    }
-    double[] normalized = new double[coords.length];
+    double[] normalized = Arrays.copyOf(coords, coords.length);
+    normalizeRow(normalized, 0, normalized.length);
+    return normalized;
+  }
+
+  /**
+   * Normalizes a row of a flat coordinate array in place. The 0 vector is mapped to the first
+   * unit vector.
+   *
+   * @param flatCoords - an array holding the coordinates to normalize starting at offset
+   * @param offset     - the index in flatCoords where the coordinates start
+   * @param length     - the number of coordinates in the row
+   */
+  static void normalizeRow(double[] flatCoords, int offset, int length) {
+    double magnitudeSquared = magnitudeSquared(flatCoords, offset, length);
     if (magnitudeSquared == 0) {
-      Arrays.fill(normalized, 0);
-      normalized[0] = 1;
-      return normalized;
+      Arrays.fill(flatCoords, offset, offset + length, 0);
+      flatCoords[offset] = 1;
+      return;
     }
-    for (int i = 0; i < coords.length; i++) {
-      normalized[i] += coords[i] / Math.sqrt(magnitudeSquared);
+    double magnitude = Math.sqrt(magnitudeSquared);
+    for (int i = offset; i < offset + length; i++) {
+      flatCoords[i] = flatCoords[i] / magnitude;
     }
-    return normalized;
   }
 }
@@ -0,0 +1,45 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * The dense loops behind every cosine distance, so that they can be swapped for a vectorized
+ * implementation when one is available. See VectorKernels for how one is picked.
+ */
+interface DistanceKernel {
+  /**
+   * Calculates the dot product of two rows of flat coordinate arrays.
+   *
+   * @param flatCoords       - an array holding the first row starting at offset
+   * @param offset           - the index in flatCoords where the first row starts
+   * @param otherFlatCoords  - an array holding the second row starting at otherOffset
+   * @param otherOffset      - the index in otherFlatCoords where the second row starts
+   * @param length           - the number of coordinates in each row
+   * @return - the dot product of the two rows
+   */
+  double dot(double[] flatCoords, int offset, double[] otherFlatCoords, int otherOffset,
+             int length);
+
+  /**
+   * Calculates the squared magnitude of a row of a flat coordinate array.
+   *
+   * @param flatCoords - an array holding the coordinates starting at offset
+   * @param offset     - the index in flatCoords where the coordinates start
+   * @param length     - the number of coordinates in the row
+   * @return - the sum of the squares of the coordinates
+   */
+  double magnitudeSquared(double[] flatCoords, int offset, int length);
+
+  /**
+   * Calculates the cosine distance between two rows of flat coordinate arrays in a single pass,
+   * for when neither magnitude is known. Assumes the cosine distance between the 0 vector and
+   * any other vector is 1.
+   *
+   * @param flatCoords       - an array holding the first row starting at offset
+   * @param offset           - the index in flatCoords where the first row starts
+   * @param otherFlatCoords  - an array holding the second row starting at otherOffset
+   * @param otherOffset      - the index in otherFlatCoords where the second row starts
+   * @param length           - the number of coordinates in each row
+   * @return - the cosine distance between them
+   */
+  double cosDistance(double[] flatCoords, int offset, double[] otherFlatCoords, int otherOffset,
+                     int length);
+}
@@ -0,0 +1,34 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.List;
+
+/**
+ * An algorithm that splits vectors into groups of a given size, placing similar vectors together.
+ *
+ * @param <T> The type of vector to be grouped
+ */
+public interface GroupingEngine<T extends VectorData<T>> {
+  /**
+   * Divides the vectors into groups. With n vectors and a group size of s, makes n / s groups,
+   * each of size s or slightly larger to take up the remaining vectors. If there are fewer than s
+   * vectors, they all form one group.
+   *
+   * @return - a list of list of vectors, each inner list is one group
+   */
+  List<List<T>> getGroups();
+
+  /**
+   * Divides the vectors into groups within a time budget, stopping early if cancelled. Always
+   * returns a valid grouping of every vector, as described by getGroups: once the budget runs
+   * out or the token is cancelled, the engine finishes with its best grouping so far in a small
+   * fraction of its usual time. Engines that can not be interrupted run to completion.
+   *
+   * @param budgetMillis - the wall-clock budget in milliseconds, or 0 for no budget
+   * @param token        - a token to cancel the grouping with, or null
+   * @return - the groups, and whether they were cut short
+   */
+  default GroupingResult<T> getGroups(long budgetMillis, CancellationToken token) {
+    long start = System.nanoTime();
+    return GroupingResult.of(getGroups(), false, token, start);
+  }
+}
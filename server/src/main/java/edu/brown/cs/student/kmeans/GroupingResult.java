@@ -0,0 +1,124 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.List;
+
+/**
+ * The groups found by a time-budgeted call to GroupingEngine.getGroups, along with whether the
+ * engine finished or handed back its best grouping so far.
+ *
+ * @param <T> The type of vector grouped
+ */
+public final class GroupingResult<T> {
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  /**
+   * How a grouping ended.
+   */
+  public enum Status {
+    /**
+     * The engine ran to completion.
+     */
+    COMPLETE,
+    /**
+     * The time budget ran out, so the groups are the best found by then.
+     */
+    TIMED_OUT,
+    /**
+     * The grouping was cancelled, so the groups are the best found by then.
+     */
+    CANCELLED
+  }
+
+  /**
+   * The groups found, always a valid grouping of every vector.
+   */
+  private final List<List<T>> groups;
+  /**
+   * How the grouping ended.
+   */
+  private final Status status;
+  /**
+   * The wall-clock time the grouping took, in nanoseconds.
+   */
+  private final long elapsedNanos;
+
+  /**
+   * Constructor.
+   *
+   * @param groups       - the groups found
+   * @param status       - how the grouping ended
+   * @param elapsedNanos - the wall-clock time the grouping took, in nanoseconds
+   */
+  GroupingResult(List<List<T>> groups, Status status, long elapsedNanos) {
+    this.groups = groups;
+    this.status = status;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Makes a result for a grouping that was cut short if the deadline passed or the token was
+   * cancelled, and complete otherwise.
+   *
+   * @param groups     - the groups found
+   * @param cutShort   - whether any work was skipped or stopped early
+   * @param token      - the token the grouping watched, or null
+   * @param startNanos - the System.nanoTime at which the grouping started
+   * @param <T>        - the type of vector grouped
+   * @return - the result
+   */
+  static <T> GroupingResult<T> of(List<List<T>> groups, boolean cutShort,
+                                  CancellationToken token, long startNanos) {
+    Status status = Status.COMPLETE;
+    if (cutShort && CancellationToken.isCancelled(token)) {
+      status = Status.CANCELLED;
+    } else if (cutShort) {
+      status = Status.TIMED_OUT;
+    }
+    return new GroupingResult<>(groups, status, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Getter for the groups.
+   *
+   * @return - a list of list of vectors, each inner list is one group
+   */
+  public List<List<T>> getGroups() {
+    return groups;
+  }
+
+  /**
+   * Getter for how the grouping ended.
+   *
+   * @return - whether it completed, timed out or was cancelled
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Getter for whether the engine ran to completion.
+   *
+   * @return - true if the groups are not cut short
+   */
+  public boolean isComplete() {
+    return status == Status.COMPLETE;
+  }
+
+  /**
+   * Getter for how long the grouping took.
+   *
+   * @return - the wall-clock time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s after %.1f ms, %d groups", status, elapsedNanos / NANOS_PER_MILLI,
+        groups.size());
+  }
+}
@@ -0,0 +1,287 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * A grouping engine for very large populations that divides and conquers. The vectors are first
+ * split into balanced coarse buckets of similar vectors, then each bucket is grouped on its own,
+ * with the buckets running in parallel, and finally the vectors that did not fit evenly into
+ * their bucket's groups are grouped across bucket boundaries. Each bucket holds a multiple of the
+ * group size, so no engine inside a bucket makes an oversized group, and the leftovers taken out
+ * are the ones farthest from their bucket's center, which are the likeliest to fit elsewhere.
+ *
+ * @param <T> - The type of objects to be grouped, must have coordinates and can
+ *            be treated like a vector.
+ */
+public class HierarchicalGroups<T extends VectorData<T>> implements GroupingEngine<T> {
+  /**
+   * The default amount of vectors per coarse bucket.
+   */
+  private static final int DEFAULT_BUCKET_SIZE = 1000;
+  /**
+   * The amount of vectors at which work starts running on the common ForkJoinPool.
+   */
+  private static final int PARALLEL_THRESHOLD = 256;
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final long NANOS_PER_MILLI = 1_000_000;
+  /**
+   * The vectors to be grouped.
+   */
+  private final List<T> vectorList;
+  /**
+   * The normalized vectors, parallel to vectorList.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The index of every vector in vectorList.
+   */
+  private final Map<T, Integer> indices;
+  /**
+   * The size of each group.
+   */
+  private final int groupSize;
+  /**
+   * Makes the engine that groups one bucket, or the leftovers, from its vectors.
+   */
+  private final Function<List<T>, GroupingEngine<T>> engineFactory;
+  /**
+   * The random number generator used to seed the coarse split.
+   */
+  private final Random rand;
+  /**
+   * The pool to run on, or null to run on the calling thread.
+   */
+  private final ForkJoinPool pool;
+  /**
+   * The amount of vectors per coarse bucket.
+   */
+  private int bucketSize;
+
+  /**
+   * The constructor for HierarchicalGroups, grouping each bucket with BalancedGroups. Each vector
+   * in vector list is assumed to have the same amount of coordinates between 0 and 1, and group
+   * size is assumed to be a positive integer.
+   *
+   * @param groupSize  - the size of each group
+   * @param vectorList - the list of vectors to be grouped
+   */
+  public HierarchicalGroups(int groupSize, List<T> vectorList) {
+    this(groupSize, vectorList, new Random());
+  }
+
+  /**
+   * A constructor for HierarchicalGroups with a given random number generator, grouping each
+   * bucket with BalancedGroups seeded from it, so that groupings can be reproduced.
+   *
+   * @param groupSize  - the size of each group
+   * @param vectorList - the list of vectors to be grouped
+   * @param rand       - the random number generator used to seed the coarse split and buckets
+   */
+  public HierarchicalGroups(int groupSize, List<T> vectorList, Random rand) {
+    this(groupSize, vectorList, rand,
+        bucket -> new BalancedGroups<>(groupSize, bucket, new Random(rand.nextLong())));
+  }
+
+  /**
+   * A constructor for HierarchicalGroups with a given engine for each bucket. The factory is
+   * called on the calling thread, once per bucket and once for the leftovers, and must make
+   * engines that group into groups of group size.
+   *
+   * @param groupSize     - the size of each group
+   * @param vectorList    - the list of vectors to be grouped
+   * @param rand          - the random number generator used to seed the coarse split
+   * @param engineFactory - makes the engine that groups a bucket from its vectors
+   */
+  public HierarchicalGroups(int groupSize, List<T> vectorList, Random rand,
+                            Function<List<T>, GroupingEngine<T>> engineFactory) {
+    if (vectorList.size() == 0 || groupSize == 0) {
+      throw new RuntimeException();
+    }
+    this.vectorList = new ArrayList<>(vectorList);
+    this.store = new UnitVectorStore(this.vectorList);
+    this.indices = new IdentityHashMap<>();
+    for (int p = 0; p < this.vectorList.size(); p++) {
+      indices.put(this.vectorList.get(p), p);
+    }
+    this.groupSize = groupSize;
+    this.rand = rand;
+    this.engineFactory = engineFactory;
+    this.bucketSize = Math.max(DEFAULT_BUCKET_SIZE, 2 * groupSize);
+    if (vectorList.size() >= PARALLEL_THRESHOLD) {
+      this.pool = ForkJoinPool.commonPool();
+    } else {
+      this.pool = null;
+    }
+  }
+
+  /**
+   * Sets the amount of vectors per coarse bucket. Smaller buckets group faster but see fewer
+   * candidates for each group.
+   *
+   * @param bucketSize - the amount of vectors per bucket, at least twice the group size
+   */
+  public void setBucketSize(int bucketSize) {
+    if (bucketSize < 2 * groupSize) {
+      throw new RuntimeException("Buckets must hold at least two groups.");
+    }
+    this.bucketSize = bucketSize;
+  }
+
+  @Override
+  public List<List<T>> getGroups() {
+    return getGroups(0, null).getGroups();
+  }
+
+  /**
+   * Divides the vectors into groups within a time budget. The coarse split, every bucket and the
+   * leftovers each get whatever is left of the budget, and the grouping counts as cut short if
+   * any of them was.
+   *
+   * @param budgetMillis - the wall-clock budget in milliseconds, or 0 for no budget
+   * @param token        - a token to cancel the grouping with, or null
+   * @return - the groups, and whether they were cut short
+   */
+  @Override
+  public GroupingResult<T> getGroups(long budgetMillis, CancellationToken token) {
+    long start = System.nanoTime();
+    int n = vectorList.size();
+    int bucketCount = n / bucketSize;
+    if (bucketCount < 2) {
+      GroupingResult<T> flat =
+          engineFactory.apply(vectorList).getGroups(budgetMillis, token);
+      return GroupingResult.of(flat.getGroups(), !flat.isComplete(), token, start);
+    }
+    GroupingResult<T> coarse = new BalancedGroups<>(bucketSize, vectorList, rand)
+        .getGroups(budgetMillis, token);
+    boolean cutShort = !coarse.isComplete();
+    List<List<T>> buckets = coarse.getGroups();
+
+    // take the members farthest from each bucket's center out, so every bucket splits evenly
+    List<T> leftovers = new ArrayList<>();
+    List<List<T>> cores = new ArrayList<>();
+    for (List<T> bucket : buckets) {
+      cores.add(findCore(bucket, bucket.size() / groupSize * groupSize, leftovers));
+    }
+
+    List<GroupingEngine<T>> engines = new ArrayList<>();
+    for (List<T> core : cores) {
+      engines.add(engineFactory.apply(core));
+    }
+    List<GroupingResult<T>> results = new ArrayList<>();
+    for (int b = 0; b < engines.size(); b++) {
+      results.add(null);
+    }
+    long bucketBudget = findRemainingBudget(budgetMillis, start);
+    ParallelLoops.forEach(pool, engines.size(),
+        b -> results.set(b, engines.get(b).getGroups(bucketBudget, token)));
+
+    List<List<T>> groupings = new ArrayList<>();
+    for (GroupingResult<T> result : results) {
+      cutShort |= !result.isComplete();
+      groupings.addAll(result.getGroups());
+    }
+    if (leftovers.size() >= groupSize) {
+      GroupingResult<T> repaired = engineFactory.apply(leftovers)
+          .getGroups(findRemainingBudget(budgetMillis, start), token);
+      cutShort |= !repaired.isComplete();
+      groupings.addAll(repaired.getGroups());
+    } else {
+      addToBestGroups(leftovers, groupings);
+    }
+    return GroupingResult.of(groupings, cutShort, token, start);
+  }
+
+  /**
+   * Finds the members of a bucket closest to the bucket's mean normalized vector.
+   *
+   * @param bucket    - the members of the bucket
+   * @param coreSize  - the amount of members to keep
+   * @param leftovers - where to add the members that are not kept
+   * @return - the closest core size members, in bucket order
+   */
+  private List<T> findCore(List<T> bucket, int coreSize, List<T> leftovers) {
+    if (coreSize == bucket.size()) {
+      return bucket;
+    }
+    int length = store.getLength();
+    double[] sum = new double[length];
+    int[] members = new int[bucket.size()];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = indices.get(bucket.get(i));
+      store.addTo(members[i], sum, 0, 1);
+    }
+    double[] closeness = new double[members.length];
+    Integer[] order = new Integer[members.length];
+    for (int i = 0; i < members.length; i++) {
+      closeness[i] = store.dot(members[i], sum, 0);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(closeness[b], closeness[a]));
+    boolean[] kept = new boolean[members.length];
+    for (int i = 0; i < coreSize; i++) {
+      kept[order[i]] = true;
+    }
+    List<T> core = new ArrayList<>(coreSize);
+    for (int i = 0; i < members.length; i++) {
+      if (kept[i]) {
+        core.add(bucket.get(i));
+      } else {
+        leftovers.add(bucket.get(i));
+      }
+    }
+    return core;
+  }
+
+  /**
+   * Adds each of fewer than group size leftover vectors to the group picked for it by
+   * UnitVectorStore.findBestGroups, the one whose loss it raises the least.
+   *
+   * @param leftovers - the vectors to add
+   * @param groupings - the groups, added to in place
+   */
+  private void addToBestGroups(List<T> leftovers, List<List<T>> groupings) {
+    if (leftovers.isEmpty()) {
+      return;
+    }
+    List<int[]> indexGroups = new ArrayList<>(groupings.size());
+    for (List<T> group : groupings) {
+      int[] members = new int[group.size()];
+      for (int i = 0; i < members.length; i++) {
+        members[i] = indices.get(group.get(i));
+      }
+      indexGroups.add(members);
+    }
+    int[] extras = new int[leftovers.size()];
+    for (int e = 0; e < extras.length; e++) {
+      extras[e] = indices.get(leftovers.get(e));
+    }
+    int[] picked = store.findBestGroups(indexGroups, extras);
+    for (int e = 0; e < extras.length; e++) {
+      groupings.get(picked[e]).add(leftovers.get(e));
+    }
+  }
+
+  /**
+   * Finds what is left of a time budget.
+   *
+   * @param budgetMillis - the whole budget in milliseconds, or 0 for no budget
+   * @param start        - the System.nanoTime the budget started at
+   * @return - the milliseconds left, at least 1, or 0 for no budget
+   */
+  private static long findRemainingBudget(long budgetMillis, long start) {
+    if (budgetMillis == 0) {
+      return 0;
+    }
+    long elapsedMillis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+    return Math.max(1, budgetMillis - elapsedMillis);
+  }
+}
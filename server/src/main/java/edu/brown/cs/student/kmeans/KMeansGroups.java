@@ -1,9 +1,15 @@
 package edu.brown.cs.student.kmeans;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class that focuses on one main method getGroups() that uses kMeans to generate groups of equal
@@ -12,16 +18,40 @@ import java.util.Map;
  * @param <T> - The type of objects to be clustered, must have coordinates and can
  *            be treated like a vector.
  */
-public class KMeansGroups<T extends VectorData<T>> {
+public class KMeansGroups<T extends VectorData<T>> implements GroupingEngine<T> {
   /**
    * A map that keeps track of every centroid, and the vectors within the cluster defined by that
    * centroid.
    */
   private Map<Centroid, List<T>> centroidClusters;
   /**
-   * A list of all vectors that have yet to be grouped.
+   * A list of all vectors. Vectors are referred to by their index in this list.
    */
   private final List<T> vectorList;
+  /**
+   * Every vector, normalized once so that each round of kMeans can reuse them.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The index of every vector, for turning kMeans clusters back into indices.
+   */
+  private final Map<T, Integer> indices;
+  /**
+   * The indices of the vectors that have yet to be grouped, in the first activeCount slots.
+   */
+  private int[] active;
+  /**
+   * The amount of vectors that have yet to be grouped.
+   */
+  private int activeCount;
+  /**
+   * The slot in active of every vector that has yet to be grouped.
+   */
+  private int[] activeSlots;
+  /**
+   * The vectors that have been placed in a group, or are being placed in the current one.
+   */
+  private BitSet assigned;
   /**
    * The size of each group.
    */
@@ -30,6 +60,71 @@ public class KMeansGroups<T extends VectorData<T>> {
    * A static integer that determines how long to run kMeans for.
    */
   private static final int MAX_ITERATIONS = 100;
+  /**
+   * The amount of vectors at which kMeans starts running on the common ForkJoinPool.
+   */
+  private static final int PARALLEL_THRESHOLD = 256;
+  /**
+   * The amount of clusters at which kMeans starts pruning distance computations.
+   */
+  private static final int PRUNING_THRESHOLD = 16;
+  /**
+   * The centroid movement (in cosine distance) below which a kMeans round counts as converged.
+   */
+  private static final double CENTROID_TOLERANCE = 1e-6;
+  /**
+   * The fraction of reassigned vectors below which a kMeans round counts as converged.
+   */
+  private static final double REASSIGNMENT_TOLERANCE = 1e-3;
+  /**
+   * The amount of vectors at which rounds switch from full-batch to mini-batch kMeans.
+   */
+  private static final int MINI_BATCH_THRESHOLD = 4096;
+  /**
+   * The amount of vectors sampled per mini-batch.
+   */
+  private static final int MINI_BATCH_SIZE = 1024;
+  /**
+   * The most passes over the vectors that mini-batch kMeans samples before stopping.
+   */
+  private static final int MINI_BATCH_EPOCHS = 2;
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final long NANOS_PER_MILLI = 1_000_000;
+  /**
+   * The random number generator used to seed each run of kMeans.
+   */
+  private final Random rand;
+  /**
+   * The amount of independently seeded kMeans runs per round, keeping the lowest inertia one.
+   */
+  private int restarts = 1;
+  /**
+   * The wall-clock budget of getGroups in milliseconds, or 0 for no budget.
+   */
+  private long timeBudgetMillis;
+  /**
+   * The System.nanoTime at which the current getGroups call runs out of budget.
+   */
+  private long deadline;
+  /**
+   * Whether the current getGroups call has a hard deadline.
+   */
+  private boolean hasHardDeadline;
+  /**
+   * The System.nanoTime at which the current getGroups call stops and groups whatever is left
+   * without kMeans, if hasHardDeadline.
+   */
+  private long hardDeadline;
+  /**
+   * The token that cancels the current getGroups call, or null.
+   */
+  private CancellationToken token;
+  /**
+   * The wall-clock budget of the swap refinement after grouping in milliseconds, or 0 to skip it.
+   */
+  private long refinementBudgetMillis;
 
   /**
    * The constructor for KMeansGroups. Each vector in vector list is assumed to have the same amount
@@ -40,12 +135,64 @@ public class KMeansGroups<T extends VectorData<T>> {
    * @param vectorList - the list of vectors to be clustered
    */
   public KMeansGroups(int groupSize, List<T> vectorList) {
+    this(groupSize, vectorList, new Random());
+  }
+
+  /**
+   * A constructor for KMeansGroups with a given random number generator, so that groupings can be
+   * reproduced by seeding it.
+   *
+   * @param groupSize  - the size of each cluster
+   * @param vectorList - the list of vectors to be clustered
+   * @param rand       - the random number generator used to seed each run of kMeans
+   */
+  public KMeansGroups(int groupSize, List<T> vectorList, Random rand) {
+    this.rand = rand;
     centroidClusters = new HashMap<>();
     this.vectorList = new ArrayList<>(vectorList);
     this.groupSize = groupSize;
     if (vectorList.size() == 0 || groupSize == 0) {
       throw new RuntimeException();
     }
+    this.store = new UnitVectorStore(this.vectorList);
+    this.indices = new IdentityHashMap<>();
+    for (int p = 0; p < this.vectorList.size(); p++) {
+      indices.put(this.vectorList.get(p), p);
+    }
+  }
+
+  /**
+   * Sets how many independently seeded kMeans runs each round makes, keeping the one with the
+   * lowest inertia. Runs are spread over the common ForkJoinPool. Does not apply to rounds large
+   * enough for mini-batch kMeans.
+   *
+   * @param restarts - the amount of runs per round (must be positive)
+   */
+  public void setRestarts(int restarts) {
+    if (restarts <= 0) {
+      throw new RuntimeException("Must run k-means at least once.");
+    }
+    this.restarts = restarts;
+  }
+
+  /**
+   * Sets a wall-clock budget for getGroups. Once it runs out, each remaining round makes a single
+   * kMeans run of a single iteration, so groupings are still produced, just of lower quality.
+   *
+   * @param millis - the budget in milliseconds, or 0 for no budget
+   */
+  public void setTimeBudget(long millis) {
+    this.timeBudgetMillis = millis;
+  }
+
+  /**
+   * Sets a wall-clock budget for refining the groups once they are formed, by swapping pairs of
+   * members between groups while that lowers the clustering loss. Group sizes are unchanged.
+   *
+   * @param millis - the budget in milliseconds, or 0 to skip refinement
+   */
+  public void setRefinementBudget(long millis) {
+    this.refinementBudgetMillis = millis;
   }
 
   /**
@@ -55,41 +202,306 @@ public class KMeansGroups<T extends VectorData<T>> {
    * @return - a list of list of vectors, each inner list is one group. Each group should have
    * relatively similar coordinates.
    */
+  @Override
   public List<List<T>> getGroups() {
+    return getGroups(0, null).getGroups();
+  }
+
+  /**
+   * Divides the vectorList into groups of groupSize within a hard time budget. Once the budget
+   * runs out or the token is cancelled, the running kMeans stops after its current iteration and
+   * the vectors not grouped yet are split up in the order of the last clustering, so that each
+   * of those groups mostly comes from one cluster. This takes a single pass over them.
+   *
+   * @param budgetMillis - the wall-clock budget in milliseconds, or 0 for no budget
+   * @param token        - a token to cancel the grouping with, or null
+   * @return - the groups, and whether they were cut short
+   */
+  @Override
+  public GroupingResult<T> getGroups(long budgetMillis, CancellationToken token) {
+    long start = System.nanoTime();
     List<List<T>> groupings = new ArrayList<>();
     if (vectorList.size() < groupSize) {
-      groupings.add(vectorList);
-      return groupings;
+      groupings.add(new ArrayList<>(vectorList));
+      return GroupingResult.of(groupings, false, token, start);
     }
-    int extra = vectorList.size() % groupSize;
-    int extrasPerGroup = extra / (vectorList.size() / groupSize) + 1;
-    while (vectorList.size() >= groupSize) {
+    this.token = token;
+    this.hasHardDeadline = budgetMillis > 0;
+    this.hardDeadline = start + budgetMillis * NANOS_PER_MILLI;
+    deadline = start + timeBudgetMillis * NANOS_PER_MILLI;
+    int n = vectorList.size();
+    active = new int[n];
+    activeSlots = new int[n];
+    for (int p = 0; p < n; p++) {
+      active[p] = p;
+      activeSlots[p] = p;
+    }
+    activeCount = n;
+    assigned = new BitSet(n);
+    centroidClusters = new HashMap<>();
+    int extra = n % groupSize;
+    int extrasPerGroup = extra / (n / groupSize) + 1;
+    List<int[]> indexGroups = new ArrayList<>();
+    double[] warmStart = null;
+    boolean cutShort = false;
+    while (activeCount >= groupSize) {
+      if (isStopped()) {
+        cutShort = true;
+        groupRemaining(indexGroups);
+        break;
+      }
       // Create a new instance of kmeans, and run it to get clustering
-      CosineKMeans<T> kMeans = new CosineKMeans<>(vectorList.size() / groupSize,
-          vectorList, MAX_ITERATIONS);
+      Clusterer<T> kMeans = createClusterer(activeCount / groupSize, warmStart);
       centroidClusters = kMeans.createClusters();
       double[] center = kMeans.findCentroidCenter();
       // Find the cluster furthest from the rest
       Centroid furthestCentroid = findFurthest(center);
-      List<T> finalGrouping;
+      int[] cluster = toIndices(centroidClusters.get(furthestCentroid));
+      int[] finalGrouping;
       // Change its size to groupSize and add it to the final groupings
-      if (centroidClusters.get(furthestCentroid).size() > groupSize) {
+      if (cluster.length > groupSize) {
         finalGrouping = discard(
-            centroidClusters.get(furthestCentroid).size() - groupSize
-                - Math.min(extra, extrasPerGroup), furthestCentroid);
+            cluster.length - groupSize - Math.min(extra, extrasPerGroup), cluster,
+            furthestCentroid);
         extra -= Math.min(extra, extrasPerGroup);
-      } else if (centroidClusters.get(furthestCentroid).size() < groupSize) {
-        finalGrouping = recruit(
-            groupSize - centroidClusters.get(furthestCentroid).size(), furthestCentroid);
+      } else if (cluster.length < groupSize) {
+        finalGrouping = recruit(groupSize - cluster.length, cluster, furthestCentroid);
       } else {
-        finalGrouping = centroidClusters.get(furthestCentroid);
+        finalGrouping = cluster;
       }
-      groupings.add(finalGrouping);
-      for (T vector : finalGrouping) {
-        vectorList.remove(vector);
+      for (int p : finalGrouping) {
+        removeActive(p);
       }
+      indexGroups.add(finalGrouping);
+      // only one cluster was taken out, so the rest are a good start for the next round
+      warmStart = findSurvivingCentroids(furthestCentroid);
+    }
+    if (activeCount > 0) {
+      // extras are only absorbed when discarding, so the last rounds can leave some behind
+      addRemainingToBestGroups(indexGroups);
     }
-    return groupings;
+    int[][] groupArrays = indexGroups.toArray(new int[0][]);
+    if (refinementBudgetMillis > 0 && !cutShort) {
+      SwapRefiner refiner = new SwapRefiner(store, groupArrays);
+      if (n >= PARALLEL_THRESHOLD) {
+        refiner.setPool(ForkJoinPool.commonPool());
+      }
+      refiner.setCancellation(token);
+      long refinementDeadline = System.nanoTime() + refinementBudgetMillis * NANOS_PER_MILLI;
+      if (hasHardDeadline && refinementDeadline - hardDeadline > 0) {
+        refinementDeadline = hardDeadline;
+      }
+      refiner.refine(refinementDeadline);
+      // running out of the refinement's own budget is expected, so only the others count
+      cutShort = !refiner.isConverged() && isStopped();
+    }
+    for (int[] groupArray : groupArrays) {
+      List<T> group = new ArrayList<>(groupArray.length);
+      for (int p : groupArray) {
+        group.add(vectorList.get(p));
+      }
+      groupings.add(group);
+    }
+    return GroupingResult.of(groupings, cutShort, token, start);
+  }
+
+  /**
+   * Checks whether the current getGroups call should stop.
+   *
+   * @return - true if the hard deadline has passed or the token was cancelled
+   */
+  private boolean isStopped() {
+    return (hasHardDeadline && System.nanoTime() - hardDeadline >= 0)
+        || CancellationToken.isCancelled(token);
+  }
+
+  /**
+   * Groups every vector not grouped yet without running kMeans again. The vectors are lined up
+   * cluster by cluster in the last round's clustering and cut into consecutive groups, with the
+   * vectors left over by groupSize spread as evenly as possible. Assumes at least groupSize
+   * vectors are left.
+   *
+   * @param indexGroups - the groups so far, which the new groups are added to
+   */
+  private void groupRemaining(List<int[]> indexGroups) {
+    int remaining = activeCount;
+    int[] order = new int[remaining];
+    int ordered = 0;
+    BitSet placed = new BitSet(vectorList.size());
+    for (List<T> cluster : centroidClusters.values()) {
+      for (T vector : cluster) {
+        int p = indices.get(vector);
+        if (!assigned.get(p) && !placed.get(p)) {
+          placed.set(p);
+          order[ordered++] = p;
+        }
+      }
+    }
+    for (int slot = 0; slot < activeCount; slot++) {
+      if (!placed.get(active[slot])) {
+        order[ordered++] = active[slot];
+      }
+    }
+    int groupCount = remaining / groupSize;
+    int next = 0;
+    for (int g = 0; g < groupCount; g++) {
+      int size = remaining / groupCount;
+      if (g < remaining % groupCount) {
+        size++;
+      }
+      indexGroups.add(Arrays.copyOfRange(order, next, next + size));
+      next += size;
+    }
+    for (int p : order) {
+      removeActive(p);
+    }
+  }
+
+  /**
+   * Adds each of the fewer than groupSize vectors not grouped yet to the group picked for it by
+   * UnitVectorStore.findBestGroups, the one whose loss it raises the least.
+   *
+   * @param indexGroups - the groups so far, which are grown in place
+   */
+  private void addRemainingToBestGroups(List<int[]> indexGroups) {
+    int[] remaining = Arrays.copyOf(active, activeCount);
+    int[] picked = store.findBestGroups(indexGroups, remaining);
+    for (int e = 0; e < remaining.length; e++) {
+      int[] group = indexGroups.get(picked[e]);
+      int[] grown = Arrays.copyOf(group, group.length + 1);
+      grown[group.length] = remaining[e];
+      indexGroups.set(picked[e], grown);
+      removeActive(remaining[e]);
+    }
+  }
+
+  /**
+   * Finds the indices of a cluster's vectors.
+   *
+   * @param cluster - a cluster returned by kMeans
+   * @return - the index of each vector, in the cluster's order
+   */
+  private int[] toIndices(List<T> cluster) {
+    int[] clusterIndices = new int[cluster.size()];
+    for (int i = 0; i < clusterIndices.length; i++) {
+      clusterIndices[i] = indices.get(cluster.get(i));
+    }
+    return clusterIndices;
+  }
+
+  /**
+   * Marks a vector as grouped, moving the last active vector into its slot.
+   *
+   * @param p - the index of the vector
+   */
+  private void removeActive(int p) {
+    assigned.set(p);
+    int slot = activeSlots[p];
+    int last = active[--activeCount];
+    active[slot] = last;
+    activeSlots[last] = slot;
+  }
+
+  /**
+   * Collects the centroids of the clusters that were not grouped this round, largest cluster
+   * first, so that when the next round needs fewer centroids it drops the least populated ones.
+   *
+   * @param grouped - the centroid of the cluster that was grouped
+   * @return - the other centroids stored row by row
+   */
+  private double[] findSurvivingCentroids(Centroid grouped) {
+    List<Centroid> surviving = new ArrayList<>(centroidClusters.keySet());
+    surviving.remove(grouped);
+    surviving.sort((a, b) -> Integer.compare(centroidClusters.get(b).size(),
+        centroidClusters.get(a).size()));
+    int length = store.getLength();
+    double[] flat = new double[surviving.size() * length];
+    for (int c = 0; c < surviving.size(); c++) {
+      System.arraycopy(surviving.get(c).getCoords(), 0, flat, c * length, length);
+    }
+    return flat;
+  }
+
+  /**
+   * Creates the kMeans instance for one round, picking mini-batch kMeans for large rounds and
+   * multi-restart kMeans when restarts are set. Full-batch rounds start from the previous round's
+   * surviving centroids; with restarts, only the first run does.
+   *
+   * @param k         - the amount of clusters to create
+   * @param warmStart - the centroids to start from stored row by row, or null to seed them all
+   * @return - a clusterer over the vectors that have yet to be grouped
+   */
+  private Clusterer<T> createClusterer(int k, double[] warmStart) {
+    int[] roundIndices = Arrays.copyOf(active, activeCount);
+    List<T> roundVectors = new ArrayList<>(activeCount);
+    for (int p : roundIndices) {
+      roundVectors.add(vectorList.get(p));
+    }
+    UnitVectorStore roundStore = store.subset(roundIndices);
+    ForkJoinPool pool = null;
+    if (activeCount >= PARALLEL_THRESHOLD) {
+      pool = ForkJoinPool.commonPool();
+    }
+    if (activeCount >= MINI_BATCH_THRESHOLD) {
+      int batches = MINI_BATCH_EPOCHS * activeCount / MINI_BATCH_SIZE;
+      MiniBatchKMeans<T> kMeans =
+          new MiniBatchKMeans<>(k, roundVectors, roundStore, batches, MINI_BATCH_SIZE, rand);
+      kMeans.setPool(pool);
+      if (hasRoundDeadline()) {
+        kMeans.setDeadline(findRoundDeadline());
+      }
+      kMeans.setCancellation(token);
+      return kMeans;
+    }
+    if (restarts > 1) {
+      MultiRestartKMeans<T> kMeans =
+          new MultiRestartKMeans<>(k, roundVectors, roundStore, MAX_ITERATIONS, restarts,
+              rand);
+      kMeans.setInitialCentroids(warmStart);
+      kMeans.setPool(ForkJoinPool.commonPool());
+      kMeans.setPruning(k >= PRUNING_THRESHOLD);
+      kMeans.setCentroidTolerance(CENTROID_TOLERANCE);
+      kMeans.setReassignmentTolerance(REASSIGNMENT_TOLERANCE);
+      if (hasRoundDeadline()) {
+        kMeans.setDeadline(findRoundDeadline());
+      }
+      kMeans.setCancellation(token);
+      return kMeans;
+    }
+    CosineKMeans<T> kMeans =
+        new CosineKMeans<>(k, roundVectors, roundStore, MAX_ITERATIONS, rand, warmStart);
+    kMeans.setPool(pool);
+    kMeans.setPruning(k >= PRUNING_THRESHOLD);
+    kMeans.setCentroidTolerance(CENTROID_TOLERANCE);
+    kMeans.setReassignmentTolerance(REASSIGNMENT_TOLERANCE);
+    if (hasRoundDeadline()) {
+      kMeans.setDeadline(findRoundDeadline());
+    }
+    kMeans.setCancellation(token);
+    return kMeans;
+  }
+
+  /**
+   * Checks whether kMeans rounds have a deadline, from either budget.
+   *
+   * @return - true if there is a time budget or a hard deadline
+   */
+  private boolean hasRoundDeadline() {
+    return timeBudgetMillis > 0 || hasHardDeadline;
+  }
+
+  /**
+   * Finds the deadline of kMeans rounds, the earlier of the time budget and the hard deadline.
+   *
+   * @return - the System.nanoTime at which rounds stop iterating
+   */
+  private long findRoundDeadline() {
+    if (timeBudgetMillis <= 0) {
+      return hardDeadline;
+    } else if (!hasHardDeadline || deadline - hardDeadline < 0) {
+      return deadline;
+    }
+    return hardDeadline;
   }
 
   /**
@@ -102,8 +514,10 @@ public class KMeansGroups<T extends VectorData<T>> {
   private Centroid findFurthest(double[] center) {
     double maxDistance = -1;
     Centroid furthestCentroid = null;
+    double centerMagnitude = VectorKernels.magnitudeSquared(center, 0, center.length);
     for (Centroid centroid : centroidClusters.keySet()) {
-      double cosDistance = CosineKMeans.cosDistance(centroid.getCoords(), center);
+      double cosDistance = VectorKernels.cosDistance(centroid.getCoords(),
+          centroid.getMagnitudeSquared(), center, centerMagnitude);
       if (maxDistance < cosDistance) {
         maxDistance = cosDistance;
         furthestCentroid = centroid;
@@ -114,27 +528,40 @@ public class KMeansGroups<T extends VectorData<T>> {
 
   /**
    * Removes discardAmt vectors from a cluster. Removes the vectors that can most easily be placed
-   * in other clusters. Also, removes the vectors from the vectorList, so that kMeans can be
-   * run again on a smaller list of vectors.
+   * in other clusters.
    *
    * @param discardAmt - the amount of vectors to remove
+   * @param cluster    - the indices of the cluster's vectors
    * @param centroid   - the centroid of the cluster that vectors should be removed from
-   * @return - A list of vectors, representing the cluster with vectors removed.
+   * @return - the indices of the cluster's vectors with vectors removed
    */
-  private List<T> discard(int discardAmt, Centroid centroid) {
-    List<T> finalGrouping = centroidClusters.get(centroid);
+  private int[] discard(int discardAmt, int[] cluster, Centroid centroid) {
+    // the centroids stay put while discarding, so each member's distance only needs finding once
+    double[] distances = new double[cluster.length];
+    for (int m = 0; m < cluster.length; m++) {
+      distances[m] = secondClosestDistance(cluster[m], centroid);
+    }
+    // closest to another cluster first; on ties, the later member first
+    PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, cluster.length),
+        (a, b) -> {
+          int compare = Double.compare(distances[a], distances[b]);
+          if (compare != 0) {
+            return compare;
+          }
+          return Integer.compare(b, a);
+        });
+    for (int m = 0; m < cluster.length; m++) {
+      queue.add(m);
+    }
+    boolean[] discarded = new boolean[cluster.length];
     for (int i = 0; i < discardAmt; i++) {
-      T toDiscard = null;
-      double discardDistance = Double.POSITIVE_INFINITY;
-      for (T vector : finalGrouping) {
-        double scd = secondClosestDistance(vector, centroid);
-        if (scd <= discardDistance) {
-          toDiscard = vector;
-          discardDistance = scd;
-        }
-      }
-      if (!finalGrouping.remove(toDiscard)) {
-        System.out.println("Bad removal in discard.");
+      discarded[queue.poll()] = true;
+    }
+    int[] finalGrouping = new int[cluster.length - discardAmt];
+    int size = 0;
+    for (int m = 0; m < cluster.length; m++) {
+      if (!discarded[m]) {
+        finalGrouping[size++] = cluster[m];
       }
     }
     return finalGrouping;
@@ -145,15 +572,16 @@ public class KMeansGroups<T extends VectorData<T>> {
    * return the (cosine) distance to the nearest centroid that is not its own. Assumes at least 2
    * clusters exist.
    *
-   * @param vector  - a vector
+   * @param p       - the index of a vector
    * @param closest - the centroid of the cluster that vector belongs to
    * @return - the distance from vector the the centroid that is 2nd closest
    */
-  private double secondClosestDistance(T vector, Centroid closest) {
+  private double secondClosestDistance(int p, Centroid closest) {
     double minDistance = Double.POSITIVE_INFINITY;
     for (Centroid centroid : centroidClusters.keySet()) {
       if (!closest.equals(centroid)) {
-        double distance = CosineKMeans.cosDistance(vector.getVector(), centroid.getCoords());
+        double distance = store.cosDistance(p, centroid.getCoords(), 0,
+            centroid.getMagnitudeSquared());
         if (distance < minDistance) {
           minDistance = distance;
         }
@@ -163,29 +591,42 @@ public class KMeansGroups<T extends VectorData<T>> {
   }
 
   /**
-   * Adds recruitAmt vectors to a cluster. Adds the vectors that can most easily be placed
-   * into this cluster. Also, removes the vectors from the vectorList, so that kMeans can be
-   * run again on a smaller list of vectors.
+   * Adds recruitAmt vectors to a cluster. Adds the ungrouped vectors that can most easily be
+   * placed into this cluster.
    *
    * @param recruitAmt - the amount of vectors to add
+   * @param cluster    - the indices of the cluster's vectors
    * @param centroid   - the centroid of the cluster that vectors should be added to
-   * @return - A list of vectors, representing the cluster with vectors added.
+   * @return - the indices of the cluster's vectors with vectors added
    */
-  private List<T> recruit(int recruitAmt, Centroid centroid) {
-    List<T> finalGrouping = centroidClusters.get(centroid);
-    for (int i = 0; i < recruitAmt; i++) {
-      T toRecruit = null;
-      double recruitDistance = Double.POSITIVE_INFINITY;
-      for (T vector : vectorList) {
-        if (!finalGrouping.contains(vector)) {
-          double distance = CosineKMeans.cosDistance(centroid.getCoords(), vector.getVector());
-          if (distance < recruitDistance) {
-            toRecruit = vector;
-            recruitDistance = distance;
+  private int[] recruit(int recruitAmt, int[] cluster, Centroid centroid) {
+    int[] finalGrouping = Arrays.copyOf(cluster, cluster.length + recruitAmt);
+    // the whole group is about to be grouped, so mark it now to skip it while recruiting
+    for (int p : cluster) {
+      assigned.set(p);
+    }
+    // each candidate's distance to the centroid is found once; on ties, the earlier slot first
+    double[] distances = new double[activeCount];
+    PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, activeCount),
+        (a, b) -> {
+          int compare = Double.compare(distances[a], distances[b]);
+          if (compare != 0) {
+            return compare;
           }
-        }
+          return Integer.compare(a, b);
+        });
+    for (int slot = 0; slot < activeCount; slot++) {
+      int p = active[slot];
+      if (!assigned.get(p)) {
+        distances[slot] = store.cosDistance(p, centroid.getCoords(), 0,
+            centroid.getMagnitudeSquared());
+        queue.add(slot);
       }
-      finalGrouping.add(toRecruit);
+    }
+    for (int i = 0; i < recruitAmt; i++) {
+      int toRecruit = active[queue.poll()];
+      assigned.set(toRecruit);
+      finalGrouping[cluster.length + i] = toRecruit;
     }
     return finalGrouping;
   }
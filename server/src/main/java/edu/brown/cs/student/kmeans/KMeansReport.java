@@ -0,0 +1,143 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * What a single k-means run cost and how good its clusters are: the iterations it used, whether
+ * it converged before running out of them, its final inertia, and the time spent in each phase.
+ */
+public class KMeansReport {
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final double NANOS_PER_MILLI = 1e6;
+  /**
+   * The amount of assignment and update iterations run.
+   */
+  private final int iterations;
+  /**
+   * Whether the run stopped because it converged, rather than by running out of iterations.
+   */
+  private final boolean converged;
+  /**
+   * The sum of the cosine distances from each vector to its final centroid.
+   */
+  private final double inertia;
+  /**
+   * The time spent seeding the centroids, in nanoseconds.
+   */
+  private final long seedingNanos;
+  /**
+   * The time spent assigning vectors to centroids, in nanoseconds.
+   */
+  private final long assignmentNanos;
+  /**
+   * The time spent computing new centroids, in nanoseconds.
+   */
+  private final long updateNanos;
+  /**
+   * The time spent checking for convergence and moving pruning bounds, in nanoseconds.
+   */
+  private final long convergenceNanos;
+
+  /**
+   * Constructor for a run report.
+   *
+   * @param iterations       - the amount of iterations run
+   * @param converged        - whether the run converged before running out of iterations
+   * @param inertia          - the sum of the cosine distances from each vector to its centroid
+   * @param seedingNanos     - the time spent seeding the centroids, in nanoseconds
+   * @param assignmentNanos  - the time spent assigning vectors, in nanoseconds
+   * @param updateNanos      - the time spent computing new centroids, in nanoseconds
+   * @param convergenceNanos - the time spent on convergence checks and bounds, in nanoseconds
+   */
+  public KMeansReport(int iterations, boolean converged, double inertia, long seedingNanos,
+                      long assignmentNanos, long updateNanos, long convergenceNanos) {
+    this.iterations = iterations;
+    this.converged = converged;
+    this.inertia = inertia;
+    this.seedingNanos = seedingNanos;
+    this.assignmentNanos = assignmentNanos;
+    this.updateNanos = updateNanos;
+    this.convergenceNanos = convergenceNanos;
+  }
+
+  /**
+   * Getter for the amount of iterations run.
+   *
+   * @return - the amount of iterations run
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * Getter for whether the run converged.
+   *
+   * @return - true if the run converged, false if it ran out of iterations
+   */
+  public boolean isConverged() {
+    return converged;
+  }
+
+  /**
+   * Getter for the final inertia. Lower is better.
+   *
+   * @return - the sum of the cosine distances from each vector to its centroid
+   */
+  public double getInertia() {
+    return inertia;
+  }
+
+  /**
+   * Getter for the time spent seeding the centroids.
+   *
+   * @return - the time in nanoseconds
+   */
+  public long getSeedingNanos() {
+    return seedingNanos;
+  }
+
+  /**
+   * Getter for the time spent assigning vectors to centroids.
+   *
+   * @return - the time in nanoseconds
+   */
+  public long getAssignmentNanos() {
+    return assignmentNanos;
+  }
+
+  /**
+   * Getter for the time spent computing new centroids.
+   *
+   * @return - the time in nanoseconds
+   */
+  public long getUpdateNanos() {
+    return updateNanos;
+  }
+
+  /**
+   * Getter for the time spent checking for convergence and moving pruning bounds.
+   *
+   * @return - the time in nanoseconds
+   */
+  public long getConvergenceNanos() {
+    return convergenceNanos;
+  }
+
+  /**
+   * Getter for the total time spent in the run.
+   *
+   * @return - the time in nanoseconds
+   */
+  public long getTotalNanos() {
+    return seedingNanos + assignmentNanos + updateNanos + convergenceNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d iterations (converged: %b), inertia %.4f, "
+            + "seeding %.1f ms, assignment %.1f ms, update %.1f ms, convergence %.1f ms",
+        iterations, converged, inertia, seedingNanos / NANOS_PER_MILLI,
+        assignmentNanos / NANOS_PER_MILLI, updateNanos / NANOS_PER_MILLI,
+        convergenceNanos / NANOS_PER_MILLI);
+  }
+}
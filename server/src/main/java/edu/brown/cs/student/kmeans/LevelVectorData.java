@@ -0,0 +1,31 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * A bit vector whose set coordinates each also hold one of a few quantized levels (see
+ * AvailabilityLevels), read as one packed bitset per level. Each level is worth a weight, so
+ * coordinate i is the weight of its level; getBits is only the support of the vector, the union
+ * of every level above UNAVAILABLE. The clustering and time selection code weigh each level with
+ * popcount based kernels instead of reading the coordinates as doubles, and getVector must agree
+ * with them.
+ *
+ * @param <T> The datatype to be represented as a leveled vector
+ */
+public interface LevelVectorData<T extends LevelVectorData<T>> extends BitVectorData<T> {
+  /**
+   * Getter for the coordinates at one level, packed like getBits. The bitsets of different
+   * levels never share a set bit. Callers must not modify the returned array.
+   *
+   * @param level - a level from AvailabilityLevels
+   * @return - the coordinates at that level packed into longs
+   */
+  long[] getLevelBits(int level);
+
+  /**
+   * Getter for the weight of each level, which passes AvailabilityLevels.checkWeights. Vectors
+   * are only weighed level by level together when they share the same weights. Callers must not
+   * modify the returned array.
+   *
+   * @return - the weight of each level, indexed by level
+   */
+  double[] getLevelWeights();
+}
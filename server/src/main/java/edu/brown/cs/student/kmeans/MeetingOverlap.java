@@ -0,0 +1,182 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.List;
+
+/**
+ * Kernels for meeting-feasible overlap: the amount of start slots at which everyone in a group is
+ * free for a whole meeting. Unlike the plain overlap of schedules, scattered free slots that are too
+ * short to hold a meeting count for nothing. Works on schedules packed into longs (see
+ * BitVectorData), finding the start slots of a schedule by and-ing it with itself shifted.
+ */
+public final class MeetingOverlap {
+  /**
+   * Constructor.
+   */
+  private MeetingOverlap() {
+  }
+
+  /**
+   * Finds the slots at which a meeting can start, i.e. the slots i such that slots i through
+   * i + blockSize - 1 are all free. This is x &amp; (x &gt;&gt; 1) &amp; ... &amp; (x &gt;&gt;
+   * (blockSize - 1)) in coordinate order, computed with log(blockSize) shifts by doubling the run
+   * length covered each time. Runs cut off by the end of the schedule never count, since every
+   * bit past its length is 0.
+   *
+   * @param bits      - a packed schedule
+   * @param blockSize - the length of the meeting in slots (must be positive)
+   * @return - the packed start slots, the same length as bits
+   */
+  public static long[] feasibleStarts(long[] bits, int blockSize) {
+    if (blockSize <= 0) {
+      throw new RuntimeException("Meetings must be at least one slot long.");
+    }
+    long[] starts = bits.clone();
+    int span = 1;
+    while (span < blockSize) {
+      int shift = Math.min(span, blockSize - span);
+      andShifted(starts, shift);
+      span += shift;
+    }
+    return starts;
+  }
+
+  /**
+   * Ands a packed vector in place with itself shifted towards coordinate 0, so that coordinate i
+   * becomes coordinate i &amp; coordinate i + shift.
+   *
+   * @param bits  - a packed vector
+   * @param shift - the amount of coordinates to shift by (must be positive)
+   */
+  private static void andShifted(long[] bits, int shift) {
+    int wordShift = shift / BitVectors.WORD_SIZE;
+    int bitShift = shift % BitVectors.WORD_SIZE;
+    // going up in w, word w is only written after every word it reads from
+    for (int w = 0; w < bits.length; w++) {
+      long shifted = 0;
+      int source = w + wordShift;
+      if (source < bits.length) {
+        shifted = bits[source] >>> bitShift;
+        if (bitShift != 0 && source + 1 < bits.length) {
+          shifted |= bits[source + 1] << (BitVectors.WORD_SIZE - bitShift);
+        }
+      }
+      bits[w] &= shifted;
+    }
+  }
+
+  /**
+   * Counts the start slots at which everyone in a group is free for a whole meeting.
+   *
+   * @param group     - the schedules of the group, at least one
+   * @param blockSize - the length of the meeting in slots
+   * @return - the amount of feasible start slots for the group
+   */
+  public static int groupFeasibleStarts(List<? extends BitVectorData<?>> group, int blockSize) {
+    return BitVectors.popcount(feasibleStarts(commonBits(group, -1), blockSize));
+  }
+
+  /**
+   * Swaps members between groups so that every group it can has at least one feasible start.
+   * Grouping on MeetingStartVectors only minimizes a cosine loss, which is a proxy for shared
+   * starts, so a group can still end up with none. For each such group, takes the first swap of
+   * one of its members with a member of another group that gives it a feasible start without
+   * taking the last one away from the other group.
+   *
+   * @param groups    - the groups, whose members are swapped in place
+   * @param blockSize - the length of the meeting in slots
+   * @param <T>       - the type of schedule being grouped
+   * @return - the amount of groups still without a feasible start
+   */
+  public static <T extends BitVectorData<T>> int repairInfeasibleGroups(List<List<T>> groups,
+                                                                        int blockSize) {
+    int infeasible = 0;
+    for (int g = 0; g < groups.size(); g++) {
+      if (!groups.get(g).isEmpty() && groupFeasibleStarts(groups.get(g), blockSize) == 0
+          && !swapIntoFeasible(groups, g, blockSize)) {
+        infeasible++;
+      }
+    }
+    return infeasible;
+  }
+
+  /**
+   * Looks for a swap giving a group a feasible start, and makes the first one found.
+   *
+   * @param groups    - the groups
+   * @param g         - the index of the group without a feasible start
+   * @param blockSize - the length of the meeting in slots
+   * @param <T>       - the type of schedule being grouped
+   * @return - whether a swap was made
+   */
+  private static <T extends BitVectorData<T>> boolean swapIntoFeasible(List<List<T>> groups,
+                                                                       int g, int blockSize) {
+    List<T> group = groups.get(g);
+    for (int m = 0; m < group.size(); m++) {
+      long[] rest = commonBits(group, m);
+      for (int h = 0; h < groups.size(); h++) {
+        List<T> other = groups.get(h);
+        if (h == g || other.isEmpty()) {
+          continue;
+        }
+        boolean otherFeasible = groupFeasibleStarts(other, blockSize) > 0;
+        for (int x = 0; x < other.size(); x++) {
+          if (!hasFeasibleStart(rest, other.get(x).getBits(), blockSize)) {
+            continue;
+          }
+          if (otherFeasible
+              && !hasFeasibleStart(commonBits(other, x), group.get(m).getBits(), blockSize)) {
+            continue;
+          }
+          T member = group.get(m);
+          group.set(m, other.get(x));
+          other.set(x, member);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Ands the schedules of a group, leaving out one member.
+   *
+   * @param group - the schedules of the group
+   * @param skip  - the index of the member to leave out, or -1 to leave out none
+   * @return - the packed common schedule, or null if no member is left
+   */
+  private static long[] commonBits(List<? extends BitVectorData<?>> group, int skip) {
+    long[] common = null;
+    for (int i = 0; i < group.size(); i++) {
+      if (i == skip) {
+        continue;
+      }
+      long[] bits = group.get(i).getBits();
+      if (common == null) {
+        common = bits.clone();
+      } else {
+        for (int w = 0; w < common.length; w++) {
+          common[w] &= bits[w];
+        }
+      }
+    }
+    return common;
+  }
+
+  /**
+   * Checks whether a common schedule and one more schedule share a feasible start.
+   *
+   * @param common    - a packed common schedule, or null for no constraint
+   * @param bits      - a packed schedule of the same length
+   * @param blockSize - the length of the meeting in slots
+   * @return - whether they share a feasible start
+   */
+  private static boolean hasFeasibleStart(long[] common, long[] bits, int blockSize) {
+    long[] both = bits.clone();
+    if (common != null) {
+      for (int w = 0; w < both.length; w++) {
+        both[w] &= common[w];
+      }
+    }
+    return BitVectors.popcount(feasibleStarts(both, blockSize)) > 0;
+  }
+}
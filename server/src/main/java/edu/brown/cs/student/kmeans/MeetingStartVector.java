@@ -0,0 +1,142 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A schedule seen through the meetings it can start: coordinate i is set if a meeting of the
+ * given length fits starting at slot i. The start slots of a group are the and of its members'
+ * start slots, so the cosine loss of any GroupingEngine on these vectors is a proxy for
+ * meeting-feasible overlap that, unlike the loss on raw schedules, does not reward shared free
+ * slots that can never hold a whole meeting. It is only a proxy, so a group can still end up
+ * without a feasible start; MeetingOverlap.repairInfeasibleGroups checks for and fixes that.
+ * A start's level is the lowest level of any slot its meeting takes, since a meeting is only as
+ * convenient as its worst slot, and it weighs what the schedule's levels weigh; the starts of a
+ * schedule without levels are all AVAILABLE.
+ *
+ * @param <T> The type of schedule being wrapped
+ */
+public final class MeetingStartVector<T extends BitVectorData<T>>
+    implements LevelVectorData<MeetingStartVector<T>> {
+  /**
+   * The wrapped schedule.
+   */
+  private final T source;
+  /**
+   * The packed start slots of the schedule.
+   */
+  private final long[] starts;
+  /**
+   * The packed start slots at each level, indexed by level.
+   */
+  private final long[][] levelStarts;
+  /**
+   * The weight of each level.
+   */
+  private final double[] levelWeights;
+
+  /**
+   * Constructor, which finds the start slots of a schedule.
+   *
+   * @param source    - the schedule to wrap
+   * @param blockSize - the length of the meeting in slots (must be positive)
+   */
+  public MeetingStartVector(T source, int blockSize) {
+    this.source = source;
+    this.starts = MeetingOverlap.feasibleStarts(source.getBits(), blockSize);
+    this.levelStarts = new long[AvailabilityLevels.LEVEL_COUNT][starts.length];
+    if (source instanceof LevelVectorData) {
+      LevelVectorData<?> leveled = (LevelVectorData<?>) source;
+      this.levelWeights = leveled.getLevelWeights();
+      // the starts whose meeting is at least each level, from the highest level down
+      long[] atLeast = new long[starts.length];
+      long[] higherStarts = new long[starts.length];
+      for (int level = AvailabilityLevels.LEVEL_COUNT - 1; level > AvailabilityLevels.UNAVAILABLE;
+           level--) {
+        long[] bits = leveled.getLevelBits(level);
+        for (int w = 0; w < atLeast.length; w++) {
+          atLeast[w] |= bits[w];
+        }
+        long[] levelAndUp = MeetingOverlap.feasibleStarts(atLeast, blockSize);
+        for (int w = 0; w < starts.length; w++) {
+          levelStarts[level][w] = levelAndUp[w] & ~higherStarts[w];
+        }
+        higherStarts = levelAndUp;
+      }
+    } else {
+      this.levelWeights = AvailabilityLevels.getDefaultWeights();
+      levelStarts[AvailabilityLevels.AVAILABLE] = starts;
+    }
+  }
+
+  /**
+   * Wraps every schedule in a list.
+   *
+   * @param sources   - the schedules to wrap
+   * @param blockSize - the length of the meeting in slots (must be positive)
+   * @param <T>       - the type of schedule being wrapped
+   * @return - the wrapped schedules, in the same order
+   */
+  public static <T extends BitVectorData<T>> List<MeetingStartVector<T>> wrapAll(
+      List<T> sources, int blockSize) {
+    List<MeetingStartVector<T>> wrapped = new ArrayList<>(sources.size());
+    for (T source : sources) {
+      wrapped.add(new MeetingStartVector<>(source, blockSize));
+    }
+    return wrapped;
+  }
+
+  /**
+   * Unwraps every schedule of a grouping.
+   *
+   * @param groups - groups of wrapped schedules, as returned by a GroupingEngine
+   * @param <T>    - the type of schedule being wrapped
+   * @return - the same groups of the original schedules
+   */
+  public static <T extends BitVectorData<T>> List<List<T>> unwrapAll(
+      List<List<MeetingStartVector<T>>> groups) {
+    List<List<T>> unwrapped = new ArrayList<>(groups.size());
+    for (List<MeetingStartVector<T>> group : groups) {
+      List<T> sources = new ArrayList<>(group.size());
+      for (MeetingStartVector<T> vector : group) {
+        sources.add(vector.getSource());
+      }
+      unwrapped.add(sources);
+    }
+    return unwrapped;
+  }
+
+  /**
+   * Getter for the wrapped schedule.
+   *
+   * @return - the schedule these start slots were found from
+   */
+  public T getSource() {
+    return source;
+  }
+
+  @Override
+  public long[] getBits() {
+    return starts;
+  }
+
+  @Override
+  public long[] getLevelBits(int level) {
+    return levelStarts[level];
+  }
+
+  @Override
+  public double[] getLevelWeights() {
+    return levelWeights;
+  }
+
+  @Override
+  public double[] getVector() {
+    return AvailabilityLevels.toCoords(this, levelWeights);
+  }
+
+  @Override
+  public int getLength() {
+    return source.getLength();
+  }
+}
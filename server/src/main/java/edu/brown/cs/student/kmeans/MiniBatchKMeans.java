@@ -0,0 +1,304 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class to run mini-batch k-means on a given set of vectors. Instead of reassigning every vector
+ * on every iteration, each iteration moves the centroids towards a small random sample of vectors,
+ * with a learning rate per centroid that shrinks as it absorbs more vectors. Much faster than
+ * CosineKMeans on large inputs, at a small cost in cluster quality.
+ *
+ * @param <T> The type of vector to be clustered
+ */
+public class MiniBatchKMeans<T extends VectorData<T>> implements Clusterer<T> {
+  /**
+   * The default largest centroid movement (in cosine distance) in a batch that counts as
+   * converged.
+   */
+  private static final double DEFAULT_DRIFT_TOLERANCE = 1e-4;
+  /**
+   * The amount of batches in a row that must stay below the drift tolerance to stop early.
+   */
+  private static final int PATIENCE = 5;
+  /**
+   * The coordinates of all centroids, stored row by row.
+   */
+  private final double[] centroids;
+  /**
+   * The amount of vectors each centroid has absorbed so far.
+   */
+  private final int[] centroidCounts;
+  /**
+   * The index of the centroid each vector is assigned to, parallel to vectorList.
+   */
+  private final int[] assignments;
+  /**
+   * A list of all vectors.
+   */
+  private final List<T> vectorList;
+  /**
+   * The normalized vectors, parallel to vectorList.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The number of clusters to create.
+   */
+  private final int k;
+  /**
+   * The length of a vector in the vector list.
+   */
+  private final int attrCount;
+  /**
+   * The maximum number of batches to run.
+   */
+  private final int maxIterations;
+  /**
+   * The amount of vectors sampled per batch.
+   */
+  private final int batchSize;
+  /**
+   * The random number generator used for seeding and sampling.
+   */
+  private final Random rand;
+  /**
+   * The largest centroid movement in a batch that counts as converged.
+   */
+  private double driftTolerance = DEFAULT_DRIFT_TOLERANCE;
+  /**
+   * The pool the assignment steps run on, or null to run on the calling thread.
+   */
+  private ForkJoinPool pool;
+  /**
+   * Whether clustering has a deadline to stop at.
+   */
+  private boolean hasDeadline;
+  /**
+   * The System.nanoTime after which no more batches are sampled, if hasDeadline.
+   */
+  private long deadline;
+  /**
+   * The token that stops sampling batches once cancelled, or null.
+   */
+  private CancellationToken token;
+
+  /**
+   * A constructor for mini-batch k-means.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered, each vector must have same amount
+   *                      of coordinates. Coordinates must all be between 0 and 1.
+   * @param maxIterations - the maximum amount of batches to run (must be positive)
+   * @param batchSize     - the amount of vectors sampled per batch (must be positive)
+   * @param rand          - the random number generator used for seeding and sampling
+   */
+  public MiniBatchKMeans(int k, List<T> vectorList, int maxIterations, int batchSize,
+                         Random rand) {
+    this(k, vectorList, new UnitVectorStore(vectorList), maxIterations, batchSize, rand);
+  }
+
+  /**
+   * A constructor for mini-batch k-means over vectors that are already normalized.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered
+   * @param store         - the normalized vectors of vectorList
+   * @param maxIterations - the maximum amount of batches to run (must be positive)
+   * @param batchSize     - the amount of vectors sampled per batch (must be positive)
+   * @param rand          - the random number generator used for seeding and sampling
+   */
+  MiniBatchKMeans(int k, List<T> vectorList, UnitVectorStore store, int maxIterations,
+                  int batchSize, Random rand) {
+    this.vectorList = vectorList;
+    this.store = store;
+    this.k = k;
+    this.attrCount = store.getLength();
+    this.maxIterations = maxIterations;
+    this.batchSize = batchSize;
+    this.rand = rand;
+    this.assignments = new int[vectorList.size()];
+    this.centroids = new double[k * attrCount];
+    this.centroidCounts = new int[k];
+    initializeCentroids();
+  }
+
+  /**
+   * Sets the largest centroid movement (in cosine distance) in a batch that counts as converged.
+   * Clustering stops once every batch in a row of a few stays below it.
+   *
+   * @param driftTolerance - the tolerance, 0 to always run maxIterations batches
+   */
+  public void setDriftTolerance(double driftTolerance) {
+    this.driftTolerance = driftTolerance;
+  }
+
+  /**
+   * Sets the pool to run the assignment steps on. The clusters found are the same with or
+   * without a pool; only the running time changes.
+   *
+   * @param pool - the pool to use, or null to run on the calling thread
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Sets a deadline after which no more batches are sampled. At least one batch always runs, and
+   * every vector is still assigned to its closest centroid at the end.
+   *
+   * @param deadline - the System.nanoTime at which to stop
+   */
+  public void setDeadline(long deadline) {
+    this.hasDeadline = true;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sets a token that stops sampling batches once cancelled, like the deadline does.
+   *
+   * @param token - the token to watch, or null
+   */
+  public void setCancellation(CancellationToken token) {
+    this.token = token;
+  }
+
+  /**
+   * Initializes the centroids on distinct random vectors. k-means++ would need a full pass per
+   * centroid, which is exactly the cost mini-batch is avoiding.
+   */
+  private void initializeCentroids() {
+    int n = vectorList.size();
+    if (n == 0) {
+      return;
+    }
+    int[] order = new int[n];
+    for (int p = 0; p < n; p++) {
+      order[p] = p;
+    }
+    for (int c = 0; c < k; c++) {
+      int p;
+      if (c < n) {
+        // partial Fisher-Yates shuffle, so the first k vectors picked are distinct
+        int swap = c + rand.nextInt(n - c);
+        p = order[swap];
+        order[swap] = order[c];
+        order[c] = p;
+      } else {
+        p = rand.nextInt(n);
+      }
+      store.addTo(p, centroids, c * attrCount, 1);
+      // the starting vector counts as the first one absorbed, so the first batch only nudges it
+      centroidCounts[c] = 1;
+    }
+  }
+
+  @Override
+  public Map<Centroid, List<T>> createClusters() {
+    int n = vectorList.size();
+    if (n > 0) {
+      int[] batch = new int[Math.min(batchSize, n)];
+      int[] batchAssignments = new int[batch.length];
+      double[] previous = new double[centroids.length];
+      boolean[] touched = new boolean[k];
+      int calmBatches = 0;
+      for (int i = 0; i < maxIterations && calmBatches < PATIENCE; i++) {
+        for (int b = 0; b < batch.length; b++) {
+          batch[b] = rand.nextInt(n);
+        }
+        double[] centroidMagnitudes = findCentroidMagnitudes();
+        ParallelLoops.forEach(pool, batch.length,
+            b -> batchAssignments[b] = findClosestCentroid(batch[b], centroidMagnitudes));
+        Arrays.fill(touched, false);
+        for (int b = 0; b < batch.length; b++) {
+          int c = batchAssignments[b];
+          int offset = c * attrCount;
+          if (!touched[c]) {
+            touched[c] = true;
+            System.arraycopy(centroids, offset, previous, offset, attrCount);
+          }
+          centroidCounts[c]++;
+          double learningRate = 1.0 / centroidCounts[c];
+          for (int j = offset; j < offset + attrCount; j++) {
+            centroids[j] *= 1 - learningRate;
+          }
+          store.addTo(batch[b], centroids, offset, centroidCounts[c]);
+        }
+        if (findMaxDrift(previous, touched) < driftTolerance) {
+          calmBatches++;
+        } else {
+          calmBatches = 0;
+        }
+        if ((hasDeadline && System.nanoTime() - deadline >= 0)
+            || CancellationToken.isCancelled(token)) {
+          break;
+        }
+      }
+      double[] centroidMagnitudes = findCentroidMagnitudes();
+      ParallelLoops.forEach(pool, n,
+          p -> assignments[p] = findClosestCentroid(p, centroidMagnitudes));
+    }
+    return CosineKMeans.toClusterMap(vectorList, assignments, centroids, k, attrCount);
+  }
+
+  /**
+   * Normalizes the centroids touched in the last batch, and finds how far the furthest moved.
+   *
+   * @param previous - the touched centroids as they were before the batch
+   * @param touched  - which centroids the batch moved
+   * @return - the largest cosine distance between a touched centroid and its previous position
+   */
+  private double findMaxDrift(double[] previous, boolean[] touched) {
+    double maxDrift = 0;
+    for (int c = 0; c < k; c++) {
+      if (touched[c]) {
+        int offset = c * attrCount;
+        CosineKMeans.normalizeRow(centroids, offset, attrCount);
+        double drift = CosineKMeans.cosDistance(centroids, offset,
+            Arrays.copyOfRange(previous, offset, offset + attrCount), attrCount);
+        maxDrift = Math.max(maxDrift, drift);
+      }
+    }
+    return maxDrift;
+  }
+
+  /**
+   * Finds the squared magnitude of every centroid.
+   *
+   * @return - the squared magnitude of each centroid
+   */
+  private double[] findCentroidMagnitudes() {
+    double[] centroidMagnitudes = new double[k];
+    for (int c = 0; c < k; c++) {
+      centroidMagnitudes[c] = CosineKMeans.magnitudeSquared(centroids, c * attrCount, attrCount);
+    }
+    return centroidMagnitudes;
+  }
+
+  /**
+   * Finds the centroid closest to a vector.
+   *
+   * @param p                  - the index of the vector in vectorList
+   * @param centroidMagnitudes - the squared magnitude of each centroid
+   * @return - the index of the closest centroid
+   */
+  private int findClosestCentroid(int p, double[] centroidMagnitudes) {
+    double minDistance = Double.POSITIVE_INFINITY;
+    int closestCentroid = 0;
+    for (int c = 0; c < k; c++) {
+      double distance = store.cosDistance(p, centroids, c * attrCount, centroidMagnitudes[c]);
+      if (distance < minDistance) {
+        minDistance = distance;
+        closestCentroid = c;
+      }
+    }
+    return closestCentroid;
+  }
+
+  @Override
+  public double[] findCentroidCenter() {
+    return CosineKMeans.findCentroidCenter(centroids, k, attrCount);
+  }
+}
@@ -0,0 +1,305 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class to run several independently seeded runs of CosineKMeans on the same vectors, keeping
+ * the clusters with the lowest inertia. Since k-means only finds a local optimum that depends on
+ * its seeding, this makes a bad grouping much less likely than a single run does.
+ *
+ * @param <T> The type of vector to be clustered
+ */
+public class MultiRestartKMeans<T extends VectorData<T>> implements Clusterer<T> {
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final long NANOS_PER_MILLI = 1_000_000;
+  /**
+   * The number of clusters to create.
+   */
+  private final int k;
+  /**
+   * A list of all vectors.
+   */
+  private final List<T> vectorList;
+  /**
+   * The normalized vectors of vectorList, built on the constructing thread so that runs only
+   * read already packed schedules.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The maximum number of iterations of each run.
+   */
+  private final int maxIterations;
+  /**
+   * The seed of each run's random number generator, drawn up front so that results do not
+   * depend on the order runs are scheduled in.
+   */
+  private final long[] seeds;
+  /**
+   * The pool the runs are spread over, or null to run them one after another.
+   */
+  private ForkJoinPool pool;
+  /**
+   * Whether each run prunes distance computations.
+   */
+  private boolean pruning;
+  /**
+   * The centroid movement below which each run counts as converged.
+   */
+  private double centroidTolerance;
+  /**
+   * The fraction of reassigned vectors below which each run counts as converged.
+   */
+  private double reassignmentTolerance;
+  /**
+   * Whether the runs have a deadline.
+   */
+  private boolean hasDeadline;
+  /**
+   * The System.nanoTime after which no more runs start and running ones stop iterating, if
+   * hasDeadline.
+   */
+  private long deadline;
+  /**
+   * The token that skips unstarted runs and stops running ones once cancelled, or null.
+   */
+  private CancellationToken token;
+  /**
+   * The starting centroids of the first run stored row by row, or null to seed it like the rest.
+   */
+  private double[] initialCentroids;
+  /**
+   * The run with the lowest inertia, or null before createClusters.
+   */
+  private CosineKMeans<T> best;
+  /**
+   * The amount of runs started by the last call to createClusters.
+   */
+  private int startedRuns;
+
+  /**
+   * A constructor for multi-restart k-means.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered, each vector must have same amount
+   *                      of coordinates. Coordinates must all be between 0 and 1.
+   * @param maxIterations - the maximum amount of iterations of each run (must be positive)
+   * @param restarts      - the amount of runs (must be positive)
+   * @param rand          - the random number generator used to seed the runs
+   */
+  public MultiRestartKMeans(int k, List<T> vectorList, int maxIterations, int restarts,
+                            Random rand) {
+    this(k, vectorList, new UnitVectorStore(vectorList), maxIterations, restarts, rand);
+  }
+
+  /**
+   * A constructor for multi-restart k-means over vectors that are already normalized.
+   *
+   * @param k             - the amount of clusters to create
+   * @param vectorList    - the list of vectors to be clustered
+   * @param store         - the normalized vectors of vectorList, shared by every run
+   * @param maxIterations - the maximum amount of iterations of each run (must be positive)
+   * @param restarts      - the amount of runs (must be positive)
+   * @param rand          - the random number generator used to seed the runs
+   */
+  MultiRestartKMeans(int k, List<T> vectorList, UnitVectorStore store, int maxIterations,
+                     int restarts, Random rand) {
+    if (restarts <= 0) {
+      throw new RuntimeException("Must run k-means at least once.");
+    }
+    this.k = k;
+    this.vectorList = vectorList;
+    this.store = store;
+    this.maxIterations = maxIterations;
+    this.seeds = new long[restarts];
+    for (int r = 0; r < restarts; r++) {
+      seeds[r] = rand.nextLong();
+    }
+  }
+
+  /**
+   * Sets the pool to spread the runs over. Each run is single threaded, so the pool's
+   * parallelism bounds how many run at once. Without a deadline the result is the same with or
+   * without a pool.
+   *
+   * @param pool - the pool to use, or null to run on the calling thread
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Sets whether each run prunes distance computations, see CosineKMeans.setPruning.
+   *
+   * @param pruning - whether to prune distance computations
+   */
+  public void setPruning(boolean pruning) {
+    this.pruning = pruning;
+  }
+
+  /**
+   * Sets the convergence tolerance on centroid movement of each run, see
+   * CosineKMeans.setCentroidTolerance.
+   *
+   * @param centroidTolerance - the largest cosine distance any centroid may move
+   */
+  public void setCentroidTolerance(double centroidTolerance) {
+    this.centroidTolerance = centroidTolerance;
+  }
+
+  /**
+   * Sets the convergence tolerance on reassigned vectors of each run, see
+   * CosineKMeans.setReassignmentTolerance.
+   *
+   * @param reassignmentTolerance - the largest fraction of vectors that may change cluster
+   */
+  public void setReassignmentTolerance(double reassignmentTolerance) {
+    this.reassignmentTolerance = reassignmentTolerance;
+  }
+
+  /**
+   * Starts the first run from given centroids, such as those of an earlier clustering, while the
+   * other runs are still seeded with k-means++. The warm start is then kept only if it beats them.
+   *
+   * @param initialCentroids - the starting centroids stored row by row, or null for none
+   */
+  void setInitialCentroids(double[] initialCentroids) {
+    this.initialCentroids = initialCentroids;
+  }
+
+  /**
+   * Sets a deadline for the runs. Runs that have not started by then are skipped, and running
+   * ones stop iterating. The first run always starts, so there is always a result. Which runs
+   * finish, and so the result, then depends on load.
+   *
+   * @param deadline - the System.nanoTime at which to stop
+   */
+  public void setDeadline(long deadline) {
+    this.hasDeadline = true;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sets a token that, once cancelled, skips the runs that have not started and stops running
+   * ones like the deadline does.
+   *
+   * @param token - the token to watch, or null
+   */
+  public void setCancellation(CancellationToken token) {
+    this.token = token;
+  }
+
+  /**
+   * Sets a deadline a given amount of time from now, see setDeadline.
+   *
+   * @param millis - the wall-clock budget, in milliseconds
+   */
+  public void setTimeBudget(long millis) {
+    setDeadline(System.nanoTime() + millis * NANOS_PER_MILLI);
+  }
+
+  @Override
+  public Map<Centroid, List<T>> createClusters() {
+    List<ForkJoinTask<CosineKMeans<T>>> tasks = new ArrayList<>();
+    if (pool != null) {
+      for (int r = 1; r < seeds.length; r++) {
+        int restart = r;
+        tasks.add(pool.submit(() -> runIfInTime(restart)));
+      }
+    }
+    List<CosineKMeans<T>> runs = new ArrayList<>();
+    runs.add(run(0));
+    if (pool == null) {
+      for (int r = 1; r < seeds.length; r++) {
+        runs.add(runIfInTime(r));
+      }
+    } else {
+      for (ForkJoinTask<CosineKMeans<T>> task : tasks) {
+        runs.add(task.join());
+      }
+    }
+    best = null;
+    startedRuns = 0;
+    for (CosineKMeans<T> run : runs) {
+      if (run != null) {
+        startedRuns++;
+        // ties go to the earlier run, so the choice does not depend on scheduling
+        if (best == null || run.getReport().getInertia() < best.getReport().getInertia()) {
+          best = run;
+        }
+      }
+    }
+    return best.getClusters();
+  }
+
+  /**
+   * Runs one restart, unless the deadline has passed or the runs were cancelled.
+   *
+   * @param restart - the index of the run
+   * @return - the finished run, or null if it was skipped
+   */
+  private CosineKMeans<T> runIfInTime(int restart) {
+    if ((hasDeadline && System.nanoTime() - deadline >= 0)
+        || CancellationToken.isCancelled(token)) {
+      return null;
+    }
+    return run(restart);
+  }
+
+  /**
+   * Runs one restart.
+   *
+   * @param restart - the index of the run
+   * @return - the finished run
+   */
+  private CosineKMeans<T> run(int restart) {
+    double[] warmStart = null;
+    if (restart == 0) {
+      warmStart = initialCentroids;
+    }
+    CosineKMeans<T> kMeans = new CosineKMeans<>(k, vectorList, store, maxIterations,
+        new Random(seeds[restart]), warmStart);
+    kMeans.setPruning(pruning);
+    kMeans.setCentroidTolerance(centroidTolerance);
+    kMeans.setReassignmentTolerance(reassignmentTolerance);
+    if (hasDeadline) {
+      kMeans.setDeadline(deadline);
+    }
+    kMeans.setCancellation(token);
+    kMeans.createClusters();
+    return kMeans;
+  }
+
+  /**
+   * Getter for the report of the best run.
+   *
+   * @return - the report of the run with the lowest inertia, or null before createClusters
+   */
+  public KMeansReport getReport() {
+    if (best == null) {
+      return null;
+    }
+    return best.getReport();
+  }
+
+  /**
+   * Getter for how many runs the last call to createClusters started, which is below the
+   * amount of restarts when the deadline cut it short.
+   *
+   * @return - the amount of runs started
+   */
+  public int getStartedRuns() {
+    return startedRuns;
+  }
+
+  @Override
+  public double[] findCentroidCenter() {
+    return best.findCentroidCenter();
+  }
+}
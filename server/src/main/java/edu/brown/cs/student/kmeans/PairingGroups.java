@@ -0,0 +1,325 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A grouping engine for groups of two. Pairs are found as a maximum-weight matching on the
+ * complete graph of vectors, where the weight of a pair is |a + b| for their normalized vectors a
+ * and b. The clustering loss of a pair is 2 - |a + b|, so this is the matching with the lowest
+ * total loss, the same loss the other engines minimize. The matching is built greedily, by
+ * repeatedly pairing vectors that are each other's best remaining partner, and then improved by
+ * re-pairing two pairs at a time while that raises the total weight. With an odd amount of
+ * vectors, the one left over joins the pair it fits best, forming a single group of three.
+ *
+ * @param <T> - The type of objects to be grouped, must have coordinates and can
+ *            be treated like a vector.
+ */
+public class PairingGroups<T extends VectorData<T>> implements GroupingEngine<T> {
+  /**
+   * The size of each group.
+   */
+  private static final int PAIR_SIZE = 2;
+  /**
+   * The amount of vectors at which work starts running on the common ForkJoinPool.
+   */
+  private static final int PARALLEL_THRESHOLD = 256;
+  /**
+   * The most pairwise dot products to cache before computing them on demand.
+   */
+  private static final int MAX_CACHED_DOTS = 1 << 22;
+  /**
+   * The smallest raise in total weight that counts as an improvement, so rounding error can not
+   * make the search cycle.
+   */
+  private static final double MIN_GAIN = 1e-9;
+  /**
+   * The amount of nanoseconds in a millisecond.
+   */
+  private static final long NANOS_PER_MILLI = 1_000_000;
+  /**
+   * The vectors to be paired.
+   */
+  private final List<T> vectorList;
+  /**
+   * The normalized vectors, parallel to vectorList.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The pool to run on, or null to run on the calling thread.
+   */
+  private final ForkJoinPool pool;
+  /**
+   * The dot product of every two normalized vectors, stored row by row, or null if there are
+   * too many to cache.
+   */
+  private double[] dots;
+  /**
+   * The wall-clock budget for improving the greedy matching in milliseconds, or 0 for no budget.
+   */
+  private long timeBudgetMillis;
+
+  /**
+   * The constructor for PairingGroups. Each vector in vector list is assumed to have the same
+   * amount of coordinates between 0 and 1.
+   *
+   * @param vectorList - the list of vectors to be paired
+   */
+  public PairingGroups(List<T> vectorList) {
+    if (vectorList.size() == 0) {
+      throw new RuntimeException();
+    }
+    this.vectorList = new ArrayList<>(vectorList);
+    this.store = new UnitVectorStore(this.vectorList);
+    if (vectorList.size() >= PARALLEL_THRESHOLD) {
+      this.pool = ForkJoinPool.commonPool();
+    } else {
+      this.pool = null;
+    }
+  }
+
+  /**
+   * Sets a wall-clock budget for improving the greedy matching. Once it runs out, the pairs found
+   * so far are returned.
+   *
+   * @param millis - the budget in milliseconds, or 0 to improve until no re-pairing helps
+   */
+  public void setTimeBudget(long millis) {
+    this.timeBudgetMillis = millis;
+  }
+
+  @Override
+  public List<List<T>> getGroups() {
+    return getGroups(0, null).getGroups();
+  }
+
+  /**
+   * Pairs the vectors within a hard time budget. The greedy matching always completes, and once
+   * the budget runs out or the token is cancelled, improving it stops with the pairs found so far.
+   * The improvement's own time budget, from setTimeBudget, still applies, and running out of it
+   * does not count as being cut short.
+   *
+   * @param budgetMillis - the wall-clock budget in milliseconds, or 0 for no budget
+   * @param token        - a token to cancel the grouping with, or null
+   * @return - the groups, and whether they were cut short
+   */
+  @Override
+  public GroupingResult<T> getGroups(long budgetMillis, CancellationToken token) {
+    long start = System.nanoTime();
+    List<List<T>> groupings = new ArrayList<>();
+    int n = vectorList.size();
+    if (n < PAIR_SIZE) {
+      groupings.add(new ArrayList<>(vectorList));
+      return GroupingResult.of(groupings, false, token, start);
+    }
+    long hardDeadline = start + budgetMillis * NANOS_PER_MILLI;
+    if ((long) n * n <= MAX_CACHED_DOTS) {
+      dots = new double[n * n];
+      ParallelLoops.forEach(pool, n, p -> {
+        for (int q = 0; q < n; q++) {
+          dots[p * n + q] = store.dot(p, q);
+        }
+      });
+    }
+    int[] mate = matchGreedily();
+    int[][] pairs = new int[n / PAIR_SIZE][];
+    int leftover = -1;
+    int pairCount = 0;
+    for (int p = 0; p < n; p++) {
+      if (mate[p] < 0) {
+        leftover = p;
+      } else if (p < mate[p]) {
+        pairs[pairCount++] = new int[] {p, mate[p]};
+      }
+    }
+    long deadline = hardDeadline;
+    if (timeBudgetMillis > 0) {
+      deadline = System.nanoTime() + timeBudgetMillis * NANOS_PER_MILLI;
+      if (budgetMillis > 0 && deadline - hardDeadline > 0) {
+        deadline = hardDeadline;
+      }
+    }
+    boolean hasDeadline = timeBudgetMillis > 0 || budgetMillis > 0;
+    boolean converged = improvePairs(pairs, hasDeadline, deadline, token);
+    boolean cutShort = !converged && ((budgetMillis > 0 && System.nanoTime() - hardDeadline >= 0)
+        || CancellationToken.isCancelled(token));
+    if (leftover >= 0) {
+      addToBestPair(leftover, pairs);
+    }
+    for (int[] pair : pairs) {
+      List<T> group = new ArrayList<>(pair.length);
+      for (int p : pair) {
+        group.add(vectorList.get(p));
+      }
+      groupings.add(group);
+    }
+    return GroupingResult.of(groupings, cutShort, token, start);
+  }
+
+  /**
+   * Builds a greedy matching. Each round, every unmatched vector finds its best unmatched
+   * partner, and vectors that pick each other are paired. This pairs vectors in the same way as
+   * taking the heaviest remaining pair over and over, but each round runs in parallel, and a
+   * vector's best partner only needs finding again once that partner is taken.
+   *
+   * @return - the partner of each vector, or -1 for the one vector left over when n is odd
+   */
+  private int[] matchGreedily() {
+    int n = vectorList.size();
+    int[] mate = new int[n];
+    int[] best = new int[n];
+    Arrays.fill(mate, -1);
+    Arrays.fill(best, -1);
+    int[] open = new int[n];
+    for (int p = 0; p < n; p++) {
+      open[p] = p;
+    }
+    int openCount = n;
+    while (openCount >= PAIR_SIZE) {
+      int candidates = openCount;
+      ParallelLoops.forEach(pool, candidates, i -> {
+        int p = open[i];
+        if (best[p] < 0 || mate[best[p]] >= 0) {
+          best[p] = findBestPartner(p, open, candidates);
+        }
+      });
+      for (int i = 0; i < candidates; i++) {
+        int p = open[i];
+        int q = best[p];
+        if (mate[p] < 0 && mate[q] < 0 && best[q] == p) {
+          mate[p] = q;
+          mate[q] = p;
+        }
+      }
+      openCount = 0;
+      for (int i = 0; i < candidates; i++) {
+        if (mate[open[i]] < 0) {
+          open[openCount++] = open[i];
+        }
+      }
+    }
+    return mate;
+  }
+
+  /**
+   * Finds the unmatched vector that pairs best with a vector, breaking ties towards the lower
+   * index so that the heaviest remaining pair always picks each other.
+   *
+   * @param p         - the index of the vector
+   * @param open      - the indices of the unmatched vectors
+   * @param openCount - the amount of unmatched vectors
+   * @return - the index of its best partner
+   */
+  private int findBestPartner(int p, int[] open, int openCount) {
+    int bestPartner = -1;
+    double bestDot = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < openCount; i++) {
+      int q = open[i];
+      if (q != p) {
+        double dot = dot(p, q);
+        if (dot > bestDot || (dot == bestDot && q < bestPartner)) {
+          bestPartner = q;
+          bestDot = dot;
+        }
+      }
+    }
+    return bestPartner;
+  }
+
+  /**
+   * Re-pairs two pairs at a time, (a, b) and (c, d) becoming (a, c) and (b, d) or (a, d) and
+   * (b, c), whenever that raises their total weight, until no re-pairing helps, the deadline
+   * passes or the token is cancelled.
+   *
+   * @param pairs       - the pairs, rearranged in place
+   * @param hasDeadline - whether there is a deadline
+   * @param deadline    - the System.nanoTime after which to stop, if hasDeadline
+   * @param token       - the token to watch, or null
+   * @return - true if it stopped because no re-pairing helps
+   */
+  private boolean improvePairs(int[][] pairs, boolean hasDeadline, long deadline,
+                               CancellationToken token) {
+    boolean improved = true;
+    while (improved) {
+      improved = false;
+      for (int i = 0; i < pairs.length; i++) {
+        if ((hasDeadline && System.nanoTime() - deadline >= 0)
+            || CancellationToken.isCancelled(token)) {
+          return false;
+        }
+        for (int j = i + 1; j < pairs.length; j++) {
+          int a = pairs[i][0];
+          int b = pairs[i][1];
+          int c = pairs[j][0];
+          int d = pairs[j][1];
+          double current = weight(a, b) + weight(c, d) + MIN_GAIN;
+          double crossed = weight(a, c) + weight(b, d);
+          double swapped = weight(a, d) + weight(b, c);
+          if (crossed > current && crossed >= swapped) {
+            pairs[i][1] = c;
+            pairs[j][0] = b;
+            improved = true;
+          } else if (swapped > current) {
+            pairs[i][1] = d;
+            pairs[j][1] = b;
+            improved = true;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a vector to the pair it lowers the loss of the least, making that pair a group of three.
+   * A group's loss is its size minus the magnitude of its normalized vectors' sum.
+   *
+   * @param p     - the index of the vector
+   * @param pairs - the pairs, one of which is replaced by a group of three
+   */
+  private void addToBestPair(int p, int[][] pairs) {
+    int bestPair = 0;
+    double bestGain = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < pairs.length; i++) {
+      int a = pairs[i][0];
+      int b = pairs[i][1];
+      double pairWeight = weight(a, b);
+      // |a + b + p|^2 = |a + b|^2 + 2 (p.a + p.b) + 1
+      double tripleWeight = Math.sqrt(Math.max(0,
+          pairWeight * pairWeight + 2 * (dot(p, a) + dot(p, b)) + 1));
+      double gain = tripleWeight - pairWeight;
+      if (gain > bestGain) {
+        bestPair = i;
+        bestGain = gain;
+      }
+    }
+    pairs[bestPair] = new int[] {pairs[bestPair][0], pairs[bestPair][1], p};
+  }
+
+  /**
+   * Gets the weight of pairing two vectors.
+   *
+   * @param p - the index of a vector
+   * @param q - the index of another vector
+   * @return - the magnitude of the sum of their normalized vectors
+   */
+  private double weight(int p, int q) {
+    return Math.sqrt(Math.max(0, 2 + 2 * dot(p, q)));
+  }
+
+  /**
+   * Gets the dot product of two normalized vectors, from the cache if there is one.
+   *
+   * @param p - the index of a vector
+   * @param q - the index of another vector
+   * @return - their dot product
+   */
+  private double dot(int p, int q) {
+    if (dots != null) {
+      return dots[p * vectorList.size() + q];
+    }
+    return store.dot(p, q);
+  }
+}
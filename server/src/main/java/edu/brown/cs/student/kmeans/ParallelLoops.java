@@ -0,0 +1,80 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Helper for running index loops on a ForkJoinPool. Every index is handled exactly once, by a
+ * single thread, so loops whose iterations only write their own slots give the same results
+ * sequentially and in parallel.
+ */
+final class ParallelLoops {
+  /**
+   * How many tasks to split a loop into per thread of the pool, to even out uneven iterations.
+   */
+  private static final int TASKS_PER_THREAD = 4;
+
+  /**
+   * Constructor.
+   */
+  private ParallelLoops() {
+  }
+
+  /**
+   * Runs action on every index in [0, count).
+   *
+   * @param pool   - the pool to run on, or null to run on the calling thread
+   * @param count  - the amount of indices
+   * @param action - the body of the loop
+   */
+  static void forEach(ForkJoinPool pool, int count, IntConsumer action) {
+    if (pool == null || count <= 1) {
+      for (int i = 0; i < count; i++) {
+        action.accept(i);
+      }
+      return;
+    }
+    int threshold = Math.max(1, count / (pool.getParallelism() * TASKS_PER_THREAD));
+    pool.invoke(new RangeAction(0, count, threshold, action));
+  }
+
+  /**
+   * A task that splits an index range in half until it is below a threshold.
+   */
+  private static final class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final transient IntConsumer action;
+
+    /**
+     * Constructor.
+     *
+     * @param from      - the first index (inclusive)
+     * @param to        - the last index (exclusive)
+     * @param threshold - the largest range to run without splitting
+     * @param action    - the body of the loop
+     */
+    RangeAction(int from, int to, int threshold, IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= threshold) {
+        for (int i = from; i < to; i++) {
+          action.accept(i);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeAction(from, mid, threshold, action),
+            new RangeAction(mid, to, threshold, action));
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package edu.brown.cs.student.kmeans;
+
+/**
+ * The plain loop implementation of DistanceKernel, used whenever the vector API is not
+ * available.
+ */
+final class ScalarKernel implements DistanceKernel {
+  @Override
+  public double dot(double[] flatCoords, int offset, double[] otherFlatCoords, int otherOffset,
+                    int length) {
+    double dotProduct = 0;
+    for (int i = 0; i < length; i++) {
+      dotProduct += flatCoords[offset + i] * otherFlatCoords[otherOffset + i];
+    }
+    return dotProduct;
+  }
+
+  @Override
+  public double magnitudeSquared(double[] flatCoords, int offset, int length) {
+    double magnitudeSquared = 0;
+    for (int i = offset; i < offset + length; i++) {
+      magnitudeSquared += flatCoords[i] * flatCoords[i];
+    }
+    return magnitudeSquared;
+  }
+
+  @Override
+  public double cosDistance(double[] flatCoords, int offset, double[] otherFlatCoords,
+                            int otherOffset, int length) {
+    double magnitude = 0;
+    double otherMagnitude = 0;
+    double dotProduct = 0;
+    for (int i = 0; i < length; i++) {
+      double coord = flatCoords[offset + i];
+      double otherCoord = otherFlatCoords[otherOffset + i];
+      magnitude += coord * coord;
+      otherMagnitude += otherCoord * otherCoord;
+      dotProduct += coord * otherCoord;
+    }
+    return VectorKernels.fromDotProduct(dotProduct, magnitude, otherMagnitude);
+  }
+}
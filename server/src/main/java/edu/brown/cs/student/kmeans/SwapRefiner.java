@@ -0,0 +1,305 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Local search over finished groups that swaps pairs of members between groups while doing so
+ * lowers the clustering loss. The loss of a group is the sum of each member's cosine distance
+ * to the group's mean normalized vector, which works out to size - |sum of normalized members|,
+ * so a swap only changes the norms of the two groups' sums. Each member's dot product with
+ * every group's sum is cached, so evaluating a swap costs one member-member dot product (a
+ * popcount over dim/64 words for bit vectors) instead of recomputing either group.
+ */
+final class SwapRefiner {
+  /**
+   * The most cached member-group dot products, past which they are computed on demand instead.
+   */
+  private static final int MAX_CACHED_DOTS = 1 << 22;
+  /**
+   * The smallest decrease in loss that counts as an improving swap, so rounding error can not
+   * make the search cycle.
+   */
+  private static final double MIN_GAIN = 1e-9;
+  /**
+   * The normalized vectors being grouped.
+   */
+  private final UnitVectorStore store;
+  /**
+   * The store indices of each group's members, which swaps rearrange in place.
+   */
+  private final int[][] groups;
+  /**
+   * The group of every vector in the store, or -1 for vectors that are not in a group.
+   */
+  private final int[] groupOf;
+  /**
+   * The position in its group of every grouped vector.
+   */
+  private final int[] positionOf;
+  /**
+   * The sum of each group's normalized members, stored row by row.
+   */
+  private final double[] sums;
+  /**
+   * The squared magnitude of each group's sum.
+   */
+  private final double[] sumMagnitudesSquared;
+  /**
+   * The dot product of every vector with every group's sum, row by row, or null if that would
+   * take more than MAX_CACHED_DOTS entries.
+   */
+  private final double[] dots;
+  /**
+   * The pool to evaluate swaps on, or null to run on the calling thread.
+   */
+  private ForkJoinPool pool;
+  /**
+   * The token that stops the search once cancelled, or null.
+   */
+  private CancellationToken token;
+  /**
+   * Whether the last call to refine stopped because no swap improved the loss.
+   */
+  private boolean converged;
+
+  /**
+   * Constructor for the refiner. Every vector in groups must be distinct.
+   *
+   * @param store  - the normalized vectors being grouped
+   * @param groups - the store indices of each group's members, which refine rearranges in place
+   */
+  SwapRefiner(UnitVectorStore store, int[][] groups) {
+    this.store = store;
+    this.groups = groups;
+    int length = store.getLength();
+    this.groupOf = new int[store.size()];
+    this.positionOf = new int[store.size()];
+    Arrays.fill(groupOf, -1);
+    this.sums = new double[groups.length * length];
+    this.sumMagnitudesSquared = new double[groups.length];
+    for (int g = 0; g < groups.length; g++) {
+      for (int i = 0; i < groups[g].length; i++) {
+        groupOf[groups[g][i]] = g;
+        positionOf[groups[g][i]] = i;
+        store.addTo(groups[g][i], sums, g * length, 1);
+      }
+      sumMagnitudesSquared[g] = VectorKernels.magnitudeSquared(sums, g * length, length);
+    }
+    if ((long) store.size() * groups.length <= MAX_CACHED_DOTS) {
+      this.dots = new double[store.size() * groups.length];
+    } else {
+      this.dots = null;
+    }
+  }
+
+  /**
+   * Sets the pool that swaps are evaluated on.
+   *
+   * @param pool - the pool to run on, or null to run on the calling thread
+   */
+  void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Sets a token that stops the search once cancelled, keeping the swaps applied so far.
+   *
+   * @param token - the token to watch, or null
+   */
+  void setCancellation(CancellationToken token) {
+    this.token = token;
+  }
+
+  /**
+   * Getter for whether the last call to refine ran until no swap improved the loss.
+   *
+   * @return - false if the deadline or cancellation stopped it first
+   */
+  boolean isConverged() {
+    return converged;
+  }
+
+  /**
+   * Applies improving swaps until none are left or the deadline passes. Each pass finds every
+   * member's best swap in parallel, then applies the best swaps that touch disjoint groups, since
+   * a swap's gain only holds while both of its groups are unchanged.
+   *
+   * @param deadline - the System.nanoTime after which no new pass is started
+   * @return - the amount of swaps applied
+   */
+  int refine(long deadline) {
+    converged = true;
+    if (groups.length < 2) {
+      return 0;
+    }
+    if (dots != null) {
+      ParallelLoops.forEach(pool, store.size(), this::fillDots);
+    }
+    int[] members = Arrays.stream(groups).flatMapToInt(IntStream::of).toArray();
+    int[] partners = new int[members.length];
+    double[] gains = new double[members.length];
+    int swaps = 0;
+    while (true) {
+      if (isStopped(deadline)) {
+        converged = false;
+        break;
+      }
+      ParallelLoops.forEach(pool, members.length, m -> {
+        partners[m] = -1;
+        gains[m] = MIN_GAIN;
+        if (isStopped(deadline)) {
+          return;
+        }
+        findBestSwap(members[m], partners, gains, m);
+      });
+      Integer[] order = new Integer[members.length];
+      for (int m = 0; m < order.length; m++) {
+        order[m] = m;
+      }
+      Arrays.sort(order, Comparator.comparingDouble(m -> -gains[m]));
+      boolean[] touched = new boolean[groups.length];
+      int applied = 0;
+      for (int m : order) {
+        if (partners[m] < 0) {
+          break;
+        }
+        int a = members[m];
+        int b = partners[m];
+        if (!touched[groupOf[a]] && !touched[groupOf[b]]) {
+          touched[groupOf[a]] = true;
+          touched[groupOf[b]] = true;
+          swap(a, b);
+          applied++;
+        }
+      }
+      if (applied == 0) {
+        // a pass cut short finds no swaps for the members it skipped
+        converged = !isStopped(deadline);
+        break;
+      }
+      swaps += applied;
+    }
+    return swaps;
+  }
+
+  /**
+   * Checks whether the search should stop.
+   *
+   * @param deadline - the System.nanoTime after which to stop
+   * @return - true if the deadline has passed or the token was cancelled
+   */
+  private boolean isStopped(long deadline) {
+    return System.nanoTime() - deadline >= 0 || CancellationToken.isCancelled(token);
+  }
+
+  /**
+   * Finds the swap partner that most lowers the loss for one member.
+   *
+   * @param a        - the store index of the member
+   * @param partners - where to write the best partner, left alone if no swap improves the loss
+   * @param gains    - where to write the decrease in loss of the best swap
+   * @param m        - the slot of partners and gains to write
+   */
+  private void findBestSwap(int a, int[] partners, double[] gains, int m) {
+    int groupA = groupOf[a];
+    double selfA = groupDot(a, groupA);
+    double magnitudeA = Math.sqrt(sumMagnitudesSquared[groupA]);
+    for (int groupB = 0; groupB < groups.length; groupB++) {
+      if (groupB == groupA) {
+        continue;
+      }
+      double crossA = groupDot(a, groupB);
+      double magnitudeB = Math.sqrt(sumMagnitudesSquared[groupB]);
+      for (int b : groups[groupB]) {
+        // with unit vectors, |S - a + b|^2 = |S|^2 - 2 a.S + 2 b.S + 2 - 2 a.b
+        double ab = store.dot(a, b);
+        double newA = sumMagnitudesSquared[groupA] + 2 * (groupDot(b, groupA) - selfA + 1 - ab);
+        double newB = sumMagnitudesSquared[groupB] + 2 * (crossA - groupDot(b, groupB) + 1 - ab);
+        double gain = Math.sqrt(Math.max(0, newA)) + Math.sqrt(Math.max(0, newB))
+            - magnitudeA - magnitudeB;
+        if (gain > gains[m]) {
+          gains[m] = gain;
+          partners[m] = b;
+        }
+      }
+    }
+  }
+
+  /**
+   * Swaps two members of different groups, updating the group sums and cached dot products.
+   *
+   * @param a - the store index of a member
+   * @param b - the store index of a member of another group
+   */
+  private void swap(int a, int b) {
+    int length = store.getLength();
+    int groupA = groupOf[a];
+    int groupB = groupOf[b];
+    store.addTo(a, sums, groupA * length, -1);
+    store.addTo(b, sums, groupA * length, 1);
+    store.addTo(b, sums, groupB * length, -1);
+    store.addTo(a, sums, groupB * length, 1);
+    sumMagnitudesSquared[groupA] = VectorKernels.magnitudeSquared(sums, groupA * length, length);
+    sumMagnitudesSquared[groupB] = VectorKernels.magnitudeSquared(sums, groupB * length, length);
+    int positionA = positionOf[a];
+    groups[groupA][positionA] = b;
+    groups[groupB][positionOf[b]] = a;
+    positionOf[a] = positionOf[b];
+    positionOf[b] = positionA;
+    groupOf[a] = groupB;
+    groupOf[b] = groupA;
+    if (dots != null) {
+      ParallelLoops.forEach(pool, store.size(), x -> {
+        if (groupOf[x] >= 0) {
+          double difference = store.dot(x, b) - store.dot(x, a);
+          dots[x * groups.length + groupA] += difference;
+          dots[x * groups.length + groupB] -= difference;
+        }
+      });
+    }
+  }
+
+  /**
+   * Fills one vector's row of cached dot products.
+   *
+   * @param x - the store index of the vector
+   */
+  private void fillDots(int x) {
+    if (groupOf[x] < 0) {
+      return;
+    }
+    for (int g = 0; g < groups.length; g++) {
+      dots[x * groups.length + g] = store.dot(x, sums, g * store.getLength());
+    }
+  }
+
+  /**
+   * Gets the dot product of a normalized vector and a group's sum.
+   *
+   * @param x - the store index of the vector
+   * @param g - the group
+   * @return - the dot product
+   */
+  private double groupDot(int x, int g) {
+    if (dots != null) {
+      return dots[x * groups.length + g];
+    }
+    return store.dot(x, sums, g * store.getLength());
+  }
+
+  /**
+   * Calculates the clustering loss of the current groups.
+   *
+   * @return - the sum over groups of size - |sum of normalized members|
+   */
+  double findLoss() {
+    double loss = 0;
+    for (int g = 0; g < groups.length; g++) {
+      loss += groups[g].length - Math.sqrt(sumMagnitudesSquared[g]);
+    }
+    return loss;
+  }
+}
@@ -1,7 +1,9 @@
 package edu.brown.cs.student.kmeans;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Class to select the best times given schedules represented as doubles of weights.
@@ -9,6 +11,14 @@ import java.util.List;
  * @param <T> - A type of object that contains a schedule represented as a double array
  */
 public class TimeSelection<T extends VectorData<T>> {
+  /**
+   * The amount of 15 minute slots in a day.
+   */
+  private static final int SLOTS_PER_DAY = 96;
+  /**
+   * The most states a weekly plan of varying meeting lengths may allocate, about 50 MB.
+   */
+  private static final long MAX_PLAN_STATES = 1L << 22;
   /**
    * List of data with schedules.
    */
@@ -22,6 +32,11 @@ public class TimeSelection<T extends VectorData<T>> {
    * Length of the schedules.
    */
   private final int vectorLength;
+  /**
+   * The weight of each availability level, used instead of the schedules' own level weights, or
+   * null to use the schedules' own.
+   */
+  private double[] levelWeights;
 
   /**
    * A constructor for a TimeSelection without a multiplier.
@@ -53,6 +68,18 @@ public class TimeSelection<T extends VectorData<T>> {
     }
   }
 
+  /**
+   * Sets how much a slot at each availability level counts for, when every schedule is a
+   * LevelVectorData, in place of the schedules' own level weights. Other schedules count for
+   * their coordinates.
+   *
+   * @param levelWeights - the weight of each level, indexed by level, with UNAVAILABLE at 0
+   */
+  public void setLevelWeights(double[] levelWeights) {
+    AvailabilityLevels.checkWeights(levelWeights);
+    this.levelWeights = levelWeights.clone();
+  }
+
   /**
    * A method to find the best times for everyone's schedule.
    *
@@ -68,36 +95,15 @@ public class TimeSelection<T extends VectorData<T>> {
       throw new RuntimeException();
     }
     List<Integer> finalStartTimes = new ArrayList<>();
-    double[] timeWeights = new double[vectorList.get(0).getLength()];
-    for (int i = 0; i < timeWeights.length; i++) {
-      double total = 0;
-      for (T vector : vectorList) {
-        total += vector.getVector()[i];
-      }
-      if (multiplier != null) {
-        total = total * multiplier.getVector()[i];
-      }
-      timeWeights[i] = total;
-    }
-    double[] blockWeights = new double[vectorList.get(0).getLength() - blockSize + 1];
-    blockWeights[0] = 0;
-    for (int i = 0; i < blockSize; i++) {
-      blockWeights[0] += timeWeights[i];
-    }
-    for (int i = 1; i < blockWeights.length; i++) {
-      blockWeights[i] = blockWeights[i - 1] - timeWeights[i - 1] + timeWeights[i + blockSize - 1];
-    }
-    for (int i = 0; i < timeAmt; i++) {
+    double[] blockWeights = findBlockWeights(blockSize);
+    PriorityQueue<Integer> queue = orderStarts(blockWeights);
+    // take the starts one weight at a time, spreading out the last weight's starts if they do
+    // not all fit
+    while (finalStartTimes.size() < timeAmt) {
       List<Integer> maxIndices = new ArrayList<>();
-      double maxValue = Double.NEGATIVE_INFINITY;
-      for (int j = 0; j < blockWeights.length; j++) {
-        if (blockWeights[j] > maxValue && !finalStartTimes.contains(j)) {
-          maxIndices = new ArrayList<>();
-          maxIndices.add(j);
-          maxValue = blockWeights[j];
-        } else if (blockWeights[j] == maxValue) {
-          maxIndices.add(j);
-        }
+      double maxValue = blockWeights[queue.peek()];
+      while (!queue.isEmpty() && blockWeights[queue.peek()] == maxValue) {
+        maxIndices.add(queue.poll());
       }
       if (maxIndices.size() > timeAmt - finalStartTimes.size()) {
         int timesToAdd = timeAmt - finalStartTimes.size();
@@ -114,4 +120,391 @@ public class TimeSelection<T extends VectorData<T>> {
     }
     return finalStartTimes;
   }
+
+  /**
+   * A method to find the best times that are spread out, so that every suggestion is a real
+   * alternative rather than the same window shifted by 15 minutes. Goes through the starts from
+   * the highest weight down, keeping each start that does not overlap a kept meeting or come
+   * within minGap slots of one, and that does not put more than maxPerDay meetings on one day.
+   *
+   * @param timeAmt   - the most times to find
+   * @param blockSize - the length of the meeting (in 15 minute chunks)
+   * @param minGap    - the fewest free slots between any two suggested meetings
+   * @param maxPerDay - the most suggested meetings starting on one day, or 0 for no limit
+   * @return - the suggested start indices, best first; fewer than timeAmt if no more fit
+   */
+  public List<Integer> getDiverseTimes(int timeAmt, int blockSize, int minGap, int maxPerDay) {
+    if (timeAmt < 0 || blockSize <= 0 || blockSize > vectorLength || minGap < 0
+        || maxPerDay < 0) {
+      throw new RuntimeException();
+    }
+    List<Integer> finalStartTimes = new ArrayList<>();
+    double[] blockWeights = findBlockWeights(blockSize);
+    PriorityQueue<Integer> queue = orderStarts(blockWeights);
+    // a kept start blocks every start whose meeting would come within minGap slots of its own
+    int reach = blockSize + minGap;
+    boolean[] blocked = new boolean[blockWeights.length];
+    int[] perDay = new int[(vectorLength + SLOTS_PER_DAY - 1) / SLOTS_PER_DAY];
+    while (finalStartTimes.size() < timeAmt && !queue.isEmpty()) {
+      int start = queue.poll();
+      int day = start / SLOTS_PER_DAY;
+      if (blocked[start] || (maxPerDay > 0 && perDay[day] >= maxPerDay)) {
+        continue;
+      }
+      finalStartTimes.add(start);
+      perDay[day]++;
+      int from = Math.max(0, start - reach + 1);
+      int to = Math.min(blockWeights.length, start + reach);
+      for (int j = from; j < to; j++) {
+        blocked[j] = true;
+      }
+    }
+    return finalStartTimes;
+  }
+
+  /**
+   * A method to plan several separate meetings of one length in a week, maximizing their total
+   * weight. Meetings are separated by at least minGap free slots, which must be at least one,
+   * since two adjacent meetings would be one long one. Dynamic programming over the prefix-summed
+   * week in O(length * meetingCount) time and memory: the best plan of m meetings within the
+   * first i slots either leaves slot i - 1 free, or ends a meeting there, after the best plan of
+   * m - 1 meetings ending at least minGap slots earlier.
+   *
+   * @param meetingCount - the amount of meetings to plan
+   * @param blockSize    - the length of each meeting (in 15 minute chunks)
+   * @param minGap       - the fewest free slots between two meetings (at least 1)
+   * @return - the start and end (both inclusive) of each meeting in order, or an empty list if
+   * that many meetings do not fit in the week
+   */
+  public List<int[]> getWeeklyPlan(int meetingCount, int blockSize, int minGap) {
+    if (meetingCount <= 0 || blockSize <= 0 || minGap <= 0) {
+      throw new RuntimeException();
+    }
+    List<int[]> plan = new ArrayList<>();
+    if (findShortestWeek(meetingCount, blockSize, minGap) > vectorLength) {
+      return plan;
+    }
+    double[] prefix = findPrefixWeights();
+    int columns = meetingCount + 1;
+    double[] best = new double[(vectorLength + 1) * columns];
+    // whether the best plan of m meetings within the first i slots ends a meeting at slot i - 1
+    boolean[] ends = new boolean[best.length];
+    Arrays.fill(best, Double.NEGATIVE_INFINITY);
+    for (int i = 0; i <= vectorLength; i++) {
+      best[i * columns] = 0;
+    }
+    for (int i = 1; i <= vectorLength; i++) {
+      for (int m = 1; m <= meetingCount; m++) {
+        double value = best[(i - 1) * columns + m];
+        // the meeting takes slots [i - blockSize, i - 1]; an earlier one must end minGap before
+        int previous = i - blockSize;
+        if (m > 1) {
+          previous -= minGap;
+        }
+        if (previous >= 0) {
+          double candidate = best[previous * columns + m - 1] + prefix[i] - prefix[i - blockSize];
+          if (candidate > value) {
+            value = candidate;
+            ends[i * columns + m] = true;
+          }
+        }
+        best[i * columns + m] = value;
+      }
+    }
+    int i = vectorLength;
+    int m = meetingCount;
+    while (m > 0) {
+      if (!ends[i * columns + m]) {
+        i--;
+        continue;
+      }
+      plan.add(0, new int[] {i - blockSize, i - 1});
+      i -= blockSize;
+      if (m > 1) {
+        i -= minGap;
+      }
+      m--;
+    }
+    return plan;
+  }
+
+  /**
+   * A method to plan several separate meetings in a week whose lengths add up to a total,
+   * maximizing their total weight. Meetings are separated by at least minGap free slots, which
+   * must be at least one, since two adjacent meetings would be one long one. Dynamic programming over the prefix-summed week:
+   * the best plan of m meetings taking h slots within the first i slots either leaves slot i - 1
+   * free, or ends a meeting of some allowed length there. Takes
+   * O(length * meetingCount * totalBlocks) memory and
+   * O(length * meetingCount * totalBlocks * (maxBlockSize - minBlockSize + 1)) time, so plans of
+   * meetings that all have one length should use getWeeklyPlan(meetingCount, blockSize, minGap).
+   *
+   * @param meetingCount - the amount of meetings to plan
+   * @param totalBlocks  - the total length of the meetings (in 15 minute chunks)
+   * @param minBlockSize - the shortest a meeting can be (in 15 minute chunks)
+   * @param maxBlockSize - the longest a meeting can be (in 15 minute chunks)
+   * @param minGap       - the fewest free slots between two meetings (at least 1)
+   * @return - the start and end (both inclusive) of each meeting in order, or an empty list if
+   * no such plan fits in the week
+   */
+  public List<int[]> getWeeklyPlan(int meetingCount, int totalBlocks, int minBlockSize,
+                                   int maxBlockSize, int minGap) {
+    if (meetingCount <= 0 || minBlockSize <= 0 || maxBlockSize < minBlockSize || minGap <= 0
+        || totalBlocks < (long) meetingCount * minBlockSize) {
+      throw new RuntimeException();
+    }
+    List<int[]> plan = new ArrayList<>();
+    // the meetings and the free slots between them must fit, which also keeps the table small
+    if (findShortestWeek(meetingCount, minBlockSize, minGap) > vectorLength
+        || totalBlocks + (long) (meetingCount - 1) * minGap > vectorLength
+        || totalBlocks > (long) meetingCount * maxBlockSize) {
+      return plan;
+    }
+    double[] prefix = findPrefixWeights();
+    int hCount = totalBlocks + 1;
+    long stateCount = (long) (vectorLength + 1) * (meetingCount + 1) * hCount;
+    if (stateCount > MAX_PLAN_STATES) {
+      throw new RuntimeException("The weekly plan has too many meetings to plan at once.");
+    }
+    int states = (int) stateCount;
+    double[] best = new double[states];
+    // the length of the meeting ending at slot i - 1, or 0 if that slot is free
+    int[] choice = new int[states];
+    Arrays.fill(best, Double.NEGATIVE_INFINITY);
+    for (int i = 0; i <= vectorLength; i++) {
+      best[planState(i, 0, 0, meetingCount, hCount)] = 0;
+    }
+    for (int i = 1; i <= vectorLength; i++) {
+      for (int m = 1; m <= meetingCount; m++) {
+        // m meetings take between m shortest and m longest meetings' worth of slots
+        int hTo = (int) Math.min(totalBlocks, (long) m * maxBlockSize);
+        for (int h = m * minBlockSize; h <= hTo; h++) {
+          int state = planState(i, m, h, meetingCount, hCount);
+          double value = best[planState(i - 1, m, h, meetingCount, hCount)];
+          int length = 0;
+          for (int l = minBlockSize; l <= Math.min(maxBlockSize, Math.min(h, i)); l++) {
+            // the meeting takes slots [i - l, i - 1]; an earlier one must end minGap before
+            int previous = i - l;
+            if (m > 1) {
+              previous -= minGap;
+            }
+            if (previous < 0) {
+              continue;
+            }
+            double candidate = best[planState(previous, m - 1, h - l, meetingCount, hCount)]
+                + prefix[i] - prefix[i - l];
+            if (candidate > value) {
+              value = candidate;
+              length = l;
+            }
+          }
+          best[state] = value;
+          choice[state] = length;
+        }
+      }
+    }
+    if (best[planState(vectorLength, meetingCount, totalBlocks, meetingCount, hCount)]
+        == Double.NEGATIVE_INFINITY) {
+      return plan;
+    }
+    int i = vectorLength;
+    int h = totalBlocks;
+    int m = meetingCount;
+    while (m > 0) {
+      int length = choice[planState(i, m, h, meetingCount, hCount)];
+      if (length == 0) {
+        i--;
+        continue;
+      }
+      plan.add(0, new int[] {i - length, i - 1});
+      i -= length;
+      if (m > 1) {
+        i -= minGap;
+      }
+      h -= length;
+      m--;
+    }
+    return plan;
+  }
+
+  /**
+   * Finds the fewest slots that a number of meetings, each at least a given length, take up
+   * together with the free slots between them.
+   *
+   * @param meetingCount - the amount of meetings
+   * @param blockSize    - the shortest a meeting can be (in 15 minute chunks)
+   * @param minGap       - the fewest free slots between two meetings
+   * @return - the amount of slots the meetings need
+   */
+  private static long findShortestWeek(int meetingCount, int blockSize, int minGap) {
+    return (long) meetingCount * blockSize + (long) (meetingCount - 1) * minGap;
+  }
+
+  /**
+   * Sums the total weight of each slot into prefix sums.
+   *
+   * @return - an array whose entry i is the total weight of the first i slots
+   */
+  private double[] findPrefixWeights() {
+    double[] timeWeights = findTimeWeights();
+    double[] prefix = new double[vectorLength + 1];
+    for (int i = 0; i < vectorLength; i++) {
+      prefix[i + 1] = prefix[i] + timeWeights[i];
+    }
+    return prefix;
+  }
+
+  /**
+   * Finds where a state of the weekly plan is stored.
+   *
+   * @param i            - the amount of slots considered
+   * @param m            - the amount of meetings planned
+   * @param h            - the amount of slots the meetings take
+   * @param meetingCount - the most meetings planned
+   * @param hCount       - the amount of possible values of h
+   * @return - the index of the state
+   */
+  private static int planState(int i, int m, int h, int meetingCount, int hCount) {
+    return (i * (meetingCount + 1) + m) * hCount + h;
+  }
+
+  /**
+   * Finds the total weight of every meeting of blockSize slots.
+   *
+   * @param blockSize - the length of the meeting (in 15 minute chunks)
+   * @return - the weight of the meeting starting at each possible start
+   */
+  private double[] findBlockWeights(int blockSize) {
+    double[] timeWeights = findTimeWeights();
+    double[] blockWeights = new double[vectorLength - blockSize + 1];
+    blockWeights[0] = 0;
+    for (int i = 0; i < blockSize; i++) {
+      blockWeights[0] += timeWeights[i];
+    }
+    for (int i = 1; i < blockWeights.length; i++) {
+      blockWeights[i] = blockWeights[i - 1] - timeWeights[i - 1] + timeWeights[i + blockSize - 1];
+    }
+    return blockWeights;
+  }
+
+  /**
+   * Puts every start in a queue ordered by the highest weight first, and the earliest start among
+   * equal weights.
+   *
+   * @param blockWeights - the weight of the meeting starting at each start
+   * @return - the queue of starts
+   */
+  private static PriorityQueue<Integer> orderStarts(double[] blockWeights) {
+    PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, blockWeights.length),
+        (a, b) -> {
+          if (blockWeights[a] > blockWeights[b]) {
+            return -1;
+          } else if (blockWeights[a] < blockWeights[b]) {
+            return 1;
+          }
+          return Integer.compare(a, b);
+        });
+    for (int j = 0; j < blockWeights.length; j++) {
+      queue.add(j);
+    }
+    return queue;
+  }
+
+  /**
+   * Sums everyone's schedule slot by slot, multiplied by the multiplier if there is one. Leveled
+   * schedules that share their weights, or are given weights by setLevelWeights, are tallied
+   * level by level from their packed bits; other bit vector schedules are tallied straight from
+   * their packed bits; any other schedule has its coordinates fetched once.
+   *
+   * @return - the total weight of each slot
+   */
+  private double[] findTimeWeights() {
+    double[] timeWeights = findLevelWeights();
+    if (timeWeights != null) {
+      multiply(timeWeights);
+      return timeWeights;
+    }
+    timeWeights = new double[vectorLength];
+    List<long[]> bitsets = new ArrayList<>(vectorList.size());
+    for (T vector : vectorList) {
+      if (!AvailabilityLevels.isBinary(vector)) {
+        bitsets = null;
+        break;
+      }
+      bitsets.add(((BitVectorData<?>) vector).getBits());
+    }
+    if (bitsets != null) {
+      int[] counts = BitVectors.countPerCoordinate(bitsets, vectorLength);
+      for (int i = 0; i < vectorLength; i++) {
+        timeWeights[i] = counts[i];
+      }
+    } else {
+      for (T vector : vectorList) {
+        double[] coords = vector.getVector();
+        for (int i = 0; i < vectorLength; i++) {
+          timeWeights[i] += coords[i];
+        }
+      }
+    }
+    multiply(timeWeights);
+    return timeWeights;
+  }
+
+  /**
+   * Sums everyone's leveled schedule slot by slot, counting how many schedules have each slot at
+   * each level from the packed bits of that level, and only then weighing the counts.
+   *
+   * @return - the total weight of each slot, or null if any schedule is not a LevelVectorData,
+   * or the schedules weigh the levels differently and no weights were set
+   */
+  private double[] findLevelWeights() {
+    double[] weights = levelWeights;
+    if (weights == null) {
+      weights = AvailabilityLevels.findSharedWeights(vectorList);
+      if (weights == null) {
+        return null;
+      }
+    }
+    for (T vector : vectorList) {
+      if (!(vector instanceof LevelVectorData)) {
+        return null;
+      }
+    }
+    double[] timeWeights = new double[vectorLength];
+    for (int level = AvailabilityLevels.INCONVENIENT; level < AvailabilityLevels.LEVEL_COUNT;
+         level++) {
+      if (weights[level] == 0) {
+        continue;
+      }
+      List<long[]> bitsets = new ArrayList<>(vectorList.size());
+      for (T vector : vectorList) {
+        bitsets.add(((LevelVectorData<?>) vector).getLevelBits(level));
+      }
+      int[] counts = BitVectors.countPerCoordinate(bitsets, vectorLength);
+      for (int i = 0; i < vectorLength; i++) {
+        timeWeights[i] += weights[level] * counts[i];
+      }
+    }
+    return timeWeights;
+  }
+
+  /**
+   * Multiplies the total weight of each slot by the multiplier's, if there is a multiplier. A
+   * leveled multiplier is weighed by levelWeights if they were set.
+   *
+   * @param timeWeights - the total weight of each slot, multiplied in place
+   */
+  private void multiply(double[] timeWeights) {
+    if (multiplier == null) {
+      return;
+    }
+    double[] multiplierCoords;
+    if (multiplier instanceof LevelVectorData && levelWeights != null) {
+      multiplierCoords = AvailabilityLevels.toCoords((LevelVectorData<?>) multiplier, levelWeights);
+    } else {
+      multiplierCoords = multiplier.getVector();
+    }
+    for (int i = 0; i < vectorLength; i++) {
+      timeWeights[i] = timeWeights[i] * multiplierCoords[i];
+    }
+  }
 }
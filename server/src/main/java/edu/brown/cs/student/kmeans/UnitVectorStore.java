@@ -0,0 +1,433 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The vectors being clustered, normalized once up front so that clustering never has to call
+ * getVector or normalize while iterating. Bit vectors are kept packed, since their normalized
+ * coordinates are all 0 or 1 / sqrt(popcount); leveled vectors are kept as one packed bitset per
+ * level, each with its level's weight; any other vectors are copied into one contiguous matrix of
+ * unit rows. The magnitude of every original vector is cached alongside.
+ */
+final class UnitVectorStore {
+  /**
+   * The amount of vectors stored.
+   */
+  private final int size;
+  /**
+   * The length of each vector.
+   */
+  private final int length;
+  /**
+   * The packed coordinates of every vector, one bitset per stored level, or null if the vectors
+   * are not all BitVectorData. A bit vector is stored as a single level of weight 1.
+   */
+  private final long[][][] packedVectors;
+  /**
+   * The weight of each stored level, or null if the vectors are not packed.
+   */
+  private final double[] packedWeights;
+  /**
+   * The normalized coordinates of every vector, stored row by row, or null if the vectors are
+   * packed. The 0 vector is stored as the first unit vector, matching CosineKMeans.normalize.
+   */
+  private final double[] unitCoords;
+  /**
+   * The magnitude of every original vector.
+   */
+  private final double[] norms;
+
+  /**
+   * Constructor for the store, which normalizes every vector. Leveled vectors are packed level by
+   * level when they all share their level weights, and copied as coordinates otherwise. Must be
+   * called on the thread that owns the vectors, since bit vectors may pack their coordinates
+   * lazily.
+   *
+   * @param vectors - the vectors to store, each with the same length
+   */
+  UnitVectorStore(List<? extends VectorData<?>> vectors) {
+    this.size = vectors.size();
+    if (size > 0) {
+      this.length = vectors.get(0).getLength();
+    } else {
+      this.length = 0;
+    }
+    this.norms = new double[size];
+    double[] levelWeights = AvailabilityLevels.findSharedWeights(vectors);
+    int[] levels = null;
+    if (levelWeights != null) {
+      levels = findPackedLevels(vectors, levelWeights);
+    }
+    this.packedWeights = findPackedWeights(vectors, levels, levelWeights);
+    if (packedWeights != null) {
+      this.packedVectors = packVectors(vectors, levels);
+      this.unitCoords = null;
+      for (int p = 0; p < size; p++) {
+        double magnitudeSquared = 0;
+        for (int l = 0; l < packedWeights.length; l++) {
+          magnitudeSquared += packedWeights[l] * packedWeights[l]
+              * BitVectors.popcount(packedVectors[p][l]);
+        }
+        norms[p] = Math.sqrt(magnitudeSquared);
+      }
+    } else {
+      this.packedVectors = null;
+      this.unitCoords = new double[size * length];
+      for (int p = 0; p < size; p++) {
+        System.arraycopy(vectors.get(p).getVector(), 0, unitCoords, p * length, length);
+        norms[p] = Math.sqrt(VectorKernels.magnitudeSquared(unitCoords, p * length, length));
+        CosineKMeans.normalizeRow(unitCoords, p * length, length);
+      }
+    }
+  }
+
+  /**
+   * Constructor for a store from already normalized arrays.
+   *
+   * @param size          - the amount of vectors stored
+   * @param length        - the length of each vector
+   * @param packedVectors - the packed coordinates of every vector, or null
+   * @param packedWeights - the weight of each packed level, or null
+   * @param unitCoords    - the normalized coordinates of every vector, or null if packed
+   * @param norms         - the magnitude of every original vector
+   */
+  private UnitVectorStore(int size, int length, long[][][] packedVectors, double[] packedWeights,
+                          double[] unitCoords, double[] norms) {
+    this.size = size;
+    this.length = length;
+    this.packedVectors = packedVectors;
+    this.packedWeights = packedWeights;
+    this.unitCoords = unitCoords;
+    this.norms = norms;
+  }
+
+  /**
+   * Creates a store holding some of this store's vectors, without normalizing them again.
+   *
+   * @param indices - the indices of the vectors to keep, in the order to keep them in
+   * @return - a store whose vector i is this store's vector indices[i]
+   */
+  UnitVectorStore subset(int[] indices) {
+    double[] subsetNorms = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      subsetNorms[i] = norms[indices[i]];
+    }
+    if (packedVectors != null) {
+      long[][][] subsetPacked = new long[indices.length][][];
+      for (int i = 0; i < indices.length; i++) {
+        subsetPacked[i] = packedVectors[indices[i]];
+      }
+      return new UnitVectorStore(indices.length, length, subsetPacked, packedWeights, null,
+          subsetNorms);
+    }
+    double[] subsetCoords = new double[indices.length * length];
+    for (int i = 0; i < indices.length; i++) {
+      System.arraycopy(unitCoords, indices[i] * length, subsetCoords, i * length, length);
+    }
+    return new UnitVectorStore(indices.length, length, null, null, subsetCoords, subsetNorms);
+  }
+
+  /**
+   * Finds the levels worth storing. Bit vectors have a single level of weight 1, and leveled
+   * vectors keep only the levels with a nonzero weight that some vector uses, so leveled vectors
+   * that only use one level cost no more than bit vectors.
+   *
+   * @param vectors      - the vectors to be stored
+   * @param levels       - the levels to store, or null if the vectors do not all share weights
+   * @param levelWeights - the weight of each level, or null
+   * @return - the weight of each stored level, or null if the vectors must be stored as
+   * coordinates: any vector is not a BitVectorData, or is a LevelVectorData that does not share
+   * its weights, whose support alone is not the whole vector
+   */
+  private static double[] findPackedWeights(List<? extends VectorData<?>> vectors, int[] levels,
+                                            double[] levelWeights) {
+    if (levels == null) {
+      for (VectorData<?> vector : vectors) {
+        if (!(vector instanceof BitVectorData) || vector instanceof LevelVectorData) {
+          return null;
+        }
+      }
+      return new double[] {1};
+    }
+    double[] weights = new double[levels.length];
+    for (int l = 0; l < levels.length; l++) {
+      weights[l] = levelWeights[levels[l]];
+    }
+    return weights;
+  }
+
+  /**
+   * Finds the levels with a nonzero weight that some vector uses.
+   *
+   * @param vectors      - the vectors to be stored
+   * @param levelWeights - the weight of each level, shared by every vector
+   * @return - the levels in ascending order
+   */
+  private static int[] findPackedLevels(List<? extends VectorData<?>> vectors,
+                                        double[] levelWeights) {
+    boolean[] used = new boolean[AvailabilityLevels.LEVEL_COUNT];
+    for (VectorData<?> vector : vectors) {
+      for (int level = AvailabilityLevels.INCONVENIENT; level < used.length; level++) {
+        used[level] |= levelWeights[level] != 0
+            && BitVectors.popcount(((LevelVectorData<?>) vector).getLevelBits(level)) > 0;
+      }
+    }
+    int[] levels = new int[AvailabilityLevels.LEVEL_COUNT];
+    int levelCount = 0;
+    for (int level = AvailabilityLevels.INCONVENIENT; level < used.length; level++) {
+      if (used[level]) {
+        levels[levelCount++] = level;
+      }
+    }
+    return Arrays.copyOf(levels, levelCount);
+  }
+
+  /**
+   * Collects the packed coordinates of every vector.
+   *
+   * @param vectors - the vectors to be stored, all BitVectorData
+   * @param levels  - the levels to store, or null if the vectors are plain bit vectors
+   * @return - the packed coordinates of each vector, one bitset per stored level
+   */
+  private static long[][][] packVectors(List<? extends VectorData<?>> vectors, int[] levels) {
+    long[][][] packed = new long[vectors.size()][][];
+    for (int p = 0; p < packed.length; p++) {
+      VectorData<?> vector = vectors.get(p);
+      if (levels == null) {
+        packed[p] = new long[][] {((BitVectorData<?>) vector).getBits()};
+      } else {
+        packed[p] = new long[levels.length][];
+        for (int l = 0; l < levels.length; l++) {
+          packed[p][l] = ((LevelVectorData<?>) vector).getLevelBits(levels[l]);
+        }
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Getter for the amount of vectors stored.
+   *
+   * @return - the amount of vectors
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Getter for the length of each vector.
+   *
+   * @return - the length of each vector
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Getter for the magnitude of an original vector.
+   *
+   * @param p - the index of the vector
+   * @return - its magnitude, 0 for the 0 vector
+   */
+  double getNorm(int p) {
+    return norms[p];
+  }
+
+  /**
+   * Calculates the cosine distance between a stored vector and a row of a flat coordinate array.
+   * Assumes the cosine distance between the 0 vector and any other vector is 1.
+   *
+   * @param p                - the index of the vector
+   * @param flatCoords       - an array holding the other vector starting at offset
+   * @param offset           - the index in flatCoords where the other vector starts
+   * @param magnitudeSquared - the squared magnitude of the other vector
+   * @return - the cosine distance between them
+   */
+  double cosDistance(int p, double[] flatCoords, int offset, double magnitudeSquared) {
+    if (norms[p] == 0 || magnitudeSquared == 0) {
+      return 1;
+    }
+    if (packedVectors != null) {
+      return 1 - packedDot(p, flatCoords, offset) / Math.sqrt(magnitudeSquared) / norms[p];
+    }
+    return 1 - VectorKernels.dot(unitCoords, p * length, flatCoords, offset, length)
+        / Math.sqrt(magnitudeSquared);
+  }
+
+  /**
+   * Calculates the dot product of two normalized vectors.
+   *
+   * @param p - the index of a vector
+   * @param q - the index of another vector
+   * @return - the dot product of their normalized coordinates
+   */
+  double dot(int p, int q) {
+    if (packedVectors == null) {
+      return VectorKernels.dot(unitCoords, p * length, unitCoords, q * length, length);
+    }
+    if (norms[p] == 0 && norms[q] == 0) {
+      return 1;
+    } else if (norms[p] == 0) {
+      return findFirstCoord(q) / norms[q];
+    } else if (norms[q] == 0) {
+      return findFirstCoord(p) / norms[p];
+    }
+    // the levels of a vector never overlap each other, but may overlap any level of another
+    double dot = 0;
+    for (int l = 0; l < packedWeights.length; l++) {
+      for (int m = 0; m < packedWeights.length; m++) {
+        dot += packedWeights[l] * packedWeights[m]
+            * BitVectors.overlap(packedVectors[p][l], packedVectors[q][m]);
+      }
+    }
+    return dot / norms[p] / norms[q];
+  }
+
+  /**
+   * Calculates the dot product of a normalized vector and a row of a flat coordinate array.
+   *
+   * @param p          - the index of the vector
+   * @param flatCoords - an array holding the other vector starting at offset
+   * @param offset     - the index in flatCoords where the other vector starts
+   * @return - the dot product of the normalized vector and the other vector
+   */
+  double dot(int p, double[] flatCoords, int offset) {
+    if (packedVectors == null) {
+      return VectorKernels.dot(unitCoords, p * length, flatCoords, offset, length);
+    }
+    if (norms[p] == 0) {
+      return flatCoords[offset];
+    }
+    return packedDot(p, flatCoords, offset) / norms[p];
+  }
+
+  /**
+   * Calculates the dot product of a packed vector, before normalizing, and a row of a flat
+   * coordinate array.
+   *
+   * @param p          - the index of the packed vector
+   * @param flatCoords - an array holding the other vector starting at offset
+   * @param offset     - the index in flatCoords where the other vector starts
+   * @return - the dot product of the original vector and the other vector
+   */
+  private double packedDot(int p, double[] flatCoords, int offset) {
+    double dot = 0;
+    for (int l = 0; l < packedWeights.length; l++) {
+      dot += packedWeights[l] * BitVectors.dot(packedVectors[p][l], flatCoords, offset);
+    }
+    return dot;
+  }
+
+  /**
+   * Finds the first coordinate of a packed vector, before normalizing.
+   *
+   * @param p - the index of the packed vector
+   * @return - its first coordinate
+   */
+  private double findFirstCoord(int p) {
+    for (int l = 0; l < packedWeights.length; l++) {
+      if ((packedVectors[p][l][0] & 1) != 0) {
+        return packedWeights[l];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Adds a normalized vector, divided by a divisor, to a row of a flat coordinate array.
+   *
+   * @param p          - the index of the vector
+   * @param flatCoords - an array holding the running sum starting at offset
+   * @param offset     - the index in flatCoords where the running sum starts
+   * @param divisor    - the amount to divide the normalized vector by
+   */
+  void addTo(int p, double[] flatCoords, int offset, int divisor) {
+    if (packedVectors == null) {
+      int row = p * length;
+      for (int i = 0; i < length; i++) {
+        flatCoords[offset + i] += unitCoords[row + i] / divisor;
+      }
+      return;
+    }
+    if (norms[p] == 0) {
+      flatCoords[offset] += 1.0 / divisor;
+      return;
+    }
+    for (int l = 0; l < packedWeights.length; l++) {
+      double coord = packedWeights[l] / norms[p];
+      long[] bits = packedVectors[p][l];
+      for (int w = 0; w < bits.length; w++) {
+        long word = bits[w];
+        while (word != 0) {
+          flatCoords[offset + w * BitVectors.WORD_SIZE + Long.numberOfTrailingZeros(word)]
+              += coord / divisor;
+          word &= word - 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes a normalized vector into a row of a flat coordinate array.
+   *
+   * @param p          - the index of the vector
+   * @param flatCoords - the array to write into
+   * @param offset     - the index in flatCoords where the row starts
+   */
+  void copyTo(int p, double[] flatCoords, int offset) {
+    if (packedVectors == null) {
+      System.arraycopy(unitCoords, p * length, flatCoords, offset, length);
+      return;
+    }
+    Arrays.fill(flatCoords, offset, offset + length, 0);
+    addTo(p, flatCoords, offset, 1);
+  }
+
+  /**
+   * Picks a group for each of a few extra vectors, the one it raises the loss of the least,
+   * picking at most one per group while there are groups left without one. A group's loss is
+   * its size minus the magnitude of its normalized vectors' sum, and each extra vector counts
+   * towards its group's sum once picked.
+   *
+   * @param groups - the indices of each group's vectors
+   * @param extras - the indices of the vectors to place, in the order to place them
+   * @return - the group picked for each extra vector, parallel to extras
+   */
+  int[] findBestGroups(List<int[]> groups, int[] extras) {
+    double[] sums = new double[groups.size() * length];
+    double[] magnitudes = new double[groups.size()];
+    for (int g = 0; g < groups.size(); g++) {
+      for (int p : groups.get(g)) {
+        addTo(p, sums, g * length, 1);
+      }
+      magnitudes[g] = Math.sqrt(VectorKernels.magnitudeSquared(sums, g * length, length));
+    }
+    int[] added = new int[groups.size()];
+    int[] picked = new int[extras.length];
+    for (int e = 0; e < extras.length; e++) {
+      int p = extras[e];
+      int leastAdded = Arrays.stream(added).min().getAsInt();
+      int bestGroup = -1;
+      double bestGain = Double.NEGATIVE_INFINITY;
+      for (int g = 0; g < groups.size(); g++) {
+        if (added[g] > leastAdded) {
+          continue;
+        }
+        // with a unit vector p, |S + p|^2 = |S|^2 + 2 p.S + 1
+        double gain = Math.sqrt(Math.max(0, magnitudes[g] * magnitudes[g]
+            + 2 * dot(p, sums, g * length) + 1)) - magnitudes[g];
+        if (gain > bestGain) {
+          bestGroup = g;
+          bestGain = gain;
+        }
+      }
+      picked[e] = bestGroup;
+      added[bestGroup]++;
+      addTo(p, sums, bestGroup * length, 1);
+      magnitudes[bestGroup] =
+          Math.sqrt(VectorKernels.magnitudeSquared(sums, bestGroup * length, length));
+    }
+    return picked;
+  }
+}
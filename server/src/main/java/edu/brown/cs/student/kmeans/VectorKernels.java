@@ -0,0 +1,157 @@
+package edu.brown.cs.student.kmeans;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Entry point for the dense distance kernels used across the package. When the server is built
+ * with the simd profile and run with the jdk.incubator.vector module, the kernels run on the
+ * Java vector API; otherwise they fall back to plain loops. Either way, the results agree up to
+ * floating point rounding.
+ */
+public final class VectorKernels {
+  /**
+   * The name of the vectorized kernel, which only exists in builds with the simd profile.
+   */
+  private static final String SIMD_KERNEL = "edu.brown.cs.student.kmeans.SimdKernel";
+  /**
+   * The kernel every call is routed to.
+   */
+  private static final DistanceKernel KERNEL = loadKernel();
+
+  /**
+   * Private constructor, since this class only has static methods.
+   */
+  private VectorKernels() {
+  }
+
+  /**
+   * Loads the vectorized kernel if it was compiled in and the vector module is present, and the
+   * scalar kernel otherwise.
+   *
+   * @return - the kernel to use
+   */
+  private static DistanceKernel loadKernel() {
+    try {
+      Class<?> simdClass = Class.forName(SIMD_KERNEL);
+      return (DistanceKernel) simdClass.getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException | LinkageError | NoSuchMethodException
+        | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      // not built with the simd profile, or jdk.incubator.vector was not added at runtime
+      return new ScalarKernel();
+    }
+  }
+
+  /**
+   * Whether the kernels are running on the vector API.
+   *
+   * @return - true if vectorized, false if running the scalar fallback
+   */
+  public static boolean isAccelerated() {
+    return !(KERNEL instanceof ScalarKernel);
+  }
+
+  /**
+   * Calculates the dot product of two rows of flat coordinate arrays.
+   *
+   * @param flatCoords      - an array holding the first row starting at offset
+   * @param offset          - the index in flatCoords where the first row starts
+   * @param otherFlatCoords - an array holding the second row starting at otherOffset
+   * @param otherOffset     - the index in otherFlatCoords where the second row starts
+   * @param length          - the number of coordinates in each row
+   * @return - the dot product of the two rows
+   */
+  public static double dot(double[] flatCoords, int offset, double[] otherFlatCoords,
+                           int otherOffset, int length) {
+    return KERNEL.dot(flatCoords, offset, otherFlatCoords, otherOffset, length);
+  }
+
+  /**
+   * Calculates the squared magnitude of a row of a flat coordinate array.
+   *
+   * @param flatCoords - an array holding the coordinates starting at offset
+   * @param offset     - the index in flatCoords where the coordinates start
+   * @param length     - the number of coordinates in the row
+   * @return - the sum of the squares of the coordinates
+   */
+  public static double magnitudeSquared(double[] flatCoords, int offset, int length) {
+    return KERNEL.magnitudeSquared(flatCoords, offset, length);
+  }
+
+  /**
+   * Calculates the cosine distance between two rows of flat coordinate arrays. Assumes the
+   * cosine distance between the 0 vector and any other vector is 1.
+   *
+   * @param flatCoords      - an array holding the first row starting at offset
+   * @param offset          - the index in flatCoords where the first row starts
+   * @param otherFlatCoords - an array holding the second row starting at otherOffset
+   * @param otherOffset     - the index in otherFlatCoords where the second row starts
+   * @param length          - the number of coordinates in each row
+   * @return - the cosine distance between them
+   */
+  public static double cosDistance(double[] flatCoords, int offset, double[] otherFlatCoords,
+                                   int otherOffset, int length) {
+    return KERNEL.cosDistance(flatCoords, offset, otherFlatCoords, otherOffset, length);
+  }
+
+  /**
+   * Calculates the cosine distance between two lists of coordinates whose squared magnitudes are
+   * already known, so only the dot product is computed.
+   *
+   * @param coords                 - a list of coordinates
+   * @param magnitudeSquared       - the squared magnitude of coords
+   * @param otherCoords            - a list of coordinates of the same size
+   * @param otherMagnitudeSquared  - the squared magnitude of otherCoords
+   * @return - the cosine distance between them
+   */
+  public static double cosDistance(double[] coords, double magnitudeSquared,
+                                   double[] otherCoords, double otherMagnitudeSquared) {
+    if (magnitudeSquared == 0 || otherMagnitudeSquared == 0) {
+      return 1;
+    }
+    return fromDotProduct(KERNEL.dot(coords, 0, otherCoords, 0, coords.length),
+        magnitudeSquared, otherMagnitudeSquared);
+  }
+
+  /**
+   * Calculates the cosine distance between a vector and a list of coordinates whose squared
+   * magnitude is already known, using the popcount kernels when the vector is a BitVectorData,
+   * weighing the levels of a LevelVectorData by its level weights.
+   *
+   * @param vector           - a vector
+   * @param coords           - a list of coordinates of the same size
+   * @param magnitudeSquared - the squared magnitude of coords
+   * @return - the cosine distance between them
+   */
+  public static double cosDistance(VectorData<?> vector, double[] coords,
+                                   double magnitudeSquared) {
+    if (vector instanceof LevelVectorData) {
+      LevelVectorData<?> leveled = (LevelVectorData<?>) vector;
+      double[] weights = leveled.getLevelWeights();
+      return fromDotProduct(AvailabilityLevels.dot(leveled, weights, coords, 0),
+          AvailabilityLevels.magnitudeSquared(leveled, weights), magnitudeSquared);
+    } else if (vector instanceof BitVectorData) {
+      return BitVectors.cosDistance(((BitVectorData<?>) vector).getBits(), coords, 0,
+          magnitudeSquared);
+    }
+    double[] vectorCoords = vector.getVector();
+    return cosDistance(vectorCoords, magnitudeSquared(vectorCoords, 0, vectorCoords.length),
+        coords, magnitudeSquared);
+  }
+
+  /**
+   * Turns a dot product and two squared magnitudes into a cosine distance. Assumes the cosine
+   * distance between the 0 vector and any other vector is 1.
+   *
+   * @param dotProduct            - the dot product of the two vectors
+   * @param magnitudeSquared      - the squared magnitude of the first vector
+   * @param otherMagnitudeSquared - the squared magnitude of the second vector
+   * @return - the cosine distance between them
+   */
+  static double fromDotProduct(double dotProduct, double magnitudeSquared,
+                               double otherMagnitudeSquared) {
+    if (magnitudeSquared == 0 || otherMagnitudeSquared == 0) {
+      return 1;
+    }
+    return 1 - dotProduct / Math.sqrt(magnitudeSquared) / Math.sqrt(otherMagnitudeSquared);
+  }
+}
@@ -2,6 +2,7 @@ package edu.brown.cs.student.main;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.List;
 
 import edu.brown.cs.student.coordinator.Coordinator;
 import edu.brown.cs.student.routes.auth.LoginHandler;
@@ -53,12 +54,24 @@ public final class Main {
     OptionParser parser = new OptionParser();
     parser.accepts("port").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_PORT);
     parser.accepts("db").withRequiredArg().ofType(String.class).defaultsTo("data/test.sqlite3");
+    // weights of the unavailable, inconvenient, available and preferred levels, e.g. 0,0.5,1,1.5
+    parser.accepts("level-weights").withRequiredArg().ofType(Double.class)
+        .withValuesSeparatedBy(',');
 
     OptionSet options = parser.parse(args);
 
     // connect db
     Coordinator.connectCoordinatorDatabase((String) options.valueOf("db"));
 
+    if (options.has("level-weights")) {
+      List<?> weights = options.valuesOf("level-weights");
+      double[] levelWeights = new double[weights.size()];
+      for (int i = 0; i < levelWeights.length; i++) {
+        levelWeights[i] = (Double) weights.get(i);
+      }
+      Coordinator.setLevelWeights(levelWeights);
+    }
+
     runSparkServer((int) options.valueOf("port"));
   }
 
@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import edu.brown.cs.student.coordinator.Coordinator;
 import edu.brown.cs.student.routes.TokenHandler;
+import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -15,6 +16,10 @@ import java.util.Map;
  */
 public class LockGroupHandler implements Route {
   private static final Gson GSON = new Gson();
+  // two meetings a day
+  private static final int MAX_MEETINGS_PER_WEEK = 14;
+  // a whole day of meetings a week
+  private static final int MAX_TOTAL_MINUTES = 24 * 60;
 
   @Override
   public Object handle(Request request, Response response) throws Exception {
@@ -30,9 +35,31 @@ public class LockGroupHandler implements Route {
 
       // get params
       int groupId = Integer.parseInt(request.params(":groupId"));
+      // optional weekly plan: how many separate meetings, and their total length; and whether
+      // alternatives are the best times or spread out over the week
+      int meetingCount = 1;
+      int totalMinutes = 0;
+      Coordinator.SuggestionMode suggestionMode = Coordinator.SuggestionMode.BEST;
+      if (request.body() != null && !request.body().isBlank()) {
+        JSONObject data = new JSONObject(request.body());
+        meetingCount = data.optInt("meetingCount", 1);
+        totalMinutes = data.optInt("totalMinutes", 0);
+        String mode = data.optString("suggestionMode", "best");
+        if (mode.equals("diverse")) {
+          suggestionMode = Coordinator.SuggestionMode.DIVERSE;
+        } else if (!mode.equals("best")) {
+          throw new RuntimeException("suggestionMode must be best or diverse");
+        }
+      }
+      if (meetingCount < 1 || meetingCount > MAX_MEETINGS_PER_WEEK) {
+        throw new RuntimeException("meetingCount must be between 1 and " + MAX_MEETINGS_PER_WEEK);
+      }
+      if (totalMinutes < 0 || totalMinutes > MAX_TOTAL_MINUTES) {
+        throw new RuntimeException("totalMinutes must be between 0 and " + MAX_TOTAL_MINUTES);
+      }
 
       // carry out locking
-      Coordinator.lockGroup(groupId, username);
+      Coordinator.lockGroup(groupId, username, meetingCount, totalMinutes, suggestionMode);
 
       //Create an immutable map for the response
       Map<String, Object> responseMap = ImmutableMap.of("message", "locked");
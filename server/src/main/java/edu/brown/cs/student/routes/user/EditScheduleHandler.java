@@ -3,6 +3,7 @@ package edu.brown.cs.student.routes.user;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import edu.brown.cs.student.coordinator.Coordinator;
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
 import edu.brown.cs.student.routes.TokenHandler;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -33,16 +34,31 @@ public class EditScheduleHandler implements Route {
       // get schedule from body
       // get params
       JSONObject data = new JSONObject(request.body());
-      JSONArray schedule = data.getJSONArray("schedule");
+      if (data.has("levels")) {
+        // levels replace the schedule, which is derived from them
+        JSONArray levels = data.getJSONArray("levels");
+        byte[] levelArray = new byte[levels.length()];
+        for (int i = 0; i < levels.length(); i++) {
+          // check the range before narrowing, so that out of range levels cannot wrap around
+          int level = levels.getInt(i);
+          if (level < AvailabilityLevels.UNAVAILABLE || level >= AvailabilityLevels.LEVEL_COUNT) {
+            throw new RuntimeException("invalid availability level " + level);
+          }
+          levelArray[i] = (byte) level;
+        }
+        Coordinator.updateAvailabilityLevels(username, levelArray);
+      } else {
+        JSONArray schedule = data.getJSONArray("schedule");
 
-      // convert to array
-      boolean[] scheduleArray = new boolean[schedule.length()];
-      for (int i = 0; i < schedule.length(); i++) {
-        scheduleArray[i] = schedule.getBoolean(i);
-      }
+        // convert to array
+        boolean[] scheduleArray = new boolean[schedule.length()];
+        for (int i = 0; i < schedule.length(); i++) {
+          scheduleArray[i] = schedule.getBoolean(i);
+        }
 
-      // insert into database
-      Coordinator.updateWeeklySchedule(username, scheduleArray);
+        // insert into database
+        Coordinator.updateWeeklySchedule(username, scheduleArray);
+      }
 
       //Create an immutable map for the response
       Map<String, Object> responseMap = ImmutableMap.of("message", "success");
@@ -30,9 +30,10 @@ public class GetScheduleHandler implements Route {
       }
 
       boolean[] schedule = Coordinator.getWeeklySchedule(username);
+      byte[] levels = Coordinator.getAvailabilityLevels(username);
 
       //Create an immutable map for the response
-      Map<String, Object> responseMap = ImmutableMap.of("schedule", schedule);
+      Map<String, Object> responseMap = ImmutableMap.of("schedule", schedule, "levels", levels);
 
       //return JSON object
       return GSON.toJson(responseMap);
@@ -1,6 +1,7 @@
 package edu.brown.cs.student.coordinator;
 
 import edu.brown.cs.student.ITest;
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
 import org.junit.Test;
 
 import java.util.List;
@@ -63,6 +64,26 @@ public class CoordinatorDatabaseClientTest implements ITest {
     for (int i = 0; i < User.WEEKLY_SCHEDULE_SIZE; i++) {
       assertEquals(schedule[i], schedule1[i]);
     }
+    assertFalse(user.hasAvailabilityLevels());
+
+    byte[] levels = new byte[User.WEEKLY_SCHEDULE_SIZE];
+    for (int i = 0; i < User.WEEKLY_SCHEDULE_SIZE; i++) {
+      levels[i] = (byte) (i % AvailabilityLevels.LEVEL_COUNT);
+    }
+    user.updateAvailabilityLevels(levels);
+    assertTrue(db.updateUser(user));
+    user = db.getUser("adam", false);
+    assertArrayEquals(levels, user.getAvailabilityLevels());
+    for (int i = 0; i < User.WEEKLY_SCHEDULE_SIZE; i++) {
+      assertEquals(levels[i] != AvailabilityLevels.UNAVAILABLE, user.getWeeklySchedule()[i]);
+    }
+
+    // a new weekly schedule replaces the levels
+    user.updateWeeklySchedule(schedule);
+    assertTrue(db.updateUser(user));
+    user = db.getUser("adam", false);
+    assertFalse(user.hasAvailabilityLevels());
+    assertArrayEquals(schedule, user.getWeeklySchedule());
 
     this.tearDown();
   }
@@ -108,7 +129,7 @@ public class CoordinatorDatabaseClientTest implements ITest {
     assertTrue(db.updateMeetingGroup(group));
     assertFalse(db.createMeetingGroupMembership("step", 1, false));
 
-    MeetingTime time = new MeetingTime(null, 1, 0, 3, 1, "#123456", null);
+    MeetingTime time = new MeetingTime(null, 1, 0, 3, 1, "#123456", null, null);
     assertTrue(db.createMeetingTimeAndPreferences(time));
     adam = db.getUser("adam", true);
     List<MeetingGroup> adamMeetingGroups = adam.getMeetingGroups();
@@ -1,8 +1,12 @@
 package edu.brown.cs.student.coordinator;
 
 import edu.brown.cs.student.ITest;
+import edu.brown.cs.student.kmeans.AvailabilityLevels;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -41,4 +45,134 @@ public class CoordinatorTest implements ITest {
 
     tearDown();
   }
-}
\ No newline at end of file
+
+  /**
+   * Tests that a weekly plan is stored as one option, apart from single-meeting alternatives
+   */
+  @Test
+  public void testWeeklyPlanStorage() {
+    setUp();
+
+    assertTrue(Coordinator.createUser("adam", ""));
+    boolean[] schedule = User.getDefaultSchedule();
+    Arrays.fill(schedule, true);
+    assertTrue(Coordinator.updateWeeklySchedule("adam", schedule));
+    Coordinator.createGroup("plan", "adam", 60, 0, "#123456");
+    assertTrue(Coordinator.joinGroup("adam", 1));
+    assertTrue(Coordinator.lockGroup(1, "adam", 7, 0, Coordinator.SuggestionMode.BEST));
+    Coordinator.createGroup("alternatives", "adam", 60, 0, "#123456");
+    assertTrue(Coordinator.joinGroup("adam", 2));
+    assertTrue(Coordinator.lockGroup(2, "adam"));
+
+    List<MeetingGroup> groups = Coordinator.getUserGroups("adam").getMeetingGroups();
+    assertEquals(2, groups.size());
+    for (MeetingGroup group : groups) {
+      List<MeetingTime> times = group.getMeetingTimes();
+      if (group.getId() == 1) {
+        // every meeting of the plan is shown, in week order, as one option a few hours apart
+        assertEquals(7, times.size());
+        for (int i = 0; i < times.size(); i++) {
+          assertEquals(1, (int) times.get(i).getAvailabilityRank());
+          assertEquals(i, (int) times.get(i).getPlanIndex());
+          if (i > 0) {
+            assertTrue(times.get(i).getStartIndex() - times.get(i - 1).getEndIndex() > 12);
+          }
+        }
+      } else {
+        assertEquals(5, times.size());
+        for (int i = 0; i < times.size(); i++) {
+          assertEquals(i + 1, (int) times.get(i).getAvailabilityRank());
+          assertNull(times.get(i).getPlanIndex());
+        }
+      }
+    }
+
+    tearDown();
+  }
+
+  /**
+   * Tests that the suggestion mode picks between the best times and spread-out times
+   */
+  @Test
+  public void testSuggestionModes() {
+    setUp();
+
+    assertTrue(Coordinator.createUser("adam", ""));
+    boolean[] schedule = User.getDefaultSchedule();
+    // one free window of four hours
+    Arrays.fill(schedule, 40, 56, true);
+    assertTrue(Coordinator.updateWeeklySchedule("adam", schedule));
+    Coordinator.createGroup("best", "adam", 60, 0, "#123456");
+    assertTrue(Coordinator.joinGroup("adam", 1));
+    assertTrue(Coordinator.lockGroup(1, "adam", 1, 0, Coordinator.SuggestionMode.BEST));
+    Coordinator.createGroup("diverse", "adam", 60, 0, "#123456");
+    assertTrue(Coordinator.joinGroup("adam", 2));
+    assertTrue(Coordinator.lockGroup(2, "adam", 1, 0, Coordinator.SuggestionMode.DIVERSE));
+
+    for (MeetingGroup group : Coordinator.getUserGroups("adam").getMeetingGroups()) {
+      List<MeetingTime> times = group.getMeetingTimes();
+      if (group.getId() == 1) {
+        // the best times are all in the window, so they overlap each other
+        assertEquals(5, times.size());
+        for (int i = 0; i < times.size(); i++) {
+          assertEquals(40 + 3 * i, (int) times.get(i).getStartIndex());
+        }
+      } else {
+        // spread-out times are an hour apart, so only two fit in the window
+        assertEquals(5, times.size());
+        assertEquals(40, (int) times.get(0).getStartIndex());
+        assertEquals(48, (int) times.get(1).getStartIndex());
+        for (int i = 0; i < times.size(); i++) {
+          for (int j = 0; j < i; j++) {
+            assertTrue(Math.abs(times.get(i).getStartIndex() - times.get(j).getStartIndex()) >= 8);
+          }
+        }
+      }
+    }
+
+    tearDown();
+  }
+
+  /**
+   * Tests that the configured level weights decide which times are suggested
+   */
+  @Test
+  public void testLevelWeights() {
+    setUp();
+
+    assertTrue(Coordinator.createUser("adam", ""));
+    byte[] levels = new byte[User.WEEKLY_SCHEDULE_SIZE];
+    Arrays.fill(levels, 40, 48, AvailabilityLevels.PREFERRED);
+    Arrays.fill(levels, 100, 108, AvailabilityLevels.AVAILABLE);
+    assertTrue(Coordinator.updateAvailabilityLevels("adam", levels));
+    try {
+      Coordinator.setLevelWeights(new double[]{1, 1, 1, 1});
+      fail();
+    } catch (RuntimeException e) {
+      // unavailable slots must weigh nothing
+    }
+    Coordinator.createGroup("default", "adam", 120, 0, "#123456");
+    assertTrue(Coordinator.joinGroup("adam", 1));
+    assertTrue(Coordinator.lockGroup(1, "adam"));
+    try {
+      Coordinator.setLevelWeights(new double[]{0, 0.5, 2, 1});
+      Coordinator.createGroup("weighted", "adam", 120, 0, "#123456");
+      assertTrue(Coordinator.joinGroup("adam", 2));
+      assertTrue(Coordinator.lockGroup(2, "adam"));
+    } finally {
+      Coordinator.setLevelWeights(AvailabilityLevels.getDefaultWeights());
+    }
+
+    for (MeetingGroup group : Coordinator.getUserGroups("adam").getMeetingGroups()) {
+      int best = group.getMeetingTimes().get(0).getStartIndex();
+      if (group.getId() == 1) {
+        assertEquals(40, best);
+      } else {
+        // available slots weigh more than preferred ones here
+        assertEquals(100, best);
+      }
+    }
+
+    tearDown();
+  }
+}
@@ -0,0 +1,66 @@
+package edu.brown.cs.student.kmeans;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AvailabilityLevelsTest {
+
+  @Test
+  public void testPackRoundTrip() {
+    Random rand = new Random(51);
+    for (int length : new int[] {0, 1, 5, 672}) {
+      byte[] levels = TestLevelVector.randomLevels(rand, length);
+      byte[] packed = AvailabilityLevels.pack(levels);
+      assertEquals((length + 3) / 4, packed.length);
+      assertArrayEquals(levels, AvailabilityLevels.unpack(packed, length));
+    }
+    byte[] levels = {AvailabilityLevels.PREFERRED, AvailabilityLevels.INCONVENIENT,
+        AvailabilityLevels.UNAVAILABLE, AvailabilityLevels.AVAILABLE};
+    assertArrayEquals(new byte[] {(byte) 0b10000111}, AvailabilityLevels.pack(levels));
+  }
+
+  @Test
+  public void testLevelBits() {
+    Random rand = new Random(52);
+    byte[] levels = TestLevelVector.randomLevels(rand, 200);
+    long[][] levelBits = AvailabilityLevels.packLevelBits(levels);
+    for (int i = 0; i < 200; i++) {
+      for (int level = 0; level < AvailabilityLevels.LEVEL_COUNT; level++) {
+        assertEquals(levels[i] == level, (levelBits[level][i / 64] & (1L << i)) != 0);
+      }
+    }
+    boolean[] schedule = AvailabilityLevels.toSchedule(levels);
+    byte[] binary = AvailabilityLevels.fromSchedule(schedule);
+    for (int i = 0; i < 200; i++) {
+      assertEquals(levels[i] != 0, schedule[i]);
+      assertEquals(schedule[i] ? AvailabilityLevels.AVAILABLE : 0, binary[i]);
+    }
+  }
+
+  @Test
+  public void testWeightedKernels() {
+    Random rand = new Random(53);
+    double[] weights = {0, 0.25, 1, 2};
+    TestLevelVector vector = new TestLevelVector(TestLevelVector.randomLevels(rand, 300));
+    double[] coords = AvailabilityLevels.toCoords(vector, weights);
+    double[] other = new double[300];
+    for (int i = 0; i < other.length; i++) {
+      other[i] = rand.nextDouble();
+    }
+    assertEquals(VectorKernels.magnitudeSquared(coords, 0, 300),
+        AvailabilityLevels.magnitudeSquared(vector, weights), 0.0000001);
+    assertEquals(VectorKernels.dot(coords, 0, other, 0, 300),
+        AvailabilityLevels.dot(vector, weights, other, 0), 0.0000001);
+    assertEquals(CosineKMeans.cosDistance(vector.getVector(), other),
+        VectorKernels.cosDistance(vector, other, VectorKernels.magnitudeSquared(other, 0, 300)),
+        0.0000001);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testUnavailableWeighsNothing() {
+    AvailabilityLevels.checkWeights(new double[] {1, 1, 1, 1});
+  }
+}
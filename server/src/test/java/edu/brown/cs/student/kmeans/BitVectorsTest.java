@@ -0,0 +1,83 @@
+package edu.brown.cs.student.kmeans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BitVectorsTest {
+
+  public static boolean[] randomSchedule(Random rand, int length) {
+    boolean[] values = new boolean[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = rand.nextInt(4) == 0;
+    }
+    return values;
+  }
+
+  @Test
+  public void testPack() {
+    boolean[] values = new boolean[130];
+    values[0] = true;
+    values[63] = true;
+    values[64] = true;
+    values[129] = true;
+    long[] bits = BitVectors.pack(values);
+    assertEquals(3, bits.length);
+    assertEquals(1L | (1L << 63), bits[0]);
+    assertEquals(1L, bits[1]);
+    assertEquals(2L, bits[2]);
+    assertEquals(4, BitVectors.popcount(bits));
+  }
+
+  @Test
+  public void testCosDistance() {
+    long[] a = BitVectors.pack(new boolean[]{true, true, false, false});
+    long[] b = BitVectors.pack(new boolean[]{true, false, true, false});
+    long[] empty = BitVectors.pack(new boolean[4]);
+    assertEquals(1, BitVectors.overlap(a, b));
+    assertEquals(0.5, BitVectors.cosDistance(a, b), 0.0001);
+    assertEquals(0, BitVectors.cosDistance(a, a), 0.0001);
+    assertEquals(1, BitVectors.cosDistance(a, empty), 0);
+  }
+
+  @Test
+  public void testMatchesDense() {
+    Random rand = new Random(32);
+    for (int j = 0; j < 50; j++) {
+      TestBitVector a = new TestBitVector(randomSchedule(rand, 672));
+      TestBitVector b = new TestBitVector(randomSchedule(rand, 672));
+      double[] coords = new double[672];
+      for (int i = 0; i < coords.length; i++) {
+        coords[i] = rand.nextDouble();
+      }
+      assertEquals(CosineKMeans.cosDistance(a.getVector(), b.getVector()),
+          BitVectors.cosDistance(a.getBits(), b.getBits()), 0.0000001);
+      assertEquals(CosineKMeans.cosDistance(coords, a.getVector()),
+          VectorKernels.cosDistance(a, coords,
+          VectorKernels.magnitudeSquared(coords, 0, coords.length)), 0.0000001);
+    }
+  }
+
+  @Test
+  public void testCountPerCoordinate() {
+    Random rand = new Random(33);
+    for (int n : new int[] {0, 1, 2, 3, 7, 64, 1000}) {
+      List<long[]> bitsets = new ArrayList<>();
+      int[] expected = new int[130];
+      for (int j = 0; j < n; j++) {
+        boolean[] values = randomSchedule(rand, 130);
+        for (int i = 0; i < values.length; i++) {
+          if (values[i]) {
+            expected[i]++;
+          }
+        }
+        bitsets.add(BitVectors.pack(values));
+      }
+      assertArrayEquals(expected, BitVectors.countPerCoordinate(bitsets, 130));
+    }
+  }
+}
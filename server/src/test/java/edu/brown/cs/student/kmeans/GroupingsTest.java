@@ -4,6 +4,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -157,6 +160,50 @@ public class GroupingsTest {
     }
   }
 
+  @Test
+  public void testTiedDiscardRecruit() {
+    double[] a = {1, 0, 0};
+    double[] b = {0, 1, 0};
+    double[] c = {0, 0.8, 0.6};
+    double[] nearC = {0.3, 0.8, 0.5};
+    for (int seed = 0; seed < 10; seed++) {
+      // the a cluster is furthest and one too big, and its members tie, so the later one goes
+      List<TestVector> vectors = new ArrayList<>();
+      for (double[] coords : new double[][]{a, b, a, nearC, a, b}) {
+        vectors.add(new TestVector(coords));
+      }
+      Set<Set<Integer>> expected = new HashSet<>(Arrays.asList(
+          new HashSet<>(Arrays.asList(0, 2)), new HashSet<>(Arrays.asList(1, 5)),
+          new HashSet<>(Arrays.asList(3, 4))));
+      assertEquals(expected,
+          toIndexSets(vectors, new KMeansGroups<>(2, vectors, new Random(seed)).getGroups()));
+
+      // the lone a is furthest, and every other vector is as far from it, so the earlier ones go
+      vectors = new ArrayList<>();
+      for (double[] coords : new double[][]{b, c, a, b, c, b, c, b, c}) {
+        vectors.add(new TestVector(coords));
+      }
+      expected = new HashSet<>(Arrays.asList(
+          new HashSet<>(Arrays.asList(0, 1, 2)), new HashSet<>(Arrays.asList(3, 5, 7)),
+          new HashSet<>(Arrays.asList(4, 6, 8))));
+      assertEquals(expected,
+          toIndexSets(vectors, new KMeansGroups<>(3, vectors, new Random(seed)).getGroups()));
+    }
+  }
+
+  private Set<Set<Integer>> toIndexSets(List<TestVector> vectors,
+                                        List<List<TestVector>> groups) {
+    Set<Set<Integer>> indexSets = new HashSet<>();
+    for (List<TestVector> group : groups) {
+      Set<Integer> indices = new HashSet<>();
+      for (TestVector vector : group) {
+        indices.add(vectors.indexOf(vector));
+      }
+      indexSets.add(indices);
+    }
+    return indexSets;
+  }
+
   @Test
   public void testUnevenGroups() {
     for (int j = 0; j < 20; j++) {
@@ -209,6 +256,233 @@ public class GroupingsTest {
     }
   }
 
+  @Test
+  public void testBalancedSizes() {
+    for (int j = 0; j < 20; j++) {
+      List<TestVector> vectors = generateVectors();
+      Random rand = new Random(j);
+      int groupSize = rand.nextInt(6) + 1;
+      List<List<TestVector>> groupings =
+          new BalancedGroups<>(groupSize, vectors, new Random(j)).getGroups();
+      int total = 0;
+      if (vectors.size() < groupSize) {
+        assertEquals(1, groupings.size());
+      } else {
+        assertEquals(vectors.size() / groupSize, groupings.size());
+      }
+      for (List<TestVector> group : groupings) {
+        total += group.size();
+        assertTrue(group.size() >= Math.min(groupSize, vectors.size()));
+        assertTrue(group.size() <= groupSize + vectors.size() % groupSize);
+      }
+      assertEquals(vectors.size(), total);
+    }
+  }
+
+  @Test
+  public void testBalancedSeparates() {
+    Random rand = new Random(3);
+    List<TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      if (i % 2 == 0) {
+        vectors.add(new TestVector(new double[] {0.9 + rand.nextDouble() / 10, 0.1}));
+      } else {
+        vectors.add(new TestVector(new double[] {0.1, 0.9 + rand.nextDouble() / 10}));
+      }
+    }
+    List<List<TestVector>> groupings = new BalancedGroups<>(4, vectors, new Random(1)).getGroups();
+    assertEquals(10, groupings.size());
+    for (List<TestVector> group : groupings) {
+      assertEquals(4, group.size());
+      boolean xCluster = group.get(0).getVector()[0] > 0.5;
+      for (TestVector vector : group) {
+        assertEquals(xCluster, vector.getVector()[0] > 0.5);
+      }
+    }
+  }
+
+  @Test
+  public void testBalancedAgainstRandom() {
+    for (int i = 0; i < 2; i++) {
+      List<TestVector> vectors = generateVectors();
+      int groupSize = new Random().nextInt(15) + 1;
+      List<List<TestVector>> groupings = new BalancedGroups<>(groupSize, vectors).getGroups();
+      compareGroupings(groupings, generateRandomGroupings(groupSize, vectors));
+    }
+  }
+
+  @Test
+  public void testRefinementLowersLoss() {
+    Random rand = new Random(14);
+    List<TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      double[] coords = new double[20];
+      for (int j = 0; j < coords.length; j++) {
+        coords[j] = rand.nextDouble();
+      }
+      vectors.add(new TestVector(coords));
+    }
+    List<List<TestVector>> greedy = new KMeansGroups<>(7, vectors, new Random(3)).getGroups();
+    KMeansGroups<TestVector> kmg = new KMeansGroups<>(7, vectors, new Random(3));
+    kmg.setRefinementBudget(2000);
+    List<List<TestVector>> refined = kmg.getGroups();
+    assertEquals(greedy.size(), refined.size());
+    for (int g = 0; g < greedy.size(); g++) {
+      assertEquals(greedy.get(g).size(), refined.get(g).size());
+    }
+    assertTrue(clusteringLoss(refined) < clusteringLoss(greedy));
+  }
+
+  @Test
+  public void testKeepsEveryVector() {
+    for (int i = 0; i < 5; i++) {
+      List<TestVector> vectors = generateVectors();
+      if (vectors.size() >= 3) {
+        assertValidGrouping(vectors, 3, new KMeansGroups<>(3, vectors).getGroups());
+      }
+    }
+  }
+
+  @Test
+  public void testSwapRefinerBits() {
+    Random rand = new Random(15);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 120; i++) {
+      vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 300)));
+    }
+    UnitVectorStore store = new UnitVectorStore(vectors);
+    int[][] groups = new int[12][10];
+    for (int p = 0; p < 120; p++) {
+      groups[p / 10][p % 10] = p;
+    }
+    SwapRefiner refiner = new SwapRefiner(store, groups);
+    double before = refiner.findLoss();
+    assertTrue(refiner.refine(System.nanoTime() + 60_000_000_000L) > 0);
+    assertTrue(refiner.isConverged());
+    assertTrue(refiner.findLoss() < before);
+    // every vector is still in exactly one group, and the tracked loss matches a fresh one
+    Set<Integer> seen = new HashSet<>();
+    for (int[] group : groups) {
+      for (int p : group) {
+        assertTrue(seen.add(p));
+      }
+    }
+    assertEquals(120, seen.size());
+    assertEquals(new SwapRefiner(store, groups).findLoss(), refiner.findLoss(), 0.0000001);
+  }
+
+  @Test
+  public void testPairingFindsTwins() {
+    Random rand = new Random(16);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      boolean[] schedule = BitVectorsTest.randomSchedule(rand, 200);
+      vectors.add(new TestBitVector(schedule));
+      vectors.add(new TestBitVector(schedule.clone()));
+    }
+    vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 200)));
+    List<TestBitVector> shuffled = new ArrayList<>(vectors);
+    Collections.shuffle(shuffled, rand);
+    List<List<TestBitVector>> groups = new PairingGroups<>(shuffled).getGroups();
+    assertEquals(50, groups.size());
+    int triples = 0;
+    for (List<TestBitVector> group : groups) {
+      if (group.size() == 3) {
+        triples++;
+      } else {
+        assertEquals(2, group.size());
+      }
+      assertArrayEquals(group.get(0).getVector(), group.get(1).getVector(), 0);
+    }
+    assertEquals(1, triples);
+  }
+
+  @Test
+  public void testPairingAgainstRandom() {
+    for (int i = 0; i < 2; i++) {
+      List<TestVector> vectors = generateVectors();
+      List<List<TestVector>> groupings = new PairingGroups<>(vectors).getGroups();
+      for (List<TestVector> group : groupings) {
+        assertTrue(group.size() == 2 || group.size() == 3 || vectors.size() < 2);
+      }
+      compareGroupings(groupings, generateRandomGroupings(2, vectors));
+    }
+  }
+
+  @Test
+  public void testAnytimeGrouping() {
+    Random rand = new Random(19);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 1001; i++) {
+      vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 672)));
+    }
+    List<GroupingEngine<TestBitVector>> engines = new ArrayList<>();
+    engines.add(new KMeansGroups<>(4, vectors, new Random(1)));
+    engines.add(new BalancedGroups<>(4, vectors, new Random(1)));
+    engines.add(new PairingGroups<>(vectors));
+    for (GroupingEngine<TestBitVector> engine : engines) {
+      int groupSize = 4;
+      if (engine instanceof PairingGroups) {
+        groupSize = 2;
+      }
+      CancellationToken token = new CancellationToken();
+      token.cancel();
+      GroupingResult<TestBitVector> cancelled = engine.getGroups(0, token);
+      assertEquals(GroupingResult.Status.CANCELLED, cancelled.getStatus());
+      assertValidGrouping(vectors, groupSize, cancelled.getGroups());
+
+      GroupingResult<TestBitVector> timedOut = engine.getGroups(1, null);
+      assertValidGrouping(vectors, groupSize, timedOut.getGroups());
+      assertNotEquals(GroupingResult.Status.CANCELLED, timedOut.getStatus());
+    }
+    // the kMeans rounds alone take far longer than a millisecond
+    assertFalse(engines.get(0).getGroups(1, null).isComplete());
+
+    List<TestBitVector> few = vectors.subList(0, 40);
+    GroupingResult<TestBitVector> complete =
+        new KMeansGroups<>(4, few, new Random(1)).getGroups(60000, new CancellationToken());
+    assertTrue(complete.isComplete());
+    assertValidGrouping(few, 4, complete.getGroups());
+  }
+
+  @Test
+  public void testHierarchicalGrouping() {
+    Random rand = new Random(23);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 2503; i++) {
+      vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 672)));
+    }
+    HierarchicalGroups<TestBitVector> hierarchical =
+        new HierarchicalGroups<>(4, vectors, new Random(1));
+    hierarchical.setBucketSize(500);
+    assertValidGrouping(vectors, 4, hierarchical.getGroups());
+
+    // leftovers that can not fill a group of their own join existing groups
+    HierarchicalGroups<TestBitVector> fewLeftovers =
+        new HierarchicalGroups<>(7, vectors.subList(0, 2001), new Random(1));
+    fewLeftovers.setBucketSize(1000);
+    List<List<TestBitVector>> groups = fewLeftovers.getGroups();
+    assertValidGrouping(vectors.subList(0, 2001), 7, groups);
+    for (List<TestBitVector> group : groups) {
+      assertTrue(group.size() <= 8);
+    }
+
+    List<TestVector> small = generateVectors();
+    HierarchicalGroups<TestVector> flat = new HierarchicalGroups<>(3, small, new Random(1),
+        bucket -> new BalancedGroups<>(3, bucket, new Random(1)));
+    compareGroupings(flat.getGroups(), generateRandomGroupings(3, small));
+  }
+
+  public <T> void assertValidGrouping(List<T> vectors, int groupSize, List<List<T>> groups) {
+    assertEquals(vectors.size() / groupSize, groups.size());
+    Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (List<T> group : groups) {
+      assertTrue(group.size() >= groupSize);
+      seen.addAll(group);
+    }
+    assertEquals(vectors.size(), seen.size());
+  }
+
   public List<TestVector> generateVectors() {
     Random rand = new Random();
     List<TestVector> vectors = new ArrayList<>();
@@ -0,0 +1,67 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times KMeansGroups.getGroups on random schedules of increasing size. Not a test, so surefire
+ * skips it; run it from the server directory after mvn test-compile with
+ * java -cp target/classes:target/test-classes edu.brown.cs.student.kmeans.KMeansGroupsBenchmark
+ * optionally followed by the sizes to try.
+ */
+public final class KMeansGroupsBenchmark {
+  private static final int[] DEFAULT_SIZES = {1000, 5000, 10000};
+  private static final int SLOTS = 672;
+  private static final int GROUPS = 20;
+  private static final int VECTORS_PER_PROTOTYPE = 20;
+  private static final int NOISE_PERCENT = 25;
+  private static final int RUNS = 3;
+
+  private KMeansGroupsBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int[] sizes = DEFAULT_SIZES;
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+    for (int n : sizes) {
+      List<TestBitVector> vectors = generateSchedules(n, new Random(n));
+      long best = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        KMeansGroups<TestBitVector> groups =
+            new KMeansGroups<>(n / GROUPS, vectors, new Random(run));
+        long start = System.nanoTime();
+        groups.getGroups();
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("n = %d, group size %d: %.1f ms%n", n, n / GROUPS, best / 1e6);
+    }
+  }
+
+  /**
+   * Generates schedules scattered around a few random prototypes, so that there are real
+   * clusters to find.
+   */
+  static List<TestBitVector> generateSchedules(int n, Random rand) {
+    boolean[][] prototypes = new boolean[Math.max(1, n / VECTORS_PER_PROTOTYPE)][];
+    for (int i = 0; i < prototypes.length; i++) {
+      prototypes[i] = BitVectorsTest.randomSchedule(rand, SLOTS);
+    }
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      boolean[] values = prototypes[rand.nextInt(prototypes.length)].clone();
+      for (int j = 0; j < SLOTS; j++) {
+        if (rand.nextInt(100) < NOISE_PERCENT) {
+          values[j] = !values[j];
+        }
+      }
+      vectors.add(new TestBitVector(values));
+    }
+    return vectors;
+  }
+}
@@ -5,7 +5,9 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -133,4 +135,232 @@ public class KMeansTest {
       }
     }
   }
+
+  @Test
+  public void testSeededRunsMatch() {
+    List<GroupingsTest.TestVector> vectors = new GroupingsTest().generateVectors();
+    int k = vectors.size() / 4 + 1;
+    Map<Centroid, List<GroupingsTest.TestVector>> first =
+        new CosineKMeans<>(k, vectors, 20, new Random(7)).createClusters();
+    Map<Centroid, List<GroupingsTest.TestVector>> second =
+        new CosineKMeans<>(k, vectors, 20, new Random(7)).createClusters();
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    Random rand = new Random(11);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 672)));
+    }
+    Map<Centroid, List<TestBitVector>> sequential =
+        new CosineKMeans<>(25, vectors, 30, new Random(3)).createClusters();
+    CosineKMeans<TestBitVector> kmeans = new CosineKMeans<>(25, vectors, 30, new Random(3));
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      kmeans.setPool(pool);
+      assertEquals(sequential, kmeans.createClusters());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testNoEmptyClusters() {
+    for (int j = 0; j < 20; j++) {
+      List<TestBitVector> vectors = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        vectors.add(new TestBitVector(new boolean[]{true, true, false, false}));
+        vectors.add(new TestBitVector(new boolean[]{false, false, true, true}));
+        vectors.add(new TestBitVector(new boolean[]{true, false, true, false}));
+      }
+      CosineKMeans<TestBitVector> kmeans = new CosineKMeans<>(3, vectors, 20);
+      Map<Centroid, List<TestBitVector>> clusters = kmeans.createClusters();
+      assertEquals(3, clusters.size());
+      for (List<TestBitVector> cluster : clusters.values()) {
+        assertEquals(5, cluster.size());
+        for (TestBitVector vector : cluster) {
+          assertArrayEquals(cluster.get(0).getBits(), vector.getBits());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPruningMatchesFullScan() {
+    Random rand = new Random(5);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      vectors.add(new TestBitVector(BitVectorsTest.randomSchedule(rand, 672)));
+    }
+    Map<Centroid, List<TestBitVector>> full =
+        new CosineKMeans<>(40, vectors, 50, new Random(9)).createClusters();
+    CosineKMeans<TestBitVector> kmeans = new CosineKMeans<>(40, vectors, 50, new Random(9));
+    kmeans.setPruning(true);
+    Map<Centroid, List<TestBitVector>> pruned = kmeans.createClusters();
+    assertEquals(full.size(), pruned.size());
+    for (Map.Entry<Centroid, List<TestBitVector>> entry : full.entrySet()) {
+      assertArrayEquals(entry.getKey().getCoords(),
+          findMatching(pruned, entry.getValue()).getCoords(), 0.000001);
+    }
+  }
+
+  @Test
+  public void testMiniBatchSeparatesClusters() {
+    Random rand = new Random(17);
+    List<TestBitVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 600; i++) {
+      boolean[] values = new boolean[96];
+      int block = (i % 3) * 32;
+      for (int j = block; j < block + 32; j++) {
+        values[j] = rand.nextInt(4) != 0;
+      }
+      vectors.add(new TestBitVector(values));
+    }
+    MiniBatchKMeans<TestBitVector> kmeans =
+        new MiniBatchKMeans<>(3, vectors, 50, 64, new Random(1));
+    Map<Centroid, List<TestBitVector>> clusters = kmeans.createClusters();
+    assertEquals(3, clusters.size());
+    for (List<TestBitVector> cluster : clusters.values()) {
+      assertEquals(200, cluster.size());
+      for (TestBitVector vector : cluster) {
+        assertTrue(BitVectors.overlap(vector.getBits(), cluster.get(0).getBits()) > 0);
+      }
+    }
+  }
+
+  @Test
+  public void testWarmStart() {
+    Random rand = new Random(24);
+    List<GroupingsTest.TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      double[] coords = new double[8];
+      for (int j = 0; j < coords.length; j++) {
+        coords[j] = rand.nextDouble();
+      }
+      vectors.add(new GroupingsTest.TestVector(coords));
+    }
+    CosineKMeans<GroupingsTest.TestVector> cold =
+        new CosineKMeans<>(10, vectors, 100, new Random(3));
+    Map<Centroid, List<GroupingsTest.TestVector>> clusters = cold.createClusters();
+    assertTrue(cold.getReport().isConverged());
+    List<double[]> centroids = new ArrayList<>();
+    for (Centroid centroid : clusters.keySet()) {
+      centroids.add(centroid.getCoords());
+    }
+
+    // starting on converged centroids, the first pass finds that nothing moves
+    CosineKMeans<GroupingsTest.TestVector> warm =
+        new CosineKMeans<>(10, vectors, 100, new Random(4), centroids);
+    warm.createClusters();
+    assertTrue(warm.getReport().isConverged());
+    assertEquals(1, warm.getReport().getIterations());
+    assertEquals(cold.getReport().getInertia(), warm.getReport().getInertia(), 0.000001);
+
+    // missing centroids are seeded, and extra ones are ignored
+    CosineKMeans<GroupingsTest.TestVector> partial =
+        new CosineKMeans<>(12, vectors, 100, new Random(4), centroids);
+    assertEquals(12, partial.createClusters().size());
+    CosineKMeans<GroupingsTest.TestVector> fewer =
+        new CosineKMeans<>(5, vectors, 100, new Random(4), centroids);
+    assertEquals(5, fewer.createClusters().size());
+  }
+
+  @Test
+  public void testReport() {
+    Random rand = new Random(23);
+    List<GroupingsTest.TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      double[] coords = new double[8];
+      for (int j = 0; j < coords.length; j++) {
+        coords[j] = rand.nextDouble();
+      }
+      vectors.add(new GroupingsTest.TestVector(coords));
+    }
+    CosineKMeans<GroupingsTest.TestVector> exact =
+        new CosineKMeans<>(20, vectors, 100, new Random(3));
+    assertNull(exact.getReport());
+    Map<Centroid, List<GroupingsTest.TestVector>> clusters = exact.createClusters();
+    KMeansReport report = exact.getReport();
+    assertTrue(report.isConverged());
+    assertTrue(report.getIterations() > 1 && report.getIterations() <= 100);
+    double inertia = 0;
+    for (Map.Entry<Centroid, List<GroupingsTest.TestVector>> entry : clusters.entrySet()) {
+      for (GroupingsTest.TestVector vector : entry.getValue()) {
+        inertia += CosineKMeans.cosDistance(vector.getVector(), entry.getKey().getCoords());
+      }
+    }
+    assertEquals(inertia, report.getInertia(), 0.000001);
+
+    CosineKMeans<GroupingsTest.TestVector> tolerant =
+        new CosineKMeans<>(20, vectors, 100, new Random(3));
+    tolerant.setReassignmentTolerance(0.05);
+    tolerant.setCentroidTolerance(0.001);
+    tolerant.createClusters();
+    assertTrue(tolerant.getReport().getIterations() < report.getIterations());
+    assertEquals(report.getInertia(), tolerant.getReport().getInertia(), report.getInertia() / 20);
+
+    CosineKMeans<GroupingsTest.TestVector> capped =
+        new CosineKMeans<>(20, vectors, 1, new Random(3));
+    capped.createClusters();
+    assertEquals(1, capped.getReport().getIterations());
+    assertFalse(capped.getReport().isConverged());
+  }
+
+  @Test
+  public void testMultiRestartKeepsBestRun() {
+    Random rand = new Random(29);
+    List<GroupingsTest.TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      double[] coords = new double[6];
+      for (int j = 0; j < coords.length; j++) {
+        coords[j] = rand.nextDouble();
+      }
+      vectors.add(new GroupingsTest.TestVector(coords));
+    }
+    MultiRestartKMeans<GroupingsTest.TestVector> sequential =
+        new MultiRestartKMeans<>(10, vectors, 100, 6, new Random(4));
+    sequential.createClusters();
+    assertEquals(6, sequential.getStartedRuns());
+    // the best of six runs is at least as good as each of them, in particular the first
+    Random seeds = new Random(4);
+    CosineKMeans<GroupingsTest.TestVector> first =
+        new CosineKMeans<>(10, vectors, 100, new Random(seeds.nextLong()));
+    first.createClusters();
+    assertTrue(sequential.getReport().getInertia() <= first.getReport().getInertia());
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    MultiRestartKMeans<GroupingsTest.TestVector> parallel =
+        new MultiRestartKMeans<>(10, vectors, 100, 6, new Random(4));
+    parallel.setPool(pool);
+    parallel.createClusters();
+    assertEquals(sequential.getReport().getInertia(), parallel.getReport().getInertia(), 0);
+    assertArrayEquals(sequential.findCentroidCenter(), parallel.findCentroidCenter(), 0);
+
+    MultiRestartKMeans<GroupingsTest.TestVector> expired =
+        new MultiRestartKMeans<>(10, vectors, 100, 6, new Random(4));
+    expired.setPool(pool);
+    expired.setTimeBudget(0);
+    Map<Centroid, List<GroupingsTest.TestVector>> clusters = expired.createClusters();
+    pool.shutdown();
+    assertEquals(1, expired.getStartedRuns());
+    assertEquals(1, expired.getReport().getIterations());
+    int total = 0;
+    for (List<GroupingsTest.TestVector> cluster : clusters.values()) {
+      total += cluster.size();
+    }
+    assertEquals(200, total);
+  }
+
+  private static Centroid findMatching(Map<Centroid, List<TestBitVector>> clusters,
+                                       List<TestBitVector> cluster) {
+    for (Map.Entry<Centroid, List<TestBitVector>> entry : clusters.entrySet()) {
+      if (entry.getValue().equals(cluster)) {
+        return entry.getKey();
+      }
+    }
+    fail();
+    return null;
+  }
 }
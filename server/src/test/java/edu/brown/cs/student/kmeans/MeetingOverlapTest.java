@@ -0,0 +1,183 @@
+package edu.brown.cs.student.kmeans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeetingOverlapTest {
+
+  public static boolean[] blockySchedule(Random rand, int length) {
+    boolean[] values = new boolean[length];
+    boolean free = false;
+    for (int i = 0; i < length; i++) {
+      if (rand.nextInt(5) == 0) {
+        free = !free;
+      }
+      values[i] = free;
+    }
+    return values;
+  }
+
+  public static boolean[] naiveStarts(boolean[] values, int blockSize) {
+    boolean[] starts = new boolean[values.length];
+    for (int i = 0; i + blockSize <= values.length; i++) {
+      starts[i] = true;
+      for (int j = i; j < i + blockSize; j++) {
+        starts[i] &= values[j];
+      }
+    }
+    return starts;
+  }
+
+  @Test
+  public void testFeasibleStarts() {
+    Random rand = new Random(17);
+    for (int length : new int[] {1, 63, 64, 65, 200, 672}) {
+      for (int blockSize : new int[] {1, 2, 3, 4, 7, 8, 64, 65, 130}) {
+        boolean[] values = blockySchedule(rand, length);
+        assertArrayEquals(BitVectors.pack(naiveStarts(values, blockSize)),
+            MeetingOverlap.feasibleStarts(BitVectors.pack(values), blockSize));
+      }
+    }
+    // a run cut off by the end of the schedule does not count
+    boolean[] values = new boolean[70];
+    Arrays.fill(values, 60, 70, true);
+    assertEquals(7, BitVectors.popcount(MeetingOverlap.feasibleStarts(BitVectors.pack(values), 4)));
+  }
+
+  @Test
+  public void testFeasibleOverlap() {
+    // both free for slots 10 to 14 in a row, and for scattered slots besides
+    boolean[] a = new boolean[20];
+    boolean[] b = new boolean[20];
+    for (int i = 0; i < 20; i += 2) {
+      a[i] = true;
+      b[i] = true;
+    }
+    Arrays.fill(a, 10, 14, true);
+    Arrays.fill(b, 9, 15, true);
+    List<TestBitVector> group = new ArrayList<>();
+    group.add(new TestBitVector(a));
+    group.add(new TestBitVector(b));
+    assertEquals(2, MeetingOverlap.groupFeasibleStarts(group, 4));
+    assertEquals(12, MeetingOverlap.groupFeasibleStarts(group, 1));
+    boolean[] c = new boolean[20];
+    Arrays.fill(c, 0, 12, true);
+    group.add(new TestBitVector(c));
+    assertEquals(0, MeetingOverlap.groupFeasibleStarts(group, 4));
+    assertEquals(1, MeetingOverlap.groupFeasibleStarts(group, 2));
+  }
+
+  public static TestBitVector freeDuring(int length, int from, int to) {
+    boolean[] values = new boolean[length];
+    Arrays.fill(values, from, to, true);
+    return new TestBitVector(values);
+  }
+
+  @Test
+  public void testRepairInfeasibleGroups() {
+    // two people free only in the morning and two only in the evening, grouped across
+    TestBitVector morning1 = freeDuring(40, 0, 10);
+    TestBitVector morning2 = freeDuring(40, 2, 12);
+    TestBitVector evening1 = freeDuring(40, 28, 38);
+    TestBitVector evening2 = freeDuring(40, 30, 40);
+    List<List<TestBitVector>> groups = new ArrayList<>();
+    groups.add(new ArrayList<>(Arrays.asList(morning1, evening1)));
+    groups.add(new ArrayList<>(Arrays.asList(evening2, morning2)));
+    assertEquals(0, MeetingOverlap.repairInfeasibleGroups(groups, 4));
+    for (List<TestBitVector> group : groups) {
+      assertEquals(2, group.size());
+      assertTrue(MeetingOverlap.groupFeasibleStarts(group, 4) > 0);
+    }
+    assertEquals(5, MeetingOverlap.groupFeasibleStarts(groups.get(0), 4));
+
+    // a feasible group does not give up its last start for an infeasible one
+    TestBitVector never = freeDuring(40, 0, 0);
+    groups = new ArrayList<>();
+    groups.add(new ArrayList<>(Arrays.asList(morning1, morning2)));
+    groups.add(new ArrayList<>(Arrays.asList(never, evening1)));
+    assertEquals(1, MeetingOverlap.repairInfeasibleGroups(groups, 4));
+    assertEquals(Arrays.asList(morning1, morning2), groups.get(0));
+    assertEquals(Arrays.asList(never, evening1), groups.get(1));
+
+    // a short meeting fits in a small overlap, so nothing is swapped
+    groups.get(1).set(0, freeDuring(40, 36, 40));
+    assertEquals(0, MeetingOverlap.repairInfeasibleGroups(groups, 2));
+    assertEquals(morning1, groups.get(0).get(0));
+  }
+
+  @Test
+  public void testGroupingOnStarts() {
+    // half can only meet for long stretches in the morning, half in the evening, while their
+    // scattered free slots overlap everyone's
+    Random rand = new Random(18);
+    List<TestBitVector> schedules = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      boolean[] values = new boolean[96];
+      for (int j = 0; j < 96; j++) {
+        values[j] = rand.nextInt(2) == 0;
+      }
+      int start = 8;
+      if (i % 2 == 1) {
+        start = 72;
+      }
+      Arrays.fill(values, start, start + 8, true);
+      schedules.add(new TestBitVector(values));
+    }
+    List<MeetingStartVector<TestBitVector>> starts = MeetingStartVector.wrapAll(schedules, 8);
+    List<List<TestBitVector>> groups = MeetingStartVector.unwrapAll(
+        new KMeansGroups<>(5, starts, new Random(2)).getGroups());
+    assertEquals(8, groups.size());
+    for (List<TestBitVector> group : groups) {
+      assertTrue(MeetingOverlap.groupFeasibleStarts(group, 8) > 0);
+    }
+  }
+
+  @Test
+  public void testLeveledStarts() {
+    Random rand = new Random(19);
+    double[] weights = {0, 0.1, 1, 3};
+    for (int trial = 0; trial < 20; trial++) {
+      byte[] levels = new byte[150];
+      byte level = 0;
+      for (int i = 0; i < levels.length; i++) {
+        if (rand.nextInt(4) == 0) {
+          level = (byte) rand.nextInt(AvailabilityLevels.LEVEL_COUNT);
+        }
+        levels[i] = level;
+      }
+      TestLevelVector schedule = new TestLevelVector(levels, weights);
+      MeetingStartVector<TestLevelVector> starts = new MeetingStartVector<>(schedule, 4);
+      assertSame(weights, starts.getLevelWeights());
+      double[] coords = starts.getVector();
+      for (int i = 0; i < levels.length; i++) {
+        // a start is as good as the worst slot of its meeting
+        int worst = 0;
+        if (i + 4 <= levels.length) {
+          worst = AvailabilityLevels.PREFERRED;
+          for (int j = i; j < i + 4; j++) {
+            worst = Math.min(worst, levels[j]);
+          }
+        }
+        for (int l = 0; l < AvailabilityLevels.LEVEL_COUNT; l++) {
+          assertEquals(l == worst && l > 0,
+              (starts.getLevelBits(l)[i / 64] >>> i & 1) != 0);
+        }
+        assertEquals(weights[worst], coords[i], 0);
+        assertEquals(worst > 0, (starts.getBits()[i / 64] >>> i & 1) != 0);
+      }
+    }
+
+    // starts of schedules without levels are all available
+    TestBitVector plain = new TestBitVector(blockySchedule(rand, 150));
+    MeetingStartVector<TestBitVector> plainStarts = new MeetingStartVector<>(plain, 4);
+    assertArrayEquals(plainStarts.getBits(),
+        plainStarts.getLevelBits(AvailabilityLevels.AVAILABLE));
+    assertEquals(0, BitVectors.popcount(plainStarts.getLevelBits(AvailabilityLevels.PREFERRED)));
+  }
+}
@@ -0,0 +1,32 @@
+package edu.brown.cs.student.kmeans;
+
+public class TestBitVector implements BitVectorData<TestBitVector> {
+  private final boolean[] values;
+  private final long[] bits;
+
+  public TestBitVector(boolean[] values) {
+    this.values = values;
+    this.bits = BitVectors.pack(values);
+  }
+
+  @Override
+  public long[] getBits() {
+    return bits;
+  }
+
+  @Override
+  public double[] getVector() {
+    double[] coords = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (values[i]) {
+        coords[i] = 1;
+      }
+    }
+    return coords;
+  }
+
+  @Override
+  public int getLength() {
+    return values.length;
+  }
+}
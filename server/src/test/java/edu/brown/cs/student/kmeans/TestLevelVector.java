@@ -0,0 +1,57 @@
+package edu.brown.cs.student.kmeans;
+
+import java.util.Random;
+
+public class TestLevelVector implements LevelVectorData<TestLevelVector> {
+  private final byte[] levels;
+  private final long[] bits;
+  private final long[][] levelBits;
+  private final double[] weights;
+
+  public TestLevelVector(byte[] levels) {
+    this(levels, AvailabilityLevels.getDefaultWeights());
+  }
+
+  public TestLevelVector(byte[] levels, double[] weights) {
+    this.levels = levels;
+    this.weights = weights;
+    this.bits = BitVectors.pack(AvailabilityLevels.toSchedule(levels));
+    this.levelBits = AvailabilityLevels.packLevelBits(levels);
+  }
+
+  public static byte[] randomLevels(Random rand, int length) {
+    byte[] levels = new byte[length];
+    for (int i = 0; i < length; i++) {
+      // mostly unavailable, like real schedules
+      if (rand.nextInt(2) == 0) {
+        levels[i] = (byte) rand.nextInt(AvailabilityLevels.LEVEL_COUNT);
+      }
+    }
+    return levels;
+  }
+
+  @Override
+  public long[] getLevelBits(int level) {
+    return levelBits[level];
+  }
+
+  @Override
+  public double[] getLevelWeights() {
+    return weights;
+  }
+
+  @Override
+  public long[] getBits() {
+    return bits;
+  }
+
+  @Override
+  public double[] getVector() {
+    return AvailabilityLevels.toCoords(this, weights);
+  }
+
+  @Override
+  public int getLength() {
+    return levels.length;
+  }
+}
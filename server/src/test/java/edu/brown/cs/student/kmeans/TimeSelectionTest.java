@@ -3,7 +3,9 @@ package edu.brown.cs.student.kmeans;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import static org.junit.Assert.*;
 
 public class TimeSelectionTest {
@@ -85,4 +87,273 @@ public class TimeSelectionTest {
     expectedTimes.add(8);
     assertEquals(time.getBestTimes(3,1), expectedTimes);
   }
+  @Test
+  public void testBitsMatchDense() {
+    Random rand = new Random(34);
+    List<TestBitVector> bitVectors = new ArrayList<>();
+    List<TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      TestBitVector vector = new TestBitVector(BitVectorsTest.randomSchedule(rand, 672));
+      bitVectors.add(vector);
+      vectors.add(new TestVector(vector.getVector()));
+    }
+    TestBitVector multiplier = new TestBitVector(BitVectorsTest.randomSchedule(rand, 672));
+    for (int blockSize : new int[] {1, 4}) {
+      assertEquals(new TimeSelection<>(vectors).getBestTimes(5, blockSize),
+          new TimeSelection<>(bitVectors).getBestTimes(5, blockSize));
+      assertEquals(new TimeSelection<>(bitVectors, multiplier).getBestTimes(5, blockSize),
+          new TimeSelection<>(vectors, new TestVector(multiplier.getVector()))
+              .getBestTimes(5, blockSize));
+    }
+  }
+
+  @Test
+  public void testLevelsMatchDense() {
+    Random rand = new Random(35);
+    double[] weights = {0, 0.25, 1, 3};
+    List<TestLevelVector> levelVectors = new ArrayList<>();
+    List<TestVector> vectors = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      TestLevelVector vector = new TestLevelVector(TestLevelVector.randomLevels(rand, 672));
+      levelVectors.add(vector);
+      vectors.add(new TestVector(AvailabilityLevels.toCoords(vector, weights)));
+    }
+    TestLevelVector multiplier = new TestLevelVector(TestLevelVector.randomLevels(rand, 672));
+    TimeSelection<TestLevelVector> leveled = new TimeSelection<>(levelVectors);
+    leveled.setLevelWeights(weights);
+    TimeSelection<TestLevelVector> multiplied = new TimeSelection<>(levelVectors, multiplier);
+    multiplied.setLevelWeights(weights);
+    for (int blockSize : new int[] {1, 4}) {
+      assertEquals(new TimeSelection<>(vectors).getBestTimes(5, blockSize),
+          leveled.getBestTimes(5, blockSize));
+      assertEquals(new TimeSelection<>(vectors,
+              new TestVector(AvailabilityLevels.toCoords(multiplier, weights)))
+              .getBestTimes(5, blockSize),
+          multiplied.getBestTimes(5, blockSize));
+    }
+
+    // without set weights, the schedules' own shared weights are used
+    List<TestLevelVector> weighted = new ArrayList<>();
+    Random levelRand = new Random(37);
+    List<TestVector> weightedDense = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      TestLevelVector vector =
+          new TestLevelVector(TestLevelVector.randomLevels(levelRand, 672), weights);
+      weighted.add(vector);
+      weightedDense.add(new TestVector(vector.getVector()));
+    }
+    assertEquals(new TimeSelection<>(weightedDense).getBestTimes(5, 4),
+        new TimeSelection<>(weighted).getBestTimes(5, 4));
+
+    // a preferred slot beats an available one, which beats an inconvenient one
+    byte[] levels = new byte[8];
+    levels[2] = AvailabilityLevels.INCONVENIENT;
+    levels[4] = AvailabilityLevels.PREFERRED;
+    levels[6] = AvailabilityLevels.AVAILABLE;
+    List<TestLevelVector> single = new ArrayList<>();
+    single.add(new TestLevelVector(levels));
+    assertEquals(Arrays.asList(4, 6, 2), new TimeSelection<>(single).getBestTimes(3, 1));
+  }
+
+  @Test
+  public void testDiverseTimes() {
+    List<TestVector> vectorList = new ArrayList<>();
+    double[] coords = new double[288];
+    for (int i = 0; i < coords.length; i++) {
+      // a peak at slot 20 on every day, highest on the first day
+      coords[i] = 100 - Math.abs(i % 96 - 20) - i / 96;
+    }
+    vectorList.add(new TestVector(coords));
+    TimeSelection<TestVector> time = new TimeSelection<>(vectorList);
+    // the best times are shifts of one window
+    assertEquals(Arrays.asList(18, 19, 17, 20, 114), time.getBestTimes(5, 4));
+
+    List<Integer> spaced = time.getDiverseTimes(5, 4, 2, 0);
+    assertEquals(5, spaced.size());
+    assertEquals(Integer.valueOf(18), spaced.get(0));
+    for (int a = 0; a < spaced.size(); a++) {
+      for (int b = a + 1; b < spaced.size(); b++) {
+        assertTrue(Math.abs(spaced.get(a) - spaced.get(b)) >= 4 + 2);
+      }
+    }
+
+    assertEquals(Arrays.asList(18, 114, 210), time.getDiverseTimes(3, 4, 0, 1));
+    // only three days, so with one meeting per day no more fit
+    assertEquals(3, time.getDiverseTimes(5, 4, 0, 1).size());
+  }
+
+  public static double bruteForcePlan(double[] weights, int from, int meetings, int total,
+                                      int minLength, int maxLength, int gap) {
+    if (meetings == 0) {
+      if (total == 0) {
+        return 0;
+      }
+      return Double.NEGATIVE_INFINITY;
+    }
+    double best = Double.NEGATIVE_INFINITY;
+    for (int start = from; start < weights.length; start++) {
+      for (int l = minLength; l <= maxLength && start + l <= weights.length; l++) {
+        double weight = 0;
+        for (int i = start; i < start + l; i++) {
+          weight += weights[i];
+        }
+        best = Math.max(best, weight
+            + bruteForcePlan(weights, start + l + gap, meetings - 1, total - l, minLength,
+            maxLength, gap));
+      }
+    }
+    return best;
+  }
+
+  @Test
+  public void testWeeklyPlan() {
+    Random rand = new Random(36);
+    for (int trial = 0; trial < 100; trial++) {
+      int length = rand.nextInt(14) + 4;
+      double[] coords = new double[length];
+      for (int i = 0; i < length; i++) {
+        coords[i] = rand.nextInt(5);
+      }
+      List<TestVector> vectorList = new ArrayList<>();
+      vectorList.add(new TestVector(coords));
+      TimeSelection<TestVector> time = new TimeSelection<>(vectorList);
+      int meetings = rand.nextInt(3) + 1;
+      int minLength = rand.nextInt(2) + 1;
+      int maxLength = minLength + rand.nextInt(3);
+      int total = meetings * minLength + rand.nextInt(4);
+      int gap = rand.nextInt(3) + 1;
+      List<int[]> plan = time.getWeeklyPlan(meetings, total, minLength, maxLength, gap);
+      double expected = bruteForcePlan(coords, 0, meetings, total, minLength, maxLength, gap);
+      if (expected == Double.NEGATIVE_INFINITY) {
+        assertTrue(plan.isEmpty());
+        continue;
+      }
+      assertEquals(meetings, plan.size());
+      double weight = 0;
+      int planned = 0;
+      int lastEnd = -gap - 1;
+      for (int[] meeting : plan) {
+        int meetingLength = meeting[1] - meeting[0] + 1;
+        assertTrue(meetingLength >= minLength && meetingLength <= maxLength);
+        // separate meetings leave at least gap free slots between them
+        assertTrue(meeting[0] > lastEnd + gap);
+        lastEnd = meeting[1];
+        planned += meetingLength;
+        for (int i = meeting[0]; i <= meeting[1]; i++) {
+          weight += coords[i];
+        }
+      }
+      assertEquals(total, planned);
+      assertEquals(expected, weight, 0.0000001);
+
+      // meetings of one length have their own smaller table, which must agree
+      List<int[]> fixed = time.getWeeklyPlan(meetings, minLength, gap);
+      List<int[]> general = time.getWeeklyPlan(meetings, meetings * minLength, minLength,
+          minLength, gap);
+      assertEquals(general.size(), fixed.size());
+      for (int m = 0; m < fixed.size(); m++) {
+        assertArrayEquals(general.get(m), fixed.get(m));
+      }
+    }
+
+    List<TestVector> vectorList = new ArrayList<>();
+    vectorList.add(new TestVector(new double[]{1, 1, 0, 0, 1, 1, 0, 1, 1}));
+    TimeSelection<TestVector> time = new TimeSelection<>(vectorList);
+    List<int[]> plan = time.getWeeklyPlan(3, 2, 1);
+    assertArrayEquals(new int[]{0, 1}, plan.get(0));
+    assertArrayEquals(new int[]{4, 5}, plan.get(1));
+    assertArrayEquals(new int[]{7, 8}, plan.get(2));
+    assertTrue(time.getWeeklyPlan(4, 2, 1).isEmpty());
+    // a wider gap gives up the best slots rather than put meetings close together
+    plan = time.getWeeklyPlan(2, 2, 3);
+    assertArrayEquals(new int[]{0, 1}, plan.get(0));
+    assertArrayEquals(new int[]{7, 8}, plan.get(1));
+    assertTrue(time.getWeeklyPlan(3, 2, 2).isEmpty());
+
+    // two good windows an hour apart on one day lose to a slightly worse one on the next day
+    double[] week = new double[672];
+    Arrays.fill(week, 32, 40, 6);
+    Arrays.fill(week, 44, 52, 5);
+    Arrays.fill(week, 128, 136, 4);
+    vectorList = new ArrayList<>();
+    vectorList.add(new TestVector(week));
+    time = new TimeSelection<>(vectorList);
+    assertArrayEquals(new int[]{44, 51}, time.getWeeklyPlan(2, 8, 1).get(1));
+    plan = time.getWeeklyPlan(2, 8, 12);
+    assertArrayEquals(new int[]{32, 39}, plan.get(0));
+    assertArrayEquals(new int[]{128, 135}, plan.get(1));
+    assertEquals(2, time.getWeeklyPlan(2, 16, 8, 8, 12).size());
+    assertArrayEquals(new int[]{128, 135}, time.getWeeklyPlan(2, 16, 8, 8, 12).get(1));
+
+    // plans that cannot fit in the week are rejected before any table is allocated
+    vectorList = new ArrayList<>();
+    vectorList.add(new TestVector(new double[672]));
+    time = new TimeSelection<>(vectorList);
+    assertTrue(time.getWeeklyPlan(300, 8, 1).isEmpty());
+    assertTrue(time.getWeeklyPlan(1000, 2, 1).isEmpty());
+    assertTrue(time.getWeeklyPlan(14, 8, 48).isEmpty());
+    assertTrue(time.getWeeklyPlan(300, 2400, 8, 8, 1).isEmpty());
+    assertTrue(time.getWeeklyPlan(2, 700, 2, 400, 1).isEmpty());
+    assertTrue(time.getWeeklyPlan(3, 40, 2, 8, 1).isEmpty());
+    assertEquals(3, time.getWeeklyPlan(3, 20, 2, 8, 1).size());
+    try {
+      time.getWeeklyPlan(2, 8, 0);
+      fail();
+    } catch (RuntimeException e) {
+      // adjacent meetings would be one long one
+    }
+  }
+
+  // the round-by-round selection getBestTimes used to do, which it must still agree with
+  public static List<Integer> rescanBestTimes(double[] blockWeights, int timeAmt) {
+    List<Integer> finalStartTimes = new ArrayList<>();
+    for (int i = 0; i < timeAmt; i++) {
+      List<Integer> maxIndices = new ArrayList<>();
+      double maxValue = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < blockWeights.length; j++) {
+        if (blockWeights[j] > maxValue && !finalStartTimes.contains(j)) {
+          maxIndices = new ArrayList<>();
+          maxIndices.add(j);
+          maxValue = blockWeights[j];
+        } else if (blockWeights[j] == maxValue) {
+          maxIndices.add(j);
+        }
+      }
+      if (maxIndices.size() > timeAmt - finalStartTimes.size()) {
+        int timesToAdd = timeAmt - finalStartTimes.size();
+        if (timesToAdd == 1) {
+          finalStartTimes.add(maxIndices.get(0));
+        } else {
+          for (int k = 0; k < timesToAdd; k++) {
+            finalStartTimes.add(maxIndices.get((maxIndices.size() - 1) / (timesToAdd - 1) * k));
+          }
+        }
+      } else {
+        finalStartTimes.addAll(maxIndices);
+      }
+    }
+    return finalStartTimes;
+  }
+
+  @Test
+  public void testMatchesRescan() {
+    Random rand = new Random(35);
+    for (int trial = 0; trial < 200; trial++) {
+      int length = rand.nextInt(60) + 1;
+      double[] weights = new double[length];
+      List<TestVector> vectorList = new ArrayList<>();
+      for (int v = 0; v < 3; v++) {
+        double[] coords = new double[length];
+        for (int i = 0; i < length; i++) {
+          // few distinct values, so that there are many ties
+          coords[i] = rand.nextInt(3);
+          weights[i] += coords[i];
+        }
+        vectorList.add(new TestVector(coords));
+      }
+      TimeSelection<TestVector> time = new TimeSelection<>(vectorList);
+      int timeAmt = rand.nextInt(length + 1);
+      assertEquals(rescanBestTimes(weights, timeAmt), time.getBestTimes(timeAmt, 1));
+    }
+  }
 }
@@ -0,0 +1,159 @@
+package edu.brown.cs.student.kmeans;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static edu.brown.cs.student.kmeans.BitVectorsTest.randomSchedule;
+import static org.junit.Assert.*;
+
+public class UnitVectorStoreTest {
+
+  @Test
+  public void testMatchesCosDistance() {
+    Random rand = new Random(41);
+    List<GroupingsTest.TestVector> dense = new ArrayList<>();
+    List<TestBitVector> bits = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      double[] coords = new double[20];
+      for (int j = 0; j < coords.length; j++) {
+        coords[j] = rand.nextDouble();
+      }
+      dense.add(new GroupingsTest.TestVector(coords));
+      bits.add(new TestBitVector(randomSchedule(rand, 200)));
+    }
+    dense.add(new GroupingsTest.TestVector(new double[20]));
+    bits.add(new TestBitVector(new boolean[200]));
+    UnitVectorStore denseStore = new UnitVectorStore(dense);
+    UnitVectorStore bitStore = new UnitVectorStore(bits);
+    assertTrue(denseStore.size() == 31 && bitStore.size() == 31);
+    double[] denseCentroid = dense.get(0).getVector();
+    double[] bitCentroid = bits.get(0).getVector();
+    for (int p = 0; p < 31; p++) {
+      assertEquals(CosineKMeans.cosDistance(dense.get(p).getVector(), denseCentroid),
+          denseStore.cosDistance(p, denseCentroid, 0,
+              VectorKernels.magnitudeSquared(denseCentroid, 0, 20)), 0.0000001);
+      assertEquals(CosineKMeans.cosDistance(bits.get(p).getVector(), bitCentroid),
+          bitStore.cosDistance(p, bitCentroid, 0,
+              VectorKernels.magnitudeSquared(bitCentroid, 0, 200)), 0.0000001);
+    }
+
+    // the 0 vector is stored as the first unit vector, like normalize
+    double[] row = new double[20];
+    denseStore.copyTo(30, row, 0);
+    assertArrayEquals(CosineKMeans.normalize(new double[20]), row, 0);
+    denseStore.copyTo(3, row, 0);
+    assertArrayEquals(CosineKMeans.normalize(dense.get(3).getVector()), row, 0.0000001);
+
+    UnitVectorStore subset = bitStore.subset(new int[] {5, 2});
+    assertEquals(2, subset.size());
+    assertEquals(bitStore.getNorm(2), subset.getNorm(1), 0);
+    assertEquals(bitStore.cosDistance(5, bitCentroid, 0, 1), subset.cosDistance(0, bitCentroid,
+        0, 1), 0);
+  }
+
+  @Test
+  public void testDot() {
+    Random rand = new Random(42);
+    List<TestBitVector> bits = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      bits.add(new TestBitVector(randomSchedule(rand, 130)));
+    }
+    bits.add(new TestBitVector(new boolean[130]));
+    UnitVectorStore store = new UnitVectorStore(bits);
+    double[] row = new double[130];
+    for (int p = 0; p < 11; p++) {
+      store.copyTo(p, row, 0);
+      for (int q = 0; q < 11; q++) {
+        double[] other = new double[130];
+        store.copyTo(q, other, 0);
+        double expected = VectorKernels.dot(row, 0, other, 0, 130);
+        assertEquals(expected, store.dot(p, q), 0.0000001);
+        assertEquals(expected, store.dot(p, other, 0), 0.0000001);
+      }
+    }
+  }
+
+  @Test
+  public void testLevels() {
+    Random rand = new Random(43);
+    double[] weights = {0, 0.5, 1, 2};
+    List<TestLevelVector> levels = new ArrayList<>();
+    List<GroupingsTest.TestVector> dense = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      levels.add(new TestLevelVector(TestLevelVector.randomLevels(rand, 130), weights));
+    }
+    levels.add(new TestLevelVector(new byte[130], weights));
+    for (TestLevelVector vector : levels) {
+      dense.add(new GroupingsTest.TestVector(vector.getVector()));
+    }
+    UnitVectorStore store = new UnitVectorStore(levels);
+    UnitVectorStore denseStore = new UnitVectorStore(dense);
+    double[] row = new double[130];
+    double[] denseRow = new double[130];
+    for (int p = 0; p < 11; p++) {
+      store.copyTo(p, row, 0);
+      denseStore.copyTo(p, denseRow, 0);
+      assertArrayEquals(denseRow, row, 0.0000001);
+      assertEquals(denseStore.getNorm(p), store.getNorm(p), 0.0000001);
+      for (int q = 0; q < 11; q++) {
+        assertEquals(denseStore.dot(p, q), store.dot(p, q), 0.0000001);
+        assertEquals(denseStore.cosDistance(q, row, 0, 1), store.cosDistance(q, row, 0, 1),
+            0.0000001);
+      }
+    }
+
+    // vectors that weigh the levels differently, or mix leveled and plain bit vectors, are
+    // stored as their coordinates rather than as their support
+    List<VectorData<?>> mixed = new ArrayList<>();
+    List<GroupingsTest.TestVector> mixedDense = new ArrayList<>();
+    mixed.add(new TestLevelVector(TestLevelVector.randomLevels(rand, 130)));
+    mixed.add(new TestLevelVector(TestLevelVector.randomLevels(rand, 130), weights));
+    mixed.add(new TestBitVector(randomSchedule(rand, 130)));
+    for (VectorData<?> vector : mixed) {
+      mixedDense.add(new GroupingsTest.TestVector(vector.getVector()));
+    }
+    UnitVectorStore mixedStore = new UnitVectorStore(mixed);
+    UnitVectorStore mixedDenseStore = new UnitVectorStore(mixedDense);
+    for (int p = 0; p < 3; p++) {
+      for (int q = 0; q < 3; q++) {
+        assertEquals(mixedDenseStore.dot(p, q), mixedStore.dot(p, q), 0.0000001);
+      }
+    }
+
+    // leveled vectors that only use one level are stored like bit vectors
+    List<TestLevelVector> binary = new ArrayList<>();
+    List<TestBitVector> bits = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      boolean[] schedule = randomSchedule(rand, 130);
+      binary.add(new TestLevelVector(AvailabilityLevels.fromSchedule(schedule)));
+      bits.add(new TestBitVector(schedule));
+    }
+    UnitVectorStore binaryStore = new UnitVectorStore(binary);
+    UnitVectorStore bitStore = new UnitVectorStore(bits);
+    for (int p = 0; p < 5; p++) {
+      for (int q = 0; q < 5; q++) {
+        assertEquals(bitStore.dot(p, q), binaryStore.dot(p, q), 0.0000001);
+      }
+    }
+  }
+
+  @Test
+  public void testFindBestGroups() {
+    List<GroupingsTest.TestVector> vectors = new ArrayList<>();
+    vectors.add(new GroupingsTest.TestVector(new double[] {1, 0}));
+    vectors.add(new GroupingsTest.TestVector(new double[] {0, 1}));
+    vectors.add(new GroupingsTest.TestVector(new double[] {0, 2}));
+    vectors.add(new GroupingsTest.TestVector(new double[] {0.1, 1}));
+    vectors.add(new GroupingsTest.TestVector(new double[] {0.1, 1}));
+    UnitVectorStore store = new UnitVectorStore(vectors);
+    List<int[]> groups = new ArrayList<>();
+    groups.add(new int[] {0});
+    groups.add(new int[] {1});
+    // the first extra joins its closest group, the second the group left without one
+    assertArrayEquals(new int[] {1, 0}, store.findBestGroups(groups, new int[] {2, 3}));
+    assertArrayEquals(new int[] {1, 0, 1}, store.findBestGroups(groups, new int[] {2, 3, 4}));
+  }
+}
@@ -0,0 +1,42 @@
+package edu.brown.cs.student.kmeans;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VectorKernelsTest {
+
+  @Test
+  public void testMatchesScalar() {
+    // odd lengths and offsets, so the vectorized kernel has to handle its tail loop
+    Random rand = new Random(7);
+    ScalarKernel scalar = new ScalarKernel();
+    for (int length = 1; length < 40; length += 3) {
+      double[] flat = new double[length * 3];
+      double[] other = new double[length + 1];
+      for (int i = 0; i < flat.length; i++) {
+        flat[i] = rand.nextDouble();
+      }
+      for (int i = 0; i < other.length; i++) {
+        other[i] = rand.nextDouble();
+      }
+      assertEquals(scalar.dot(flat, length, other, 1, length),
+          VectorKernels.dot(flat, length, other, 1, length), 0.0000001);
+      assertEquals(scalar.magnitudeSquared(flat, length, length),
+          VectorKernels.magnitudeSquared(flat, length, length), 0.0000001);
+      assertEquals(scalar.cosDistance(flat, length, other, 1, length),
+          VectorKernels.cosDistance(flat, length, other, 1, length), 0.0000001);
+    }
+  }
+
+  @Test
+  public void testZeroVector() {
+    double[] zero = new double[9];
+    double[] coords = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    assertEquals(1, VectorKernels.cosDistance(zero, 0, coords, 0, 9), 0);
+    assertEquals(1, VectorKernels.cosDistance(zero, 0, coords, 285), 0);
+    assertEquals(0, VectorKernels.cosDistance(coords, 0, coords, 0, 9), 0.0000001);
+  }
+}